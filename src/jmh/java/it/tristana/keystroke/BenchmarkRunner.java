@@ -0,0 +1,60 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks with the GC profiler, so that next to the operations<br>
+ * per second the allocation rate of each benchmark is reported as well.<br>
+ * An optional argument selects the benchmarks with a regular expression
+ * @author Massimiliano Micol
+ */
+
+public final class BenchmarkRunner {
+	
+	/**
+	 * This class isn't meant to be instantiated
+	 */
+	
+	private BenchmarkRunner() {}
+	
+	/**
+	 * Entry point of the benchmarks
+	 * @param args An optional regular expression matching the benchmarks to run
+	 * @throws RunnerException If a benchmark fails
+	 */
+	
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(args.length > 0 ? args[0] : "it\\.tristana\\.keystroke\\..*")
+			.addProfiler(GCProfiler.class)
+			.build()).run();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.glfw.GLFW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import it.tristana.keystroke.input.InputQueue;
+import it.tristana.keystroke.input.SyntheticInput;
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyJump;
+import it.tristana.keystroke.keys.KeyMouse;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Measures the cost of applying input events to the keys, both straight through<br>
+ * the {@link KeyIndex} and passing through the {@link InputQueue} first.<br>
+ * Each operation replays a whole synthetic recording
+ * @author Massimiliano Micol
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DispatchBenchmark {
+	
+	/**
+	 * The replayed input pattern
+	 */
+	
+	@Param({"STRAFE", "REPEAT_FLOOD", "BUTTERFLY"})
+	public SyntheticInput.Pattern pattern;
+	
+	/**
+	 * The recorded events
+	 */
+	
+	private SyntheticInput.Recording recording;
+	
+	/**
+	 * The table under test
+	 */
+	
+	private KeyIndex index;
+	
+	/**
+	 * The queue the events pass through
+	 */
+	
+	private InputQueue queue;
+	
+	/**
+	 * Dispatches the drained events to {@link #index}
+	 */
+	
+	private InputQueue.Handler dispatcher;
+	
+	/**
+	 * Builds the same keys declared by {@link Config} and records ten seconds of input
+	 */
+	
+	@Setup
+	public void setup() {
+		Key[] keys = {
+			new Key(75, 25, 5, 8.9, binding(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W), null),
+			new Key(75, 33.9, 5, 8.9, binding(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S), null),
+			new Key(70, 33.9, 5, 8.9, binding(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A), null),
+			new Key(80, 33.9, 5, 8.9, binding(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_D), null),
+			new KeyMouse(70, 42.8, 7.5, 8.9, binding(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT), "LMB"),
+			new KeyMouse(77.5, 42.8, 7.5, 8.9, binding(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_RIGHT), "RMB"),
+			new KeyJump(70, 51.7, 15, 4.45, binding(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_SPACE), "JUMP")
+		};
+		index = new KeyIndex(keys);
+		queue = new InputQueue(1 << 16);
+		dispatcher = index::dispatch;
+		recording = new SyntheticInput(42).record(pattern, 0, TimeUnit.SECONDS.toNanos(10));
+	}
+	
+	/**
+	 * Dispatches every event straight to the keys
+	 * @return The number of dispatched events
+	 */
+	
+	@Benchmark
+	public int dispatch() {
+		recording.replay(dispatcher);
+		return recording.size();
+	}
+	
+	/**
+	 * Records every event in the queue and then drains them to the keys, as the game does
+	 * @return The number of drained events
+	 */
+	
+	@Benchmark
+	public int captureAndDrain() {
+		for (int i = 0, size = recording.size(); i < size; i++) {
+			queue.offer(recording.getType(i), recording.getCode(i), recording.isPressed(i), recording.getTimestamp(i));
+		}
+		return queue.drain(dispatcher);
+	}
+	
+	/**
+	 * Creates a KeyBinding for an input
+	 * @param type The input type
+	 * @param code The input code
+	 * @return The KeyBinding
+	 */
+	
+	private static KeyBinding binding(final InputMappings.Type type, final int code) {
+		return new KeyBinding("key.keystroke.benchmark." + type + "." + code, type, code, "key.categories.keystroke.benchmark");
+	}
+}
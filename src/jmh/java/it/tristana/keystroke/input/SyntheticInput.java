@@ -0,0 +1,347 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.input;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.lwjgl.glfw.GLFW;
+
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Generates realistic input streams without a running game, to feed the benchmarks.<br>
+ * Each {@link Pattern} reproduces a way of playing, and the same seed always gives the same events.<br>
+ * Only the GLFW constants are used, so no native library is loaded
+ * @author Massimiliano Micol
+ */
+
+public final class SyntheticInput {
+	
+	/**
+	 * The supported input patterns
+	 */
+	
+	public enum Pattern {
+		
+		/**
+		 * Left clicks at 15 to 25 CPS, with a random jitter between each click
+		 */
+		
+		JITTER_CLICK,
+		
+		/**
+		 * Two fingers alternating on the left button: very close pairs of clicks in bursts of one or two seconds
+		 */
+		
+		BUTTERFLY,
+		
+		/**
+		 * W always held while A and D are alternated, sometimes overlapping, with an occasional S tap
+		 */
+		
+		STRAFE,
+		
+		/**
+		 * Four held keys sending a press event at the OS repeat rate, none of them changing any status
+		 */
+		
+		REPEAT_FLOOD
+	}
+	
+	/**
+	 * The number of nanoseconds in a millisecond
+	 */
+	
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+	
+	/**
+	 * The random generator
+	 */
+	
+	private final SplittableRandom random;
+	
+	/**
+	 * The class constructor
+	 * @param seed The seed of the random generator
+	 */
+	
+	public SyntheticInput(final long seed) {
+		random = new SplittableRandom(seed);
+	}
+	
+	/**
+	 * Generates the events of a pattern, in timestamp order
+	 * @param pattern The input pattern
+	 * @param start The timestamp of the first event, in nanoseconds
+	 * @param duration How long the input lasts, in nanoseconds
+	 * @param sink Receives the generated events
+	 * @return The number of generated events
+	 */
+	
+	public int generate(final Pattern pattern, final long start, final long duration, final InputQueue.Handler sink) {
+		switch (pattern) {
+			case JITTER_CLICK:
+				return jitterClick(start, start + duration, sink);
+			case BUTTERFLY:
+				return butterfly(start, start + duration, sink);
+			case STRAFE:
+				return strafe(start, start + duration, sink);
+			case REPEAT_FLOOD:
+				return repeatFlood(start, start + duration, sink);
+			default:
+				throw new IllegalArgumentException("Unknown pattern " + pattern);
+		}
+	}
+	
+	/**
+	 * Generates the events of a pattern into a new recording
+	 * @param pattern The input pattern
+	 * @param start The timestamp of the first event, in nanoseconds
+	 * @param duration How long the input lasts, in nanoseconds
+	 * @return The recorded events
+	 */
+	
+	public Recording record(final Pattern pattern, final long start, final long duration) {
+		Recording recording = new Recording();
+		generate(pattern, start, duration, recording);
+		return recording;
+	}
+	
+	/**
+	 * @see Pattern#JITTER_CLICK
+	 */
+	
+	private int jitterClick(long time, final long end, final InputQueue.Handler sink) {
+		int events = 0;
+		while (time < end) {
+			long interval = (long) (1_000_000_000L / (15 + random.nextDouble() * 10));
+			// The hand shakes, so every click is a bit early or late
+			long jitter = (long) ((random.nextDouble() - 0.5) * interval * 0.4);
+			long hold = (long) (interval * (0.3 + random.nextDouble() * 0.2));
+			sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, true, time);
+			sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, false, time + hold);
+			events += 2;
+			time += Math.max(interval + jitter, hold + NANOS_PER_MILLI);
+		}
+		return events;
+	}
+	
+	/**
+	 * @see Pattern#BUTTERFLY
+	 */
+	
+	private int butterfly(long time, final long end, final InputQueue.Handler sink) {
+		int events = 0;
+		while (time < end) {
+			final long burstEnd = time + (1000 + random.nextInt(1000)) * NANOS_PER_MILLI;
+			while (time < burstEnd && time < end) {
+				// The second finger hits 10 to 25 milliseconds after the first one
+				long gap = (10 + random.nextInt(16)) * NANOS_PER_MILLI;
+				long hold = (3 + random.nextInt(4)) * NANOS_PER_MILLI;
+				sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, true, time);
+				sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, false, time + hold);
+				sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, true, time + gap);
+				sink.onInput(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, false, time + gap + hold);
+				events += 4;
+				time += (70 + random.nextInt(50)) * NANOS_PER_MILLI;
+			}
+			// A short rest between the bursts
+			time += (200 + random.nextInt(600)) * NANOS_PER_MILLI;
+		}
+		return events;
+	}
+	
+	/**
+	 * @see Pattern#STRAFE
+	 */
+	
+	private int strafe(long time, final long end, final InputQueue.Handler sink) {
+		sink.onInput(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, true, time);
+		int events = 1;
+		int side = GLFW.GLFW_KEY_A;
+		sink.onInput(InputMappings.Type.KEYSYM, side, true, time);
+		events++;
+		while (time < end) {
+			time += (80 + random.nextInt(170)) * NANOS_PER_MILLI;
+			int next = side == GLFW.GLFW_KEY_A ? GLFW.GLFW_KEY_D : GLFW.GLFW_KEY_A;
+			// Sometimes the next side is pressed a few milliseconds before releasing the current one
+			long overlap = random.nextInt(4) == 0 ? (2 + random.nextInt(20)) * NANOS_PER_MILLI : 0;
+			sink.onInput(InputMappings.Type.KEYSYM, next, true, time - overlap);
+			sink.onInput(InputMappings.Type.KEYSYM, side, false, time);
+			events += 2;
+			side = next;
+			if (random.nextInt(10) == 0) {
+				long tap = (40 + random.nextInt(60)) * NANOS_PER_MILLI;
+				sink.onInput(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S, true, time + NANOS_PER_MILLI);
+				sink.onInput(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S, false, time + tap);
+				events += 2;
+				time += tap;
+			}
+		}
+		sink.onInput(InputMappings.Type.KEYSYM, side, false, time);
+		sink.onInput(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, false, time);
+		return events + 2;
+	}
+	
+	/**
+	 * @see Pattern#REPEAT_FLOOD
+	 */
+	
+	private int repeatFlood(long time, final long end, final InputQueue.Handler sink) {
+		final int[] keys = {GLFW.GLFW_KEY_W, GLFW.GLFW_KEY_A, GLFW.GLFW_KEY_SPACE, GLFW.GLFW_KEY_LEFT_SHIFT};
+		int events = 0;
+		while (time < end) {
+			for (int key : keys) {
+				sink.onInput(InputMappings.Type.KEYSYM, key, true, time);
+				events++;
+			}
+			// A typical OS repeat rate of 30 events per second
+			time += 33 * NANOS_PER_MILLI;
+		}
+		for (int key : keys) {
+			sink.onInput(InputMappings.Type.KEYSYM, key, false, time);
+		}
+		return events + keys.length;
+	}
+	
+	/**
+	 * Stores generated events in primitive arrays, so that they can be replayed<br>
+	 * by a benchmark without measuring the generator itself
+	 */
+	
+	public static final class Recording implements InputQueue.Handler {
+		
+		/**
+		 * The recorded input types
+		 */
+		
+		private InputMappings.Type[] types = new InputMappings.Type[256];
+		
+		/**
+		 * The recorded codes
+		 */
+		
+		private int[] codes = new int[256];
+		
+		/**
+		 * The recorded statuses
+		 */
+		
+		private boolean[] pressed = new boolean[256];
+		
+		/**
+		 * The recorded timestamps
+		 */
+		
+		private long[] timestamps = new long[256];
+		
+		/**
+		 * The number of recorded events
+		 */
+		
+		private int size;
+		
+		/**
+		 * Records an event
+		 */
+		
+		@Override
+		public void onInput(final InputMappings.Type type, final int code, final boolean pressed, final long timestamp) {
+			if (size == codes.length) {
+				types = Arrays.copyOf(types, size * 2);
+				codes = Arrays.copyOf(codes, size * 2);
+				this.pressed = Arrays.copyOf(this.pressed, size * 2);
+				timestamps = Arrays.copyOf(timestamps, size * 2);
+			}
+			types[size] = type;
+			codes[size] = code;
+			this.pressed[size] = pressed;
+			timestamps[size] = timestamp;
+			size++;
+		}
+		
+		/**
+		 * Passes the recorded events to a handler, in the order they were recorded
+		 * @param handler The events handler
+		 */
+		
+		public void replay(final InputQueue.Handler handler) {
+			for (int i = 0; i < size; i++) {
+				handler.onInput(types[i], codes[i], pressed[i], timestamps[i]);
+			}
+		}
+		
+		/**
+		 * Gets the number of recorded events
+		 * @return The recorded events
+		 */
+		
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * Gets the input type of an event
+		 * @param index The event index
+		 * @return The input type
+		 */
+		
+		public InputMappings.Type getType(final int index) {
+			return types[index];
+		}
+		
+		/**
+		 * Gets the code of an event
+		 * @param index The event index
+		 * @return The key code, scancode or mouse button
+		 */
+		
+		public int getCode(final int index) {
+			return codes[index];
+		}
+		
+		/**
+		 * Gets the status of an event
+		 * @param index The event index
+		 * @return {@code True} if the key has been pressed
+		 */
+		
+		public boolean isPressed(final int index) {
+			return pressed[index];
+		}
+		
+		/**
+		 * Gets the timestamp of an event
+		 * @param index The event index
+		 * @return The timestamp, in nanoseconds
+		 */
+		
+		public long getTimestamp(final int index) {
+			return timestamps[index];
+		}
+	}
+}
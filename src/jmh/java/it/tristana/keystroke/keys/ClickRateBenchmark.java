@@ -0,0 +1,110 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.tristana.keystroke.input.SyntheticInput;
+
+/**
+ * Measures the {@link ClickRateTracker} fed with synthetic clicks.<br>
+ * Each operation replays a whole recording, reading the counts as a 300 FPS overlay would
+ * @author Massimiliano Micol
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClickRateBenchmark {
+	
+	/**
+	 * The time between two frames at 300 FPS, in nanoseconds
+	 */
+	
+	private static final long FRAME_TIME = TimeUnit.SECONDS.toNanos(1) / 300;
+	
+	/**
+	 * The replayed click pattern
+	 */
+	
+	@Param({"JITTER_CLICK", "BUTTERFLY"})
+	public SyntheticInput.Pattern pattern;
+	
+	/**
+	 * The recorded clicks
+	 */
+	
+	private SyntheticInput.Recording recording;
+	
+	/**
+	 * The tracker under test, with the same windows used by {@link KeyMouse}
+	 */
+	
+	private ClickRateTracker tracker;
+	
+	/**
+	 * Records ten seconds of clicks
+	 */
+	
+	@Setup
+	public void setup() {
+		recording = new SyntheticInput(42).record(pattern, 0, TimeUnit.SECONDS.toNanos(10));
+		tracker = new ClickRateTracker(512, ClickRateTracker.NANOS_PER_SECOND, ClickRateTracker.NANOS_PER_SECOND * 5);
+	}
+	
+	/**
+	 * Records the clicks and reads all the windows once per simulated frame
+	 * @param blackhole Consumes the counts
+	 */
+	
+	@Benchmark
+	public void clickAndCount(final Blackhole blackhole) {
+		tracker.reset();
+		long nextFrame = 0;
+		for (int i = 0, size = recording.size(); i < size; i++) {
+			long timestamp = recording.getTimestamp(i);
+			while (nextFrame < timestamp) {
+				blackhole.consume(tracker.getCount(0, nextFrame));
+				blackhole.consume(tracker.getRate(1, nextFrame));
+				nextFrame += FRAME_TIME;
+			}
+			if (recording.isPressed(i)) {
+				tracker.click(timestamp);
+			}
+		}
+		blackhole.consume(tracker.getPeak());
+	}
+}
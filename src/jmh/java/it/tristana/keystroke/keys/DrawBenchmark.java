@@ -0,0 +1,133 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import it.tristana.keystroke.render.HeadlessRenderer;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Measures a frame drawn by the {@link HeadlessRenderer}: resolving the layout,<br>
+ * rasterizing the keys backgrounds and their text into memory
+ * @author Massimiliano Micol
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DrawBenchmark {
+	
+	/**
+	 * Names the keys after their printable ASCII character, without asking GLFW: it is never initialised in a benchmark
+	 */
+	
+	private static final KeyNameLookup ASCII_LOOKUP = code -> code > ' ' && code <= '~' ? String.valueOf((char) code) : null;
+	
+	/**
+	 * The drawn keys
+	 */
+	
+	private Key[] keys;
+	
+	/**
+	 * The keys layout
+	 */
+	
+	private KeyLayout layout;
+	
+	/**
+	 * The renderer drawing into memory
+	 */
+	
+	private HeadlessRenderer renderer;
+	
+	/**
+	 * Builds a full keyboard row layout, bigger than the default one
+	 */
+	
+	@Setup
+	public void setup() {
+		KeyLabelCache.getInstance().setLookup(ASCII_LOOKUP);
+		keys = new Key[100];
+		for (int i = 0; i < keys.length; i++) {
+			KeyBinding binding = new KeyBinding("key.keystroke.benchmark.draw." + i, InputMappings.Type.KEYSYM, 32 + i, "key.categories.keystroke.benchmark");
+			keys[i] = i % 10 == 0 ? new KeyMouse(i % 20, i / 20 * 5, 1, 5, binding, "LMB") : new Key(i % 20, i / 20 * 5, 1, 5, binding, null);
+		}
+		layout = new KeyLayout(keys);
+		renderer = new HeadlessRenderer(960, 540);
+	}
+	
+	/**
+	 * Resolves the key labels through GLFW again
+	 */
+	
+	@TearDown
+	public void tearDown() {
+		KeyLabelCache.getInstance().setLookup(KeyNameLookup.GLFW_LOOKUP);
+	}
+	
+	/**
+	 * Simulates a frame with an unchanged window
+	 * @return The number of drawn rectangles
+	 */
+	
+	@Benchmark
+	public int frame() {
+		renderer.clear(0);
+		layout.resolve(renderer.getWidth(), renderer.getHeight(), 2);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].drawBackground(renderer, layout, i);
+		}
+		renderer.flush();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].draw(renderer, layout, i);
+		}
+		return renderer.getFills();
+	}
+	
+	/**
+	 * Simulates a frame right after the window was resized
+	 * @return The text scale, so the layout isn't optimized away
+	 */
+	
+	@Benchmark
+	public float resize() {
+		layout.invalidate();
+		layout.resolve(renderer.getWidth(), renderer.getHeight(), 2);
+		return layout.getTextRatio();
+	}
+}
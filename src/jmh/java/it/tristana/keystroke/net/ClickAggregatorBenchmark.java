@@ -0,0 +1,217 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Measures how the {@link ClickAggregator} scales with the threads feeding it.<br>
+ * 500 simulated players click at 20 CPS, split between the benchmark threads as a server<br>
+ * splits its connections between the network threads. Each operation records one click and<br>
+ * reads the CPS of its button, as the server does when it checks the players.<br>
+ * The stripe count is fixed, so every click finds its slot at the same cost: the global lock baseline<br>
+ * only adds one lock around the same calls, and the thread counts show what the striping gains
+ * @author Massimiliano Micol
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClickAggregatorBenchmark {
+	
+	/**
+	 * The number of simulated players
+	 */
+	
+	private static final int PLAYERS = 500;
+	
+	/**
+	 * The time between two clicks of a player, for 20 CPS
+	 */
+	
+	private static final long CLICK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+	
+	/**
+	 * The number of stripes of the aggregator, about 8 players each
+	 */
+	
+	private static final int STRIPES = 64;
+	
+	/**
+	 * Whether all the threads also take one global lock around each click, the baseline the stripes are compared with
+	 */
+	
+	@Param({"false", "true"})
+	public boolean globalLock;
+	
+	/**
+	 * The aggregator under test, shared by all the threads
+	 */
+	
+	private ClickAggregator aggregator;
+	
+	/**
+	 * The lock taken by the baseline
+	 */
+	
+	private Object lock;
+	
+	/**
+	 * Builds the aggregator
+	 */
+	
+	@Setup
+	public void setup() {
+		aggregator = new ClickAggregator(STRIPES);
+		lock = new Object();
+	}
+	
+	/**
+	 * The players of one thread, with their own simulated clock
+	 * @author Massimiliano Micol
+	 */
+	
+	@State(Scope.Thread)
+	public static class Clicker {
+		
+		/**
+		 * The first player id of this thread
+		 */
+		
+		private int first;
+		
+		/**
+		 * The number of players of this thread
+		 */
+		
+		private int count;
+		
+		/**
+		 * The index of the next player to click
+		 */
+		
+		private int next;
+		
+		/**
+		 * The simulated time of the current round of clicks
+		 */
+		
+		private long round;
+		
+		/**
+		 * Picks the players of this thread
+		 * @param params The thread index and count
+		 */
+		
+		@Setup
+		public void setup(final ThreadParams params) {
+			first = PLAYERS * params.getThreadIndex() / params.getThreadCount();
+			count = Math.max(PLAYERS * (params.getThreadIndex() + 1) / params.getThreadCount() - first, 1);
+		}
+	}
+	
+	/**
+	 * Records one click and reads the CPS of its player
+	 * @param clicker The thread players
+	 * @return The player CPS
+	 */
+	
+	private int click(final Clicker clicker) {
+		final int player = clicker.first + clicker.next;
+		// The players of a round click one after the other, each once per interval
+		final long timestamp = clicker.round + CLICK_INTERVAL * clicker.next / clicker.count;
+		if (++clicker.next == clicker.count) {
+			clicker.next = 0;
+			clicker.round += CLICK_INTERVAL;
+		}
+		if (globalLock) {
+			synchronized (lock) {
+				return record(player, timestamp);
+			}
+		}
+		return record(player, timestamp);
+	}
+	
+	/**
+	 * Records one click in the aggregator and reads the CPS of its player
+	 * @param player The player id
+	 * @param timestamp The click time
+	 * @return The player CPS
+	 */
+	
+	private int record(final int player, final long timestamp) {
+		aggregator.click(player, 0, timestamp);
+		return aggregator.getCps(player, 0, timestamp);
+	}
+	
+	/**
+	 * One network thread
+	 * @param clicker The thread players
+	 * @param blackhole Consumes the CPS
+	 */
+	
+	@Benchmark
+	@Threads(1)
+	public void oneThread(final Clicker clicker, final Blackhole blackhole) {
+		blackhole.consume(click(clicker));
+	}
+	
+	/**
+	 * Four network threads
+	 * @param clicker The thread players
+	 * @param blackhole Consumes the CPS
+	 */
+	
+	@Benchmark
+	@Threads(4)
+	public void fourThreads(final Clicker clicker, final Blackhole blackhole) {
+		blackhole.consume(click(clicker));
+	}
+	
+	/**
+	 * Sixteen network threads
+	 * @param clicker The thread players
+	 * @param blackhole Consumes the CPS
+	 */
+	
+	@Benchmark
+	@Threads(16)
+	public void sixteenThreads(final Clicker clicker, final Blackhole blackhole) {
+		blackhole.consume(click(clicker));
+	}
+}
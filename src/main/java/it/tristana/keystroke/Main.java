@@ -24,17 +24,39 @@ SOFTWARE.
 
 package it.tristana.keystroke;
 
+import java.io.File;
+
 import org.lwjgl.glfw.GLFW;
 
 import com.mojang.blaze3d.matrix.MatrixStack;
 
 import it.tristana.keystroke.config.Config;
 import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyLabelCache;
+import it.tristana.keystroke.keys.KeyLayout;
+import it.tristana.keystroke.metrics.LatencyMonitor;
+import it.tristana.keystroke.net.KeystrokeNetwork;
+import it.tristana.keystroke.render.AllocationProbe;
+import it.tristana.keystroke.render.HeatmapTexture;
+import it.tristana.keystroke.render.MinecraftRenderer;
+import it.tristana.keystroke.render.OverlayCache;
+import it.tristana.keystroke.render.OverlayRenderer;
+import it.tristana.keystroke.stats.PressHeatmap;
+import it.tristana.keystroke.stream.SharedStateWriter;
+import it.tristana.keystroke.stream.StreamServer;
 import net.minecraft.client.MainWindow;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.network.play.ClientPlayNetHandler;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+import net.minecraft.entity.Entity;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.client.event.InputEvent;
 import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.client.registry.ClientRegistry;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
@@ -47,11 +69,131 @@ import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 @Mod.EventBusSubscriber
 public final class Main {
 	
+	/**
+	 * How often the debug line text is built again, in nanoseconds
+	 */
+	
+	private static final long DEBUG_LINE_REFRESH = 500_000_000L;
+	
 	/**
 	 * The singleton instance of the configuration
 	 */
 	
 	private Config settings;
+	
+	/**
+	 * The singleton instance of the network channel
+	 */
+	
+	private final KeystrokeNetwork network;
+	
+	/**
+	 * The renderer drawing the keys in the game
+	 */
+	
+	private MinecraftRenderer renderer;
+	
+	/**
+	 * The offscreen copy of the overlay, or {@code null} if the keys are drawn every frame
+	 */
+	
+	private OverlayCache overlayCache;
+	
+	/**
+	 * Draws the press heatmap, {@code null} if it is not shown
+	 */
+	
+	private HeatmapTexture heatmap;
+	
+	/**
+	 * Measures the bytes allocated while drawing the keys, only used in debug mode
+	 */
+	
+	private AllocationProbe allocations;
+	
+	/**
+	 * Measures the input to overlay latency, only used in debug mode
+	 */
+	
+	private LatencyMonitor latency;
+	
+	/**
+	 * Publishes the keys to the local streaming clients, {@code null} if the stream is disabled
+	 */
+	
+	private StreamServer stream;
+	
+	/**
+	 * Exports the keys status in a memory-mapped file, {@code null} if the export is disabled
+	 */
+	
+	private SharedStateWriter sharedState;
+	
+	/**
+	 * The key binding writing the latency histograms to a file, only registered in debug mode
+	 */
+	
+	private KeyBinding dumpLatencyKey;
+	
+	/**
+	 * The text of the debug line, refreshed every {@link #DEBUG_LINE_REFRESH} nanoseconds
+	 */
+	
+	private String debugLine = "";
+	
+	/**
+	 * When the debug line was last refreshed, as given by {@link System#nanoTime()}
+	 */
+	
+	private long debugLineRefresh;
+	
+	/**
+	 * The number of ticks passed since the overlay was last rendered
+	 */
+	
+	private int ticksSinceRender;
+	
+	/**
+	 * The number of the current frame, incremented when each frame starts
+	 */
+	
+	private long frame;
+	
+	/**
+	 * The number of the last frame the overlay was drawn in
+	 */
+	
+	private long drawnFrame = -1;
+	
+	/**
+	 * How many HUD elements were drawn during the current frame, each one fires an overlay event
+	 */
+	
+	private int drawRequests;
+	
+	/**
+	 * How many HUD elements were drawn during the previous frame
+	 */
+	
+	private int lastFrameDrawRequests;
+	
+	/**
+	 * How many times the keys were drawn during the current frame
+	 */
+	
+	private int keyDraws;
+	
+	/**
+	 * How many times the keys were drawn during the previous frame: at most 1, and 0 when the cached overlay was reused
+	 */
+	
+	private int lastFrameKeyDraws;
+	
+	/**
+	 * Whether the game window had the focus during the last tick
+	 */
+	
+	private boolean wasFocused;
 
 	/**
 	 * Entry point of the mod. Registering the setup event and this class itself as an events holder
@@ -61,6 +203,9 @@ public final class Main {
 		// The setup event
 		FMLJavaModLoadingContext.get().getModEventBus().addListener(this::loadConfig);
 		MinecraftForge.EVENT_BUS.register(this);
+		// The channel must be registered while the mod is built, the server relays the keys from there
+		network = KeystrokeNetwork.getInstance();
+		MinecraftForge.EVENT_BUS.register(network);
 	}
 
 	/**
@@ -71,23 +216,217 @@ public final class Main {
 	@SubscribeEvent
 	public void loadConfig(final FMLClientSetupEvent event) {
 		settings = Config.getInstance();
+		renderer = new MinecraftRenderer(Minecraft.getInstance().fontRenderer, settings.getKeys().length * 2);
+		if (Config.OVERLAY_CACHE) {
+			overlayCache = new OverlayCache(Config.OVERLAY_REFRESH_RATE);
+		}
+		if (Config.HEATMAP) {
+			heatmap = new HeatmapTexture();
+		}
+		if (Config.STREAM_PORT > 0) {
+			stream = StreamServer.open(Config.STREAM_PORT);
+		}
+		if (Config.SHARED_STATE) {
+			sharedState = SharedStateWriter.open(new File(Minecraft.getInstance().gameDir, "keystroke/state.bin").toPath());
+		}
+		if (Config.DEBUG) {
+			allocations = new AllocationProbe();
+			latency = settings.getLatencyMonitor();
+			// Not bound by default, it can be set in the controls screen
+			dumpLatencyKey = new KeyBinding("key.keystroke.dumpLatency", InputMappings.INPUT_INVALID.getKeyCode(), "key.categories.keystroke");
+			ClientRegistry.registerKeyBinding(dumpLatencyKey);
+		}
+	}
+	
+	/**
+	 * Called at the start and at the end of every rendered frame
+	 * @param event The frame event
+	 */
+	
+	@SubscribeEvent
+	public void onFrame(final TickEvent.RenderTickEvent event) {
+		if (event.phase == TickEvent.Phase.START) {
+			frame++;
+			lastFrameDrawRequests = drawRequests;
+			drawRequests = 0;
+			lastFrameKeyDraws = keyDraws;
+			keyDraws = 0;
+			// Applies the input received since the last frame and latches it, even while the HUD is hidden:
+			// the external overlays and the spectators still read the shown keys
+			settings.processInput();
+			beginFrame();
+		}
+		// Once per frame, after the input of this frame has been applied
+		else {
+			if (stream != null) {
+				stream.publish(settings.getKeys(), settings.getLayout());
+			}
+			if (sharedState != null) {
+				sharedState.publish(settings.getKeys());
+			}
+		}
 	}
 	
 	/**
-	 * Called when the game finished to render the main window, without any opened gui
+	 * Called when the game finished to render each element of the HUD, without any opened gui
 	 * @param event The rendering event
 	 */
 	
 	@SubscribeEvent
 	public void onRender(final RenderGameOverlayEvent.Post event) {
+		drawRequests++;
+		// The event is fired once for each HUD element, the overlay is drawn after the whole HUD
+		if (event.getType() != RenderGameOverlayEvent.ElementType.ALL) {
+			return;
+		}
+		// Even if the whole HUD gets rendered twice, the overlay is only drawn once per frame
+		if (drawnFrame == frame) {
+			return;
+		}
+		drawnFrame = frame;
+		if (allocations != null) {
+			allocations.begin();
+		}
+		if (latency != null) {
+			latency.onFrameStart();
+		}
+		ticksSinceRender = 0;
 		MainWindow window = event.getWindow();
 		MatrixStack matrix = event.getMatrixStack();
-		// Draws all the keys on screen
-		for (Key key : settings.getKeys()) {
-			key.draw(window, matrix);
+		// The geometry is only computed again if the window changed
+		KeyLayout layout = settings.getLayout();
+		layout.resolve(window);
+		renderer.beginFrame(matrix);
+		if (overlayCache == null) {
+			drawKeys(renderer, layout);
+		}
+		else {
+			// The keys are only drawn when something changed, otherwise the previous frame is reused
+			if (overlayCache.beginRefresh(window, settings.getRevision())) {
+				drawKeys(renderer, layout);
+				overlayCache.endRefresh();
+			}
+			overlayCache.blit(window, matrix);
+		}
+		if (heatmap != null) {
+			drawHeatmap(window, matrix);
+		}
+		if (latency != null) {
+			latency.onFrameEnd();
+			drawDebugLine(window);
+		}
+		if (allocations != null) {
+			allocations.end();
 		}
 	}
 	
+	/**
+	 * Decides how the keys are drawn in this frame: the local ones, or the ones of the spectated player if known
+	 */
+	
+	private void beginFrame() {
+		Minecraft minecraft = Minecraft.getInstance();
+		Entity viewed = minecraft.getRenderViewEntity();
+		int player = -1;
+		if (viewed != null && viewed != minecraft.player) {
+			player = network.getView().find(viewed.getEntityId());
+		}
+		settings.beginFrame(network.getView(), player);
+	}
+	
+	/**
+	 * Draws the press heatmap in the bottom right corner of the screen, a quarter of the screen wide
+	 * @param window The main window
+	 * @param matrix The graphics matrix
+	 */
+	
+	private void drawHeatmap(final MainWindow window, final MatrixStack matrix) {
+		final float width = window.getScaledWidth() / 4f;
+		final float height = width * PressHeatmap.HEIGHT / PressHeatmap.WIDTH;
+		heatmap.draw(settings.getHeatmap(), matrix, window.getScaledWidth() - width - 2, window.getScaledHeight() - height - 2, width, height);
+	}
+	
+	/**
+	 * Draws the debug measures in the bottom left corner of the screen
+	 * @param window The main window
+	 */
+	
+	private void drawDebugLine(final MainWindow window) {
+		long now = System.nanoTime();
+		// Building the text allocates, so it is only done a couple of times per second
+		if (now - debugLineRefresh >= DEBUG_LINE_REFRESH) {
+			debugLine = latency.getSummary() + " | alloc " + allocations.getLastBytes() + " B | draws " + renderer.getBatch().getLastFrameDrawCalls() + " | hud events " + lastFrameDrawRequests + " | key draws " + lastFrameKeyDraws + " | latched " + settings.getLatchedPresses() + " | fixed " + settings.getCorrections();
+			debugLineRefresh = now;
+		}
+		renderer.drawText(debugLine, 2, window.getScaledHeight() - renderer.getFontHeight() - 2, 1f, Key.TEXT_COLOR);
+	}
+	
+	/**
+	 * Draws all the keys, first their backgrounds and then their text
+	 * @param renderer The renderer drawing the overlay
+	 * @param layout The keys layout, already resolved for the current window
+	 */
+	
+	private void drawKeys(final OverlayRenderer renderer, final KeyLayout layout) {
+		keyDraws++;
+		// Draws all the keys backgrounds on screen with a single draw call...
+		Key[] keys = settings.getKeys();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].drawBackground(renderer, layout, i);
+		}
+		renderer.flush();
+		// ...and then their text over them
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].draw(renderer, layout, i);
+		}
+	}
+	
+	/**
+	 * Called at the start and at the end of every client tick
+	 * @param event The tick event
+	 */
+	
+	@SubscribeEvent
+	public void onTick(final TickEvent.ClientTickEvent event) {
+		// Remapped keys are picked up at most a tick later
+		if (event.phase == TickEvent.Phase.END) {
+			// The overlay isn't rendered while the HUD is hidden, but the input must still be applied
+			settings.processInput();
+			settings.pollGamepad();
+			settings.reconcile(Minecraft.getInstance().getMainWindow().getHandle());
+			if (latency != null) {
+				// The overlay has been hidden for a second, its pending events would only be shown much later
+				if (++ticksSinceRender >= 20) {
+					latency.discardPending();
+				}
+				while (dumpLatencyKey.isPressed()) {
+					latency.dump(new File(Minecraft.getInstance().gameDir, "keystroke"));
+				}
+			}
+			settings.refreshBindings();
+			ClientPlayNetHandler connection = Minecraft.getInstance().getConnection();
+			if (connection != null) {
+				network.sendState(settings.getKeys(), connection.getNetworkManager());
+			}
+			// GLFW has no layout change callback, but the layout is usually switched while the game is in the background
+			boolean focused = Minecraft.getInstance().isGameFocused();
+			if (focused && !wasFocused) {
+				KeyLabelCache.getInstance().invalidate();
+			}
+			wasFocused = focused;
+		}
+	}
+	
+	/**
+	 * Called when the player joins a world, locally or on a server
+	 * @param event The login event
+	 */
+	
+	@SubscribeEvent
+	public void onJoin(final ClientPlayerNetworkEvent.LoggedInEvent event) {
+		network.onJoin();
+	}
+	
 	/**
 	 * Called when a keyboard's key is pressed, is hold or is released
 	 * @param event The keyboard's event
@@ -95,7 +434,19 @@ public final class Main {
 	
 	@SubscribeEvent
 	public void keyPressed(final InputEvent.KeyInputEvent event) {
-		settings.onKey(event.getKey(), event.getAction() != GLFW.GLFW_RELEASE);
+		// Taken first, as close as possible to the GLFW callback
+		final long timestamp = System.nanoTime();
+		// Holding a key doesn't change its status
+		if (event.getAction() == GLFW.GLFW_REPEAT) {
+			return;
+		}
+		// Keys unknown to GLFW can only be bound by their scancode
+		if (event.getKey() == GLFW.GLFW_KEY_UNKNOWN) {
+			settings.capture(InputMappings.Type.SCANCODE, event.getScanCode(), event.getAction() != GLFW.GLFW_RELEASE, timestamp);
+		}
+		else {
+			settings.capture(InputMappings.Type.KEYSYM, event.getKey(), event.getAction() != GLFW.GLFW_RELEASE, timestamp);
+		}
 	}
 	
 	/**
@@ -105,6 +456,6 @@ public final class Main {
 	
 	@SubscribeEvent
 	public void keyPressed(final InputEvent.MouseInputEvent event) {
-		settings.onKey(event.getButton(), event.getAction() != GLFW.GLFW_RELEASE);
+		settings.capture(InputMappings.Type.MOUSE, event.getButton(), event.getAction() != GLFW.GLFW_RELEASE, System.nanoTime());
 	}
 }
@@ -24,15 +24,42 @@ SOFTWARE.
 
 package it.tristana.keystroke.config;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import it.tristana.keystroke.input.GamepadPoller;
+import it.tristana.keystroke.input.InputQueue;
+import it.tristana.keystroke.input.KeyReconciler;
 import it.tristana.keystroke.keys.Key;
-import it.tristana.keystroke.keys.KeyJump;
+import it.tristana.keystroke.keys.KeyLabelCache;
+import it.tristana.keystroke.keys.KeyLayout;
 import it.tristana.keystroke.keys.KeyMouse;
+import it.tristana.keystroke.metrics.LatencyMonitor;
+import it.tristana.keystroke.net.KeyStateCodec;
+import it.tristana.keystroke.net.SpectatorView;
+import it.tristana.keystroke.stats.KeyStatistics;
+import it.tristana.keystroke.stats.PressHeatmap;
+import it.tristana.keystroke.timeline.TimelineRecorder;
 import net.minecraft.client.GameSettings;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+import net.minecraftforge.fml.loading.FMLPaths;
 
 /**
  * This class builds and holds the keys. It has a singleton pattern.<br>
- * Its instance may be accessed with {@link #getInstance()}
+ * Its instance may be accessed with {@link #getInstance()}.<br>
+ * The keys are read from a layout file in the config directory, see {@link LayoutSpec}.<br>
+ * When the file changes it is parsed on a background thread, and the new keys<br>
+ * replace the old ones at the start of the next frame
  * @author Massimiliano Micol
  */
 
@@ -45,6 +72,118 @@ public final class Config {
 	
 	private static final double SCREEN_1920_1080_RATIO = 1.777;
 	
+	/**
+	 * The maximum number of input events waiting to be applied to the keys
+	 */
+	
+	private static final int INPUT_QUEUE_CAPACITY = 1024;
+	
+	/**
+	 * The name of the layout file, in the game config directory
+	 */
+	
+	private static final String LAYOUT_FILE = "keystroke-layout.txt";
+	
+	/**
+	 * The path of the statistics file, in the game directory
+	 */
+	
+	private static final String STATISTICS_FILE = "keystroke/statistics.bin";
+	
+	/**
+	 * The directory holding the timeline recordings, in the game directory
+	 */
+	
+	private static final String TIMELINE_DIRECTORY = "keystroke";
+	
+	/**
+	 * How often the statistics are written to their file, in seconds
+	 */
+	
+	private static final long STATISTICS_INTERVAL = 60;
+	
+	/**
+	 * The logger used to report the layout loading errors
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * Whether the debug measures are enabled, with the {@code -Dkeystroke.debug=true} JVM argument
+	 */
+	
+	public static final boolean DEBUG = Boolean.getBoolean("keystroke.debug");
+	
+	/**
+	 * Whether the overlay is kept in an offscreen texture and only drawn again when it changes,<br>
+	 * with the {@code -Dkeystroke.overlayCache=true} JVM argument
+	 */
+	
+	public static final boolean OVERLAY_CACHE = Boolean.getBoolean("keystroke.overlayCache");
+	
+	/**
+	 * The maximum number of times per second the cached overlay is drawn again, 0 for no limit.<br>
+	 * Set with the {@code -Dkeystroke.overlayRefreshRate=<value>} JVM argument
+	 */
+	
+	public static final int OVERLAY_REFRESH_RATE = Integer.getInteger("keystroke.overlayRefreshRate", 0);
+	
+	/**
+	 * Whether every key status change is recorded to a timeline file, to replay the overlay later.<br>
+	 * Set with the {@code -Dkeystroke.record=true} JVM argument
+	 */
+	
+	public static final boolean RECORD = Boolean.getBoolean("keystroke.record");
+	
+	/**
+	 * The local port the keys are streamed on, to show them in streaming software. 0 disables the stream.<br>
+	 * Set with the {@code -Dkeystroke.streamPort=<port>} JVM argument
+	 */
+	
+	public static final int STREAM_PORT = Integer.getInteger("keystroke.streamPort", 0);
+	
+	/**
+	 * Whether the keys status is exported in a memory-mapped file for other processes,<br>
+	 * with the {@code -Dkeystroke.sharedState=true} JVM argument
+	 */
+	
+	public static final boolean SHARED_STATE = Boolean.getBoolean("keystroke.sharedState");
+	
+	/**
+	 * The minimum time a key press is shown for, in nanoseconds, even if the key was released earlier.<br>
+	 * Set in milliseconds with the {@code -Dkeystroke.minPressTime=<value>} JVM argument
+	 */
+	
+	public static final long MIN_PRESS_TIME = TimeUnit.MILLISECONDS.toNanos(Long.getLong("keystroke.minPressTime", 50));
+	
+	/**
+	 * Whether a heatmap of the presses of the whole keyboard and mouse is shown,<br>
+	 * with the {@code -Dkeystroke.heatmap=true} JVM argument
+	 */
+	
+	public static final boolean HEATMAP = Boolean.getBoolean("keystroke.heatmap");
+	
+	/**
+	 * The seconds of CPS history drawn as a graph on the mouse keys, 0 hides the graph.<br>
+	 * Set with the {@code -Dkeystroke.cpsGraph=<seconds>} JVM argument
+	 */
+	
+	public static final int CPS_GRAPH_SECONDS = Integer.getInteger("keystroke.cpsGraph", 0);
+	
+	/**
+	 * The length of the release animation of the keys, in nanoseconds, the press one being half as long. 0 disables the animations.<br>
+	 * Set in milliseconds with the {@code -Dkeystroke.animationTime=<value>} JVM argument
+	 */
+	
+	public static final long ANIMATION_TIME = TimeUnit.MILLISECONDS.toNanos(Long.getLong("keystroke.animationTime", 80));
+	
+	/**
+	 * Whether the server relays the keys of the players to the spectators, with the {@code -Dkeystroke.spectatorRelay=true}<br>
+	 * JVM argument. It is read by the integrated server, so it applies to the worlds opened to LAN
+	 */
+	
+	public static final boolean SPECTATOR_RELAY = Boolean.getBoolean("keystroke.spectatorRelay");
+	
 	/**
 	 * The singleton instance
 	 */
@@ -55,30 +194,168 @@ public final class Config {
 	 * An array of all the declared keys
 	 */
 	
-	private final Key[] elements;
+	private Key[] elements;
+	
+	/**
+	 * The table used to find the keys bound to an input
+	 */
+	
+	private KeyIndex index;
+	
+	/**
+	 * The pixel geometry of the keys
+	 */
+	
+	private KeyLayout layout;
+	
+	/**
+	 * Added to the revision of the keys, so that it keeps growing when the keys are replaced
+	 */
+	
+	private int revisionBase;
+	
+	/**
+	 * A layout loaded by the watcher thread and not yet in use
+	 */
+	
+	private final AtomicReference<LoadedLayout> pendingLayout;
+	
+	/**
+	 * All the KeyBindings the keys may be bound to
+	 */
+	
+	private final KeyBinding[] bindings;
+	
+	/**
+	 * The press statistics of the keys, kept across game sessions
+	 */
+	
+	private final KeyStatistics statistics;
+	
+	/**
+	 * The input events recorded by the handlers and not yet applied to the keys
+	 */
+	
+	private final InputQueue input;
+	
+	/**
+	 * Applies the drained input events, kept in a field so draining doesn't allocate
+	 */
+	
+	private final InputQueue.Handler inputHandler;
+	
+	/**
+	 * Reads the controller buttons, only polled if some keys show them
+	 */
+	
+	private final GamepadPoller gamepad;
+	
+	/**
+	 * Applies the changed controller buttons, kept in a field so polling doesn't allocate
+	 */
+	
+	private final GamepadPoller.Handler gamepadHandler;
+	
+	/**
+	 * Applies the corrections of the reconciler, kept in a field so reconciling doesn't allocate
+	 */
+	
+	private final InputQueue.Handler correctionHandler;
+	
+	/**
+	 * Fixes the keys whose release or press event never arrived
+	 */
+	
+	private final KeyReconciler reconciler;
+	
+	/**
+	 * Measures the input to overlay latency, {@code null} unless in debug mode
+	 */
+	
+	private final LatencyMonitor latency;
+	
+	/**
+	 * Records the key status changes, {@code null} unless recording
+	 */
+	
+	private final TimelineRecorder recorder;
+	
+	/**
+	 * When the previous frame started, as given by {@link System#nanoTime()}
+	 */
+	
+	private long lastFrame;
+	
+	/**
+	 * Counts the presses of every key, {@code null} unless the heatmap is shown
+	 */
+	
+	private final PressHeatmap heatmap;
 
 	/**
 	 * A private constructor for the singleton
 	 */
 	
 	private Config() {
-		// The base coordinates of the keys, expressed in percentage
-		final double baseX = 75;
-		final double baseY = 25;
-		final double width = 5;
-		final double height = width * SCREEN_1920_1080_RATIO;
 		// No need for this warning, the Closeable instance is closed by the Minecraft code
 		@SuppressWarnings("resource")
 		GameSettings settings = Minecraft.getInstance().gameSettings;
-		elements = new Key[] {
-			new Key(baseX, baseY, width, height, settings.keyBindForward, null),
-			new Key(baseX, baseY + height, width, height, settings.keyBindBack, null),
-			new Key(baseX - width, baseY + height, width, height, settings.keyBindLeft, null),
-			new Key(baseX + width, baseY + height, width, height, settings.keyBindRight, null),
-			new KeyMouse(baseX - width, baseY + height * 2, width * 1.5, height, settings.keyBindAttack, "LMB"),
-			new KeyMouse(baseX + width * 0.5, baseY + height * 2, width * 1.5, height, settings.keyBindUseItem, "RMB"),
-			new KeyJump(baseX - width, baseY + height * 3, width * 3, height / 2, settings.keyBindJump, "JUMP")
-		};
+		bindings = settings.keyBindings;
+		pendingLayout = new AtomicReference<LoadedLayout>();
+		statistics = new KeyStatistics(FMLPaths.GAMEDIR.get().resolve(STATISTICS_FILE));
+		statistics.startWriter(STATISTICS_INTERVAL, TimeUnit.SECONDS);
+		Path file = FMLPaths.CONFIGDIR.get().resolve(LAYOUT_FILE);
+		use(loadLayout(file));
+		// From now on the file changes are loaded in background
+		new LayoutWatcher(file, spec -> pendingLayout.set(new LoadedLayout(spec, bindings, statistics, CPS_GRAPH_SECONDS))).start();
+		input = new InputQueue(INPUT_QUEUE_CAPACITY);
+		inputHandler = this::onKey;
+		gamepad = new GamepadPoller();
+		gamepadHandler = this::onGamepadButton;
+		correctionHandler = this::onCorrection;
+		reconciler = new KeyReconciler();
+		latency = DEBUG ? new LatencyMonitor() : null;
+		recorder = RECORD ? TimelineRecorder.start(FMLPaths.GAMEDIR.get().resolve(TIMELINE_DIRECTORY)) : null;
+		heatmap = HEATMAP ? new PressHeatmap() : null;
+	}
+	
+	/**
+	 * Loads the layout file at startup, creating it with the default layout if it doesn't exist
+	 * @param file The layout file
+	 * @return The loaded layout, or the default one if the file is not valid
+	 */
+	
+	private LoadedLayout loadLayout(final Path file) {
+		List<String> defaults = LayoutSpec.defaultLines(SCREEN_1920_1080_RATIO);
+		try {
+			if (!Files.exists(file)) {
+				Files.createDirectories(file.getParent());
+				Files.write(file, defaults, StandardCharsets.UTF_8);
+			}
+			return new LoadedLayout(LayoutSpec.parse(Files.readAllLines(file, StandardCharsets.UTF_8)), bindings, statistics, CPS_GRAPH_SECONDS);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			LOGGER.error("Could not load the layout file {}, using the default layout: {}", file, e.getMessage());
+			return new LoadedLayout(LayoutSpec.parse(defaults), bindings, statistics, CPS_GRAPH_SECONDS);
+		}
+	}
+	
+	/**
+	 * Replaces the keys with the ones of a layout
+	 * @param loaded The new layout
+	 */
+	
+	private void use(final LoadedLayout loaded) {
+		if (elements != null) {
+			revisionBase = getRevision() + 1;
+		}
+		elements = loaded.keys;
+		index = loaded.index;
+		layout = loaded.layout;
+		// The new keys are all released, the held buttons must be dispatched again
+		if (gamepad != null) {
+			gamepad.reset();
+		}
 	}
 	
 	/**
@@ -102,39 +379,227 @@ public final class Config {
 		return elements;
 	}
 	
+	/**
+	 * Gets the layout holding the pixel geometry of the keys, in the same order as {@link #getKeys()}
+	 * @return The keys layout
+	 */
+	
+	public KeyLayout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 * Gets a number that changes every time the appearance of any key, its label or the layout changes
+	 * @return The overlay revision
+	 */
+	
+	public int getRevision() {
+		// All the revisions only grow, so their sum changes whenever one of them does
+		int revision = revisionBase + layout.getRevision() + KeyLabelCache.getInstance().getGeneration();
+		for (Key element : elements) {
+			revision += element.getRevision();
+		}
+		return revision;
+	}
+	
+	/**
+	 * Gets the queue of the input events waiting to be applied to the keys
+	 * @return The input queue
+	 */
+	
+	public InputQueue getInputQueue() {
+		return input;
+	}
+	
+	/**
+	 * Gets the latency measures
+	 * @return The latency monitor, or {@code null} if not in debug mode
+	 */
+	
+	public LatencyMonitor getLatencyMonitor() {
+		return latency;
+	}
+	
+	/**
+	 * Gets the press statistics of the keys
+	 * @return The key statistics
+	 */
+	
+	public KeyStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Gets the presses of every key of the keyboard and mouse
+	 * @return The press heatmap, or {@code null} if it is not shown
+	 */
+	
+	public PressHeatmap getHeatmap() {
+		return heatmap;
+	}
+	
 	/**
 	 * Called from the {@link it.tristana.keystroke.Main Main} class every time<br>
-	 * a keyboard or mouse key is pressed
-	 * @param key
-	 * @param pressed
+	 * a keyboard or mouse key is pressed or released. The event is only recorded,<br>
+	 * it is applied to the keys by the next {@link #processInput()} call
+	 * @param type The input type, telling apart keyboard keys and mouse buttons
+	 * @param key The key code, scancode or mouse button, as specified by <a href="https://www.glfw.org/docs/latest/group__keys.html">this link</a>
+	 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+	 * @param timestamp When the event arrived, as given by {@link System#nanoTime()}
 	 */
 	
-	public void onKey(final int key, final boolean pressed) {
-		// Searches for a Key with this value
-		Key element = getElementByKey(key);
-		// If it is found then it updates the key status
-		if (element != null) {
-			element.setKeyDown(pressed);
+	public void capture(final InputMappings.Type type, final int key, final boolean pressed, final long timestamp) {
+		input.offer(type, key, pressed, timestamp);
+	}
+	
+	/**
+	 * Applies all the recorded input events to the keys, in the order they arrived.<br>
+	 * If a new layout has been loaded, the keys are replaced first
+	 */
+	
+	public void processInput() {
+		LoadedLayout loaded = pendingLayout.getAndSet(null);
+		if (loaded != null) {
+			use(loaded);
 		}
+		input.drain(inputHandler);
 	}
 	
 	/**
-	 * Searches and returns the first key whose {@link Key#getKey()}<br>
-	 * value is the same as the input parameter
-	 * @param key The keyboard integer value, as specified by <a href="https://www.glfw.org/docs/latest/group__keys.html">this link</a>
-	 * @return The first key with this integer value, or {@code null} if none are found
+	 * Called from the {@link it.tristana.keystroke.Main Main} class once per frame, after {@link #processInput()},<br>
+	 * to decide how each key is drawn: short presses are kept on screen for {@link #MIN_PRESS_TIME}.<br>
+	 * While spectating another player, the keys show their state instead, in the same layout order.<br>
+	 * The press animations then move by the time passed since the previous frame
+	 * @param remote The states of the other players
+	 * @param player The index of the spectated player in the view, or -1 to show the local keys
 	 */
 	
-	private Key getElementByKey(final int key) {
-		Key result = null;
-		for (Key test : elements) {
-			// Does this key have the required value?
-			if (test.getKey() == key) {
-				result = test;
-				// We already found a key, we can exit now
-				break;
+	public void beginFrame(final SpectatorView remote, final int player) {
+		final long now = System.nanoTime();
+		// The steps are the same for every key, they are computed once per frame
+		final long elapsed = lastFrame == 0 ? 0 : now - lastFrame;
+		lastFrame = now;
+		final float releaseStep = ANIMATION_TIME > 0 ? (float) elapsed / ANIMATION_TIME : 1f;
+		final float pressStep = releaseStep * 2;
+		int mouse = 0;
+		for (int i = 0; i < elements.length; i++) {
+			Key element = elements[i];
+			if (player < 0 || i >= KeyStateCodec.MAX_KEYS) {
+				element.beginFrame(now, MIN_PRESS_TIME);
+			}
+			else {
+				element.beginRemoteFrame(now, MIN_PRESS_TIME, (remote.getKeys(player) >>> i & 1) != 0);
 			}
+			if (element instanceof KeyMouse) {
+				((KeyMouse) element).setRemoteCps(player >= 0 && mouse < remote.getMice(player) ? remote.getCps(player, mouse) : -1);
+				mouse++;
+			}
+			element.animate(pressStep, releaseStep);
+		}
+	}
+	
+	/**
+	 * Gets the number of presses released before a frame could show them, for all the current keys
+	 * @return The latched presses count
+	 */
+	
+	public int getLatchedPresses() {
+		int latched = 0;
+		for (Key element : elements) {
+			latched += element.getLatchedPresses();
+		}
+		return latched;
+	}
+	
+	/**
+	 * Updates all the keys bound to an input, unless they already are in the requested status
+	 * @param type The input type, telling apart keyboard keys and mouse buttons
+	 * @param key The key code, scancode or mouse button, as specified by <a href="https://www.glfw.org/docs/latest/group__keys.html">this link</a>
+	 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+	 * @param timestamp When the event arrived, as given by {@link System#nanoTime()}
+	 */
+	
+	public void onKey(final InputMappings.Type type, final int key, final boolean pressed, final long timestamp) {
+		index.dispatch(type, key, pressed, timestamp);
+		if (recorder != null) {
+			recorder.record(type, key, pressed, timestamp);
+		}
+		if (heatmap != null) {
+			heatmap.onKey(type, key, pressed);
+		}
+		if (latency != null) {
+			latency.onEventApplied(timestamp);
+		}
+	}
+	
+	/**
+	 * Called from the {@link it.tristana.keystroke.Main Main} class once per tick, after {@link #processInput()},<br>
+	 * to read the controller buttons. The controller is not read if no key shows its buttons
+	 */
+	
+	public void pollGamepad() {
+		if (index.hasGamepadKeys()) {
+			gamepad.poll(System.nanoTime(), gamepadHandler);
+		}
+	}
+	
+	/**
+	 * Called from the {@link it.tristana.keystroke.Main Main} class once per tick, after {@link #processInput()},<br>
+	 * to fix the keys left pressed or released because their event never arrived, for example<br>
+	 * when a key is released while the game is in the background. The fixes only update the keys
+	 * @param window The GLFW handle of the game window
+	 */
+	
+	public void reconcile(final long window) {
+		reconciler.reconcile(elements, window, System.nanoTime(), correctionHandler);
+	}
+	
+	/**
+	 * Applies a correction of the reconciler to the keys bound to an input.<br>
+	 * It is not a real input event, so unlike {@link #onKey} it isn't recorded, added to the heatmap<br>
+	 * or measured by the latency monitor, and the keys don't count it as a press or a click
+	 * @param type The input type
+	 * @param key The key code, scancode or mouse button
+	 * @param pressed The real status of the input
+	 * @param timestamp When the correction was made, as given by {@link System#nanoTime()}
+	 */
+	
+	private void onCorrection(final InputMappings.Type type, final int key, final boolean pressed, final long timestamp) {
+		index.correct(type, key, pressed, timestamp);
+	}
+	
+	/**
+	 * Gets the number of inputs corrected by {@link #reconcile(long)} since the game started
+	 * @return The corrections count
+	 */
+	
+	public long getCorrections() {
+		return reconciler.getCorrections();
+	}
+	
+	/**
+	 * Updates all the keys bound to a controller button
+	 * @param button The button, see {@link GamepadPoller}
+	 * @param pressed {@code True} if the button has been pressed, {@code False} if it has been released
+	 * @param timestamp When the controller was polled, as given by {@link System#nanoTime()}
+	 */
+	
+	private void onGamepadButton(final int button, final boolean pressed, final long timestamp) {
+		index.dispatchGamepad(button, pressed, timestamp);
+		if (latency != null) {
+			latency.onEventApplied(timestamp);
+		}
+	}
+	
+	/**
+	 * Called from the {@link it.tristana.keystroke.Main Main} class once per tick<br>
+	 * to rebuild the keys table, labels and counters if any KeyBinding has been changed
+	 */
+	
+	public void refreshBindings() {
+		if (index.refresh()) {
+			LoadedLayout.bindCounters(elements, statistics);
+			KeyLabelCache.getInstance().invalidate();
 		}
-		return result;
 	}
 }
@@ -0,0 +1,237 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import java.util.Arrays;
+
+import it.tristana.keystroke.input.GamepadPoller;
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyGamepad;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * A dispatch table from an input (its type and code) to all the keys bound to it.<br>
+ * Every input owns a slot directly indexed by its type and code, so finding the<br>
+ * keys of an event costs the same no matter how many keys are declared.<br>
+ * The controller buttons have their own slots, after the ones of all the input types.<br>
+ * The table is only rebuilt when {@link #refresh()} finds a changed binding
+ * @author Massimiliano Micol
+ */
+
+final class KeyIndex {
+	
+	/**
+	 * The number of slots reserved to each input type. GLFW key codes, scancodes<br>
+	 * and mouse buttons all fit in this range, bigger codes are never dispatched
+	 */
+	
+	private static final int CODES_PER_TYPE = 512;
+	
+	/**
+	 * The number of input types, cached since {@code values()} allocates a new array every call
+	 */
+	
+	private static final int INPUT_TYPES = InputMappings.Type.values().length;
+	
+	/**
+	 * The slot of the first controller button
+	 */
+	
+	private static final int GAMEPAD_SLOTS = INPUT_TYPES * CODES_PER_TYPE;
+	
+	/**
+	 * The indexed keys
+	 */
+	
+	private final Key[] keys;
+	
+	/**
+	 * The slot each key was bound to the last time the table was built, or -1 if it was unbound
+	 */
+	
+	private final int[] boundSlots;
+	
+	/**
+	 * For each slot, the index in {@link #slotKeys} of its first key.<br>
+	 * The keys of a slot end where the ones of the next slot start
+	 */
+	
+	private final int[] slotStarts;
+	
+	/**
+	 * The keys, grouped by slot
+	 */
+	
+	private final Key[] slotKeys;
+	
+	/**
+	 * The class constructor, it builds the table for the current bindings
+	 * @param keys The keys to index
+	 */
+	
+	KeyIndex(final Key[] keys) {
+		this.keys = keys;
+		boundSlots = new int[keys.length];
+		slotStarts = new int[GAMEPAD_SLOTS + GamepadPoller.BUTTONS + 1];
+		slotKeys = new Key[keys.length];
+		rebuild();
+	}
+	
+	/**
+	 * Compares the bindings with the ones the table was built with, rebuilding it if any of them changed
+	 * @return {@code True} if the table was rebuilt, {@code False} othewhise
+	 */
+	
+	boolean refresh() {
+		boolean changed = false;
+		for (int i = 0; i < keys.length && !changed; i++) {
+			changed = boundSlots[i] != slotOf(keys[i]);
+		}
+		if (changed) {
+			rebuild();
+		}
+		return changed;
+	}
+	
+	/**
+	 * Updates the status of all the keys bound to an input.<br>
+	 * Keys already in the requested status are left untouched
+	 * @param type The input type
+	 * @param code The key code, scancode or mouse button, depending on the type
+	 * @param pressed The new status
+	 * @param timestamp When the status changed, as given by {@link System#nanoTime()}
+	 */
+	
+	void dispatch(final InputMappings.Type type, final int code, final boolean pressed, final long timestamp) {
+		if (code < 0 || code >= CODES_PER_TYPE) {
+			return;
+		}
+		dispatchSlot(type.ordinal() * CODES_PER_TYPE + code, pressed, timestamp, false);
+	}
+	
+	/**
+	 * Fixes the status of all the keys bound to an input, without counting a press or a click.<br>
+	 * Keys already in the requested status are left untouched
+	 * @param type The input type
+	 * @param code The key code, scancode or mouse button, depending on the type
+	 * @param pressed The real status
+	 * @param timestamp When the status was checked, as given by {@link System#nanoTime()}
+	 * @see Key#correctKeyDown(boolean, long)
+	 */
+	
+	void correct(final InputMappings.Type type, final int code, final boolean pressed, final long timestamp) {
+		if (code < 0 || code >= CODES_PER_TYPE) {
+			return;
+		}
+		dispatchSlot(type.ordinal() * CODES_PER_TYPE + code, pressed, timestamp, true);
+	}
+	
+	/**
+	 * Updates the status of all the keys bound to a controller button
+	 * @param button The button, see {@link GamepadPoller}
+	 * @param pressed The new status
+	 * @param timestamp When the status changed, as given by {@link System#nanoTime()}
+	 */
+	
+	void dispatchGamepad(final int button, final boolean pressed, final long timestamp) {
+		if (button >= 0 && button < GamepadPoller.BUTTONS) {
+			dispatchSlot(GAMEPAD_SLOTS + button, pressed, timestamp, false);
+		}
+	}
+	
+	/**
+	 * Checks if any key is bound to a controller button, othewhise the controller doesn't need to be polled
+	 * @return {@code True} if there are controller keys, {@code False} othewhise
+	 */
+	
+	boolean hasGamepadKeys() {
+		return slotStarts[GAMEPAD_SLOTS] != slotStarts[GAMEPAD_SLOTS + GamepadPoller.BUTTONS];
+	}
+	
+	/**
+	 * Updates the status of all the keys of a slot, unless they already are in the requested status
+	 * @param slot The slot
+	 * @param pressed The new status
+	 * @param timestamp When the status changed, as given by {@link System#nanoTime()}
+	 * @param correction {@code True} if the status is fixed rather than changed by a real event
+	 */
+	
+	private void dispatchSlot(final int slot, final boolean pressed, final long timestamp, final boolean correction) {
+		for (int i = slotStarts[slot], end = slotStarts[slot + 1]; i < end; i++) {
+			Key element = slotKeys[i];
+			// Repeated events don't change anything
+			if (element.isKeyDown() != pressed) {
+				if (correction) {
+					element.correctKeyDown(pressed, timestamp);
+				}
+				else {
+					element.setKeyDown(pressed, timestamp);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Rebuilds the table with a counting sort of the keys by their slot
+	 */
+	
+	private void rebuild() {
+		Arrays.fill(slotStarts, 0);
+		for (int i = 0; i < keys.length; i++) {
+			int slot = slotOf(keys[i]);
+			boundSlots[i] = slot;
+			if (slot >= 0) {
+				slotStarts[slot]++;
+			}
+		}
+		// Turns the counts into the end positions of each slot
+		for (int i = 1; i < slotStarts.length; i++) {
+			slotStarts[i] += slotStarts[i - 1];
+		}
+		// Walking backwards, each slot end is moved down to its start while the keys keep their order
+		for (int i = keys.length - 1; i >= 0; i--) {
+			int slot = boundSlots[i];
+			if (slot >= 0) {
+				slotKeys[--slotStarts[slot]] = keys[i];
+			}
+		}
+	}
+	
+	/**
+	 * Gets the slot of the input a key is bound to
+	 * @param key The key
+	 * @return The slot index, or -1 if the input can't be dispatched
+	 */
+	
+	private static int slotOf(final Key key) {
+		if (key instanceof KeyGamepad) {
+			return GAMEPAD_SLOTS + ((KeyGamepad) key).getButton();
+		}
+		final InputMappings.Input input = key.getInput();
+		final int code = input.getKeyCode();
+		return code < 0 || code >= CODES_PER_TYPE ? -1 : input.getType().ordinal() * CODES_PER_TYPE + code;
+	}
+}
@@ -0,0 +1,306 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import it.tristana.keystroke.input.GamepadPoller;
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyGamepad;
+import it.tristana.keystroke.keys.KeyJump;
+import it.tristana.keystroke.keys.KeyMouse;
+import net.minecraft.client.settings.KeyBinding;
+
+/**
+ * An immutable description of the keys to show, read from the layout file.<br>
+ * Each non empty line not starting with {@code #} declares a key:
+ * <pre>
+ * kind binding x y width height [name]
+ * </pre>
+ * <ul>
+ * 	<li>The kind is {@code key}, {@code mouse} (with a CPS counter), {@code jump} (drawn as a bar) or {@code pad} (a controller button)</li>
+ * 	<li>The binding is the description of a KeyBinding, such as {@code key.forward}. The {@code key.} prefix may be omitted.<br>
+ * 	The {@code pad} keys are bound to a controller button instead, such as {@code a}, {@code lb} or {@code rt}</li>
+ * 	<li>The bounds are expressed as percentages of the main window, as in {@link Key#Key(double, double, double, double, KeyBinding, String)}</li>
+ * 	<li>The name is optional, the bound key name is shown when missing</li>
+ * </ul>
+ * @author Massimiliano Micol
+ */
+
+public final class LayoutSpec {
+	
+	/**
+	 * The kind of a plain key
+	 */
+	
+	private static final byte KIND_KEY = 0;
+	
+	/**
+	 * The kind of a mouse key, see {@link KeyMouse}
+	 */
+	
+	private static final byte KIND_MOUSE = 1;
+	
+	/**
+	 * The kind of a jump key, see {@link KeyJump}
+	 */
+	
+	private static final byte KIND_JUMP = 2;
+	
+	/**
+	 * The kind of a controller button, see {@link KeyGamepad}
+	 */
+	
+	private static final byte KIND_PAD = 3;
+	
+	/**
+	 * The prefix of the controller buttons bindings, telling them apart from the KeyBindings
+	 */
+	
+	private static final String PAD_PREFIX = "pad.";
+	
+	/**
+	 * The names of the kinds, indexed by their value
+	 */
+	
+	private static final String[] KIND_NAMES = {"key", "mouse", "jump", "pad"};
+	
+	/**
+	 * The number of values stored for each key bounds
+	 */
+	
+	private static final int VALUES_PER_KEY = 4;
+	
+	/**
+	 * The kind of each key
+	 */
+	
+	private final byte[] kinds;
+	
+	/**
+	 * The binding description of each key
+	 */
+	
+	private final String[] bindings;
+	
+	/**
+	 * The bounds of each key: X, Y, width and height
+	 */
+	
+	private final double[] bounds;
+	
+	/**
+	 * The name of each key, the values may be null
+	 */
+	
+	private final String[] names;
+	
+	/**
+	 * A private constructor, the instances are built by {@link #parse(List)}
+	 */
+	
+	private LayoutSpec(final byte[] kinds, final String[] bindings, final double[] bounds, final String[] names) {
+		this.kinds = kinds;
+		this.bindings = bindings;
+		this.bounds = bounds;
+		this.names = names;
+	}
+	
+	/**
+	 * Parses the lines of a layout file
+	 * @param lines The file lines
+	 * @return The parsed layout
+	 * @throws IllegalArgumentException If a line is not valid, the message tells which one
+	 */
+	
+	public static LayoutSpec parse(final List<String> lines) {
+		List<String[]> declarations = new ArrayList<String[]>();
+		List<Integer> lineNumbers = new ArrayList<Integer>();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				declarations.add(line.split("\\s+"));
+				lineNumbers.add(i + 1);
+			}
+		}
+		final int size = declarations.size();
+		byte[] kinds = new byte[size];
+		String[] bindings = new String[size];
+		double[] bounds = new double[size * VALUES_PER_KEY];
+		String[] names = new String[size];
+		for (int i = 0; i < size; i++) {
+			String[] tokens = declarations.get(i);
+			int line = lineNumbers.get(i);
+			if (tokens.length < 6 || tokens.length > 7) {
+				throw new IllegalArgumentException("Line " + line + ": expected \"kind binding x y width height [name]\"");
+			}
+			kinds[i] = parseKind(tokens[0], line);
+			if (kinds[i] == KIND_PAD) {
+				String button = tokens[1].startsWith(PAD_PREFIX) ? tokens[1].substring(PAD_PREFIX.length()) : tokens[1];
+				if (GamepadPoller.findButton(button) < 0) {
+					throw new IllegalArgumentException("Line " + line + ": unknown controller button \"" + button + "\"");
+				}
+				bindings[i] = PAD_PREFIX + button;
+			}
+			else {
+				bindings[i] = tokens[1].startsWith("key.") ? tokens[1] : "key." + tokens[1];
+			}
+			for (int j = 0; j < VALUES_PER_KEY; j++) {
+				try {
+					bounds[i * VALUES_PER_KEY + j] = Double.parseDouble(tokens[j + 2]);
+				}
+				catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Line " + line + ": \"" + tokens[j + 2] + "\" is not a number");
+				}
+			}
+			names[i] = tokens.length == 7 ? tokens[6] : null;
+		}
+		return new LayoutSpec(kinds, bindings, bounds, names);
+	}
+	
+	/**
+	 * Builds the keys described by this layout
+	 * @param available All the KeyBindings the keys may be bound to
+	 * @return The new keys, in the order they were declared
+	 * @throws IllegalArgumentException If a binding doesn't exist
+	 */
+	
+	public Key[] createKeys(final KeyBinding[] available) {
+		Key[] keys = new Key[kinds.length];
+		for (int i = 0; i < keys.length; i++) {
+			int offset = i * VALUES_PER_KEY;
+			double x = bounds[offset];
+			double y = bounds[offset + 1];
+			double width = bounds[offset + 2];
+			double height = bounds[offset + 3];
+			if (kinds[i] == KIND_PAD) {
+				keys[i] = new KeyGamepad(x, y, width, height, GamepadPoller.findButton(bindings[i].substring(PAD_PREFIX.length())), names[i]);
+				continue;
+			}
+			KeyBinding binding = findBinding(available, bindings[i]);
+			switch (kinds[i]) {
+				case KIND_MOUSE:
+					keys[i] = new KeyMouse(x, y, width, height, binding, names[i]);
+					break;
+				case KIND_JUMP:
+					keys[i] = new KeyJump(x, y, width, height, binding, names[i]);
+					break;
+				default:
+					keys[i] = new Key(x, y, width, height, binding, names[i]);
+					break;
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Gets the number of declared keys
+	 * @return The keys count
+	 */
+	
+	public int size() {
+		return kinds.length;
+	}
+	
+	/**
+	 * Builds the lines of the default layout file, the one the mod was designed with
+	 * @param ratio The ratio between the keys height and width, so that they look square on a 16:9 screen
+	 * @return The file lines
+	 */
+	
+	public static List<String> defaultLines(final double ratio) {
+		// The base coordinates of the keys, expressed in percentage
+		final double baseX = 75;
+		final double baseY = 25;
+		final double width = 5;
+		final double height = width * ratio;
+		List<String> lines = new ArrayList<String>();
+		lines.add("# Keystroke layout, the changes are applied as soon as the file is saved");
+		lines.add("# kind binding x y width height [name]");
+		lines.add("# kind: key, mouse (with the CPS counter), jump (drawn as a bar) or pad (a controller button such as a, lb or rt)");
+		lines.add("# x, y, width and height are percentages of the game window");
+		lines.add(line("key", "forward", baseX, baseY, width, height, null));
+		lines.add(line("key", "back", baseX, baseY + height, width, height, null));
+		lines.add(line("key", "left", baseX - width, baseY + height, width, height, null));
+		lines.add(line("key", "right", baseX + width, baseY + height, width, height, null));
+		lines.add(line("mouse", "attack", baseX - width, baseY + height * 2, width * 1.5, height, "LMB"));
+		lines.add(line("mouse", "use", baseX + width * 0.5, baseY + height * 2, width * 1.5, height, "RMB"));
+		lines.add(line("jump", "jump", baseX - width, baseY + height * 3, width * 3, height / 2, "JUMP"));
+		return lines;
+	}
+	
+	/**
+	 * Formats a key declaration
+	 * @param kind The key kind
+	 * @param binding The binding description, without the {@code key.} prefix
+	 * @param x The X coordinate, as a percentage
+	 * @param y The Y coordinate, as a percentage
+	 * @param width The width, as a percentage
+	 * @param height The height, as a percentage
+	 * @param name The key name, may be null
+	 * @return The layout file line
+	 */
+	
+	private static String line(final String kind, final String binding, final double x, final double y, final double width, final double height, final String name) {
+		String line = String.format(Locale.ROOT, "%-6s %-8s %.4f %.4f %.4f %.4f", kind, binding, x, y, width, height);
+		return name == null ? line : line + " " + name;
+	}
+	
+	/**
+	 * Parses the kind of a key
+	 * @param token The kind name
+	 * @param line The line number, for the error message
+	 * @return The kind value
+	 */
+	
+	private static byte parseKind(final String token, final int line) {
+		for (byte kind = 0; kind < KIND_NAMES.length; kind++) {
+			if (KIND_NAMES[kind].equalsIgnoreCase(token)) {
+				return kind;
+			}
+		}
+		throw new IllegalArgumentException("Line " + line + ": unknown kind \"" + token + "\", expected key, mouse, jump or pad");
+	}
+	
+	/**
+	 * Finds a KeyBinding by its description
+	 * @param available All the KeyBindings
+	 * @param description The wanted description
+	 * @return The KeyBinding
+	 * @throws IllegalArgumentException If there is no such KeyBinding
+	 */
+	
+	private static KeyBinding findBinding(final KeyBinding[] available, final String description) {
+		for (KeyBinding binding : available) {
+			if (binding.getKeyDescription().equals(description)) {
+				return binding;
+			}
+		}
+		throw new IllegalArgumentException("Unknown key binding \"" + description + "\"");
+	}
+}
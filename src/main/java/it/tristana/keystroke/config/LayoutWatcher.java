@@ -0,0 +1,159 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Watches the layout file on a background daemon thread and parses it every time it changes.<br>
+ * Editors often save a file with several writes, so the events are collected for a short<br>
+ * while before reading it. Invalid layouts are reported in the log and ignored
+ * @author Massimiliano Micol
+ */
+
+final class LayoutWatcher implements Runnable {
+	
+	/**
+	 * How long to wait for more changes before reading the file, in milliseconds
+	 */
+	
+	private static final long SETTLE_TIME = 150;
+	
+	/**
+	 * The logger used to report the invalid layouts
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The watched file
+	 */
+	
+	private final Path file;
+	
+	/**
+	 * Receives each valid layout read from the file
+	 */
+	
+	private final Consumer<LayoutSpec> listener;
+	
+	/**
+	 * The class constructor
+	 * @param file The watched file
+	 * @param listener Receives each valid layout read from the file, on the watcher thread
+	 */
+	
+	LayoutWatcher(final Path file, final Consumer<LayoutSpec> listener) {
+		this.file = file.toAbsolutePath();
+		this.listener = listener;
+	}
+	
+	/**
+	 * Starts watching the file on a new daemon thread
+	 */
+	
+	void start() {
+		Thread thread = new Thread(this, "Keystroke layout watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Waits for the file changes until the game closes
+	 */
+	
+	@Override
+	public void run() {
+		final Path directory = file.getParent();
+		try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			while (true) {
+				WatchKey key = watcher.take();
+				boolean changed = collect(key);
+				if (changed) {
+					// Gives the editor the time to finish writing, then swallows the events it caused
+					Thread.sleep(SETTLE_TIME);
+					WatchKey more;
+					while ((more = watcher.poll()) != null) {
+						collect(more);
+					}
+					reload();
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			// The game is closing
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not watch the layout file {}, the changes will only be applied after a restart", file, e);
+		}
+	}
+	
+	/**
+	 * Reads and parses the file, passing it to the listener if valid
+	 */
+	
+	void reload() {
+		try {
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			listener.accept(LayoutSpec.parse(lines));
+			LOGGER.info("Loaded the layout file {}", file);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			LOGGER.error("Could not load the layout file {}: {}", file, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Consumes the events of a key, checking whether any of them is about the watched file
+	 * @param key The watch key
+	 * @return {@code True} if the watched file changed, {@code False} othewhise
+	 */
+	
+	private boolean collect(final WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import it.tristana.keystroke.keys.CpsHistory;
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyGamepad;
+import it.tristana.keystroke.keys.KeyLayout;
+import it.tristana.keystroke.keys.KeyMouse;
+import it.tristana.keystroke.stats.KeyStatistics;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * The keys built from a {@link LayoutSpec}, together with their dispatch table and geometry.<br>
+ * It is built away from the render thread and then published as a whole
+ * @author Massimiliano Micol
+ */
+
+final class LoadedLayout {
+	
+	/**
+	 * The declared keys
+	 */
+	
+	final Key[] keys;
+	
+	/**
+	 * The table used to find the keys bound to an input
+	 */
+	
+	final KeyIndex index;
+	
+	/**
+	 * The pixel geometry of the keys
+	 */
+	
+	final KeyLayout layout;
+	
+	/**
+	 * Builds the keys of a layout
+	 * @param spec The layout description
+	 * @param available All the KeyBindings the keys may be bound to
+	 * @param statistics The persistent statistics, the keys get the counters of their input
+	 * @param graphSeconds The length of the CPS graph of the mouse keys, or 0 to hide it
+	 * @throws IllegalArgumentException If the layout uses a binding that doesn't exist
+	 */
+	
+	LoadedLayout(final LayoutSpec spec, final KeyBinding[] available, final KeyStatistics statistics, final int graphSeconds) {
+		keys = spec.createKeys(available);
+		bindCounters(keys, statistics);
+		for (int i = 0; i < keys.length; i++) {
+			if (graphSeconds > 0 && keys[i] instanceof KeyMouse) {
+				((KeyMouse) keys[i]).setHistory(new CpsHistory(graphSeconds));
+			}
+		}
+		index = new KeyIndex(keys);
+		layout = new KeyLayout(keys);
+	}
+	
+	/**
+	 * Gives each key the counters of the input it is bound to, called again when a KeyBinding changes.<br>
+	 * The counters follow the physical input, so they survive a layout change and are shared by the keys bound to it
+	 * @param keys The keys
+	 * @param statistics The persistent statistics
+	 */
+	
+	static void bindCounters(final Key[] keys, final KeyStatistics statistics) {
+		for (Key key : keys) {
+			if (key instanceof KeyGamepad) {
+				key.setCounters(statistics.getCounters(KeyStatistics.GAMEPAD, ((KeyGamepad) key).getButton()));
+				continue;
+			}
+			final InputMappings.Input input = key.getInput();
+			// An unbound key has nothing to count
+			key.setCounters(input.getKeyCode() < 0 ? null : statistics.getCounters(input.getType().ordinal(), input.getKeyCode()));
+		}
+	}
+}
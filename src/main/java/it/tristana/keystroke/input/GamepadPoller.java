@@ -0,0 +1,262 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.input;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWGamepadState;
+
+/**
+ * Reads the buttons and triggers of a game controller. GLFW has no callbacks for the joysticks,<br>
+ * so the controller is polled once per tick into a state allocated once, and the pressed buttons<br>
+ * are compared with the previous ones as a bitset: only the changed ones are dispatched.<br>
+ * The first connected controller with a gamepad mapping is used, GLFW knows the mappings of most of them.<br>
+ * The buttons are numbered as the {@code GLFW_GAMEPAD_BUTTON_*} constants, followed by the two triggers
+ * @author Massimiliano Micol
+ */
+
+public final class GamepadPoller {
+	
+	/**
+	 * The index of the left trigger, read as a button
+	 */
+	
+	public static final int LEFT_TRIGGER = GLFW.GLFW_GAMEPAD_BUTTON_LAST + 1;
+	
+	/**
+	 * The index of the right trigger, read as a button
+	 */
+	
+	public static final int RIGHT_TRIGGER = LEFT_TRIGGER + 1;
+	
+	/**
+	 * The number of buttons, triggers included
+	 */
+	
+	public static final int BUTTONS = RIGHT_TRIGGER + 1;
+	
+	/**
+	 * The names of the buttons used in the layout file, indexed by button
+	 */
+	
+	private static final String[] NAMES = {"a", "b", "x", "y", "lb", "rb", "back", "start", "guide", "ls", "rs", "up", "right", "down", "left", "lt", "rt"};
+	
+	/**
+	 * The labels drawn on the buttons keys, indexed by button
+	 */
+	
+	private static final String[] LABELS = {"A", "B", "X", "Y", "LB", "RB", "BACK", "START", "HOME", "LS", "RS", "UP", "RIGHT", "DOWN", "LEFT", "LT", "RT"};
+	
+	/**
+	 * The trigger axis value above which a trigger is pressed. The axis goes from -1, released, to 1
+	 */
+	
+	static final float TRIGGER_PRESS = 0f;
+	
+	/**
+	 * The trigger axis value below which a pressed trigger is released, lower than {@link #TRIGGER_PRESS} so a half pressed trigger doesn't flicker
+	 */
+	
+	static final float TRIGGER_RELEASE = -0.4f;
+	
+	/**
+	 * The ticks between two searches of a controller, while none is connected
+	 */
+	
+	private static final int SEARCH_TICKS = 20;
+	
+	/**
+	 * Receives the changed buttons
+	 * @author Massimiliano Micol
+	 */
+	
+	@FunctionalInterface
+	public interface Handler {
+		
+		/**
+		 * Called for each button whose status changed since the previous poll
+		 * @param button The button, as the {@code GLFW_GAMEPAD_BUTTON_*} constants or {@link #LEFT_TRIGGER} and {@link #RIGHT_TRIGGER}
+		 * @param pressed {@code True} if the button has been pressed, {@code False} if it has been released
+		 * @param timestamp When the controller was polled, as given by {@link System#nanoTime()}
+		 */
+		
+		void onButton(int button, boolean pressed, long timestamp);
+	}
+	
+	/**
+	 * The controller state filled by GLFW, reused by every poll
+	 */
+	
+	private final GLFWGamepadState state;
+	
+	/**
+	 * The polled joystick, or -1 if none is connected
+	 */
+	
+	private int joystick = -1;
+	
+	/**
+	 * The pressed buttons, one bit each
+	 */
+	
+	private int pressed;
+	
+	/**
+	 * The ticks since the last search of a controller
+	 */
+	
+	private int ticksSinceSearch = SEARCH_TICKS;
+	
+	/**
+	 * The class constructor
+	 */
+	
+	public GamepadPoller() {
+		state = GLFWGamepadState.create();
+	}
+	
+	/**
+	 * Reads the controller and dispatches the buttons that changed. It must be called on the main thread
+	 * @param timestamp The poll time, as given by {@link System#nanoTime()}
+	 * @param handler Receives the changed buttons
+	 */
+	
+	public void poll(final long timestamp, final Handler handler) {
+		if (joystick < 0 || !GLFW.glfwJoystickIsGamepad(joystick)) {
+			// A disconnected controller releases all its buttons
+			if (joystick >= 0) {
+				joystick = -1;
+				dispatch(0, timestamp, handler);
+			}
+			if (++ticksSinceSearch < SEARCH_TICKS) {
+				return;
+			}
+			ticksSinceSearch = 0;
+			joystick = findGamepad();
+			if (joystick < 0) {
+				return;
+			}
+		}
+		if (!GLFW.glfwGetGamepadState(joystick, state)) {
+			return;
+		}
+		int next = 0;
+		for (int i = 0; i <= GLFW.GLFW_GAMEPAD_BUTTON_LAST; i++) {
+			if (state.buttons(i) == GLFW.GLFW_PRESS) {
+				next |= 1 << i;
+			}
+		}
+		next |= readTrigger(GLFW.GLFW_GAMEPAD_AXIS_LEFT_TRIGGER, LEFT_TRIGGER);
+		next |= readTrigger(GLFW.GLFW_GAMEPAD_AXIS_RIGHT_TRIGGER, RIGHT_TRIGGER);
+		dispatch(next, timestamp, handler);
+	}
+	
+	/**
+	 * Reads a trigger as a button
+	 * @param axis The trigger axis
+	 * @param button The trigger button
+	 * @return The trigger bit if it is pressed, 0 othewhise
+	 */
+	
+	private int readTrigger(final int axis, final int button) {
+		return isTriggerPressed(state.axes(axis), (pressed >>> button & 1) != 0) ? 1 << button : 0;
+	}
+	
+	/**
+	 * Applies the hysteresis of the triggers: a released trigger is pressed above {@link #TRIGGER_PRESS},<br>
+	 * a pressed one is released only below {@link #TRIGGER_RELEASE}
+	 * @param value The trigger axis value, from -1 to 1
+	 * @param wasPressed Whether the trigger was pressed at the previous poll
+	 * @return {@code True} if the trigger is pressed, {@code False} othewhise
+	 */
+	
+	static boolean isTriggerPressed(final float value, final boolean wasPressed) {
+		return wasPressed ? value > TRIGGER_RELEASE : value > TRIGGER_PRESS;
+	}
+	
+	/**
+	 * Dispatches the buttons that changed and remembers the new ones
+	 * @param next The pressed buttons
+	 * @param timestamp The poll time
+	 * @param handler Receives the changed buttons
+	 */
+	
+	private void dispatch(final int next, final long timestamp, final Handler handler) {
+		int changed = pressed ^ next;
+		pressed = next;
+		while (changed != 0) {
+			int button = Integer.numberOfTrailingZeros(changed);
+			changed &= changed - 1;
+			handler.onButton(button, (next >>> button & 1) != 0, timestamp);
+		}
+	}
+	
+	/**
+	 * Forgets the pressed buttons, so the next poll dispatches all the held ones again. Called when the keys are replaced
+	 */
+	
+	public void reset() {
+		pressed = 0;
+	}
+	
+	/**
+	 * Finds the first connected controller with a gamepad mapping
+	 * @return The joystick, or -1 if there is none
+	 */
+	
+	private static int findGamepad() {
+		for (int i = GLFW.GLFW_JOYSTICK_1; i <= GLFW.GLFW_JOYSTICK_LAST; i++) {
+			if (GLFW.glfwJoystickIsGamepad(i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds a button by the name used in the layout file
+	 * @param name The button name, such as "a" or "lt"
+	 * @return The button, or -1 if there is no such button
+	 */
+	
+	public static int findButton(final String name) {
+		for (int i = 0; i < NAMES.length; i++) {
+			if (NAMES[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the label drawn on a button key
+	 * @param button The button
+	 * @return The label, such as "A" or "LT"
+	 */
+	
+	public static String getLabel(final int button) {
+		return LABELS[button];
+	}
+}
@@ -0,0 +1,218 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * A lock-free single producer, single consumer ring buffer of input events.<br>
+ * The input handlers record each event with its timestamp as soon as it arrives,<br>
+ * and the events are later applied to the keys in batches by {@link #drain(Handler)}.<br>
+ * When the buffer is full new events are dropped and counted, the producer never waits
+ * @author Massimiliano Micol
+ */
+
+public final class InputQueue {
+	
+	/**
+	 * Receives the drained events
+	 */
+	
+	@FunctionalInterface
+	public interface Handler {
+		
+		/**
+		 * Called for each drained event, in the order they were recorded
+		 * @param type The input type
+		 * @param code The key code, scancode or mouse button, depending on the type
+		 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+		 * @param timestamp When the event was recorded, as given by {@link System#nanoTime()}
+		 */
+		
+		void onInput(InputMappings.Type type, int code, boolean pressed, long timestamp);
+	}
+	
+	/**
+	 * The input types, cached since {@code values()} allocates a new array every call
+	 */
+	
+	private static final InputMappings.Type[] TYPES = InputMappings.Type.values();
+	
+	/**
+	 * The bit of a packed event telling whether the key has been pressed
+	 */
+	
+	private static final long PRESSED_BIT = 1L << 32;
+	
+	/**
+	 * The position of the input type in a packed event
+	 */
+	
+	private static final int TYPE_SHIFT = 40;
+	
+	/**
+	 * The events, stored in two longs each: the packed type, code and status, then the timestamp
+	 */
+	
+	private final long[] events;
+	
+	/**
+	 * Used to turn a sequence number into a slot of the buffer
+	 */
+	
+	private final int mask;
+	
+	/**
+	 * The sequence number of the next event to write, only written by the producer
+	 */
+	
+	private final AtomicLong head;
+	
+	/**
+	 * The sequence number of the next event to read, only written by the consumer
+	 */
+	
+	private final AtomicLong tail;
+	
+	/**
+	 * The number of events dropped because the buffer was full
+	 */
+	
+	private final AtomicLong dropped;
+	
+	/**
+	 * The last value of {@link #tail} seen by the producer, so it doesn't read it for every event
+	 */
+	
+	private long cachedTail;
+	
+	/**
+	 * The highest number of events found waiting by a drain
+	 */
+	
+	private int maxDepth;
+	
+	/**
+	 * The class constructor
+	 * @param capacity The maximum number of waiting events, rounded up to a power of two
+	 */
+	
+	public InputQueue(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		int size = Integer.highestOneBit(capacity);
+		// Rounds the capacity up to a power of two, so the indices can be masked
+		if (size < capacity) {
+			size <<= 1;
+		}
+		events = new long[size * 2];
+		mask = size - 1;
+		head = new AtomicLong();
+		tail = new AtomicLong();
+		dropped = new AtomicLong();
+	}
+	
+	/**
+	 * Records an event. Must only be called by the producer thread
+	 * @param type The input type
+	 * @param code The key code, scancode or mouse button, depending on the type
+	 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+	 * @param timestamp When the event happened, as given by {@link System#nanoTime()}
+	 * @return {@code True} if the event was recorded, {@code False} if it was dropped
+	 */
+	
+	public boolean offer(final InputMappings.Type type, final int code, final boolean pressed, final long timestamp) {
+		final long position = head.get();
+		final int capacity = mask + 1;
+		if (position - cachedTail >= capacity) {
+			cachedTail = tail.get();
+			if (position - cachedTail >= capacity) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		final int slot = (int) (position & mask) * 2;
+		// [type][pressed][code], the code is kept in the lowest 32 bits
+		events[slot] = ((long) type.ordinal() << TYPE_SHIFT) | (pressed ? PRESSED_BIT : 0) | (code & 0xffffffffL);
+		events[slot + 1] = timestamp;
+		// Publishes the event, the ordered write makes the slot visible before the new head
+		head.lazySet(position + 1);
+		return true;
+	}
+	
+	/**
+	 * Passes all the waiting events to a handler. Must only be called by the consumer thread
+	 * @param handler The events handler
+	 * @return The number of drained events
+	 */
+	
+	public int drain(final Handler handler) {
+		final long start = tail.get();
+		final long end = head.get();
+		final int depth = (int) (end - start);
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+		for (long position = start; position < end; position++) {
+			final int slot = (int) (position & mask) * 2;
+			final long packed = events[slot];
+			handler.onInput(TYPES[(int) (packed >>> TYPE_SHIFT)], (int) packed, (packed & PRESSED_BIT) != 0, events[slot + 1]);
+		}
+		// Frees the slots for the producer
+		tail.lazySet(end);
+		return depth;
+	}
+	
+	/**
+	 * Gets the number of events waiting to be drained
+	 * @return The queue depth
+	 */
+	
+	public int getDepth() {
+		return (int) (head.get() - tail.get());
+	}
+	
+	/**
+	 * Gets the highest number of events found waiting by a drain
+	 * @return The maximum queue depth
+	 */
+	
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * Gets the number of events dropped because the buffer was full
+	 * @return The dropped events
+	 */
+	
+	public long getDropped() {
+		return dropped.get();
+	}
+}
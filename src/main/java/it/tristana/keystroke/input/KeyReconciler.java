@@ -0,0 +1,154 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.input;
+
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Fixes the keys whose status differs from the real one of their input. The keys only change<br>
+ * with the input events, so a key released while the game is in the background or behind a<br>
+ * screen that swallows the event would stay pressed forever.<br>
+ * Once per tick the real status of the bound inputs is read from GLFW into a bitset, and compared<br>
+ * with the bitset of the keys: only the differences are dispatched, straight to the keys.<br>
+ * Scancode bindings and controller buttons can't be read this way, they are left as they are
+ * @author Massimiliano Micol
+ */
+
+public final class KeyReconciler {
+	
+	/**
+	 * The real status of the inputs, one bit per key
+	 */
+	
+	private long[] actual = new long[1];
+	
+	/**
+	 * The status of the keys, one bit per key
+	 */
+	
+	private long[] shown = new long[1];
+	
+	/**
+	 * The keys whose input can't be read, one bit per key
+	 */
+	
+	private long[] unknown = new long[1];
+	
+	/**
+	 * The number of inputs corrected since the game started
+	 */
+	
+	private long corrections;
+	
+	/**
+	 * Compares the keys with the real status of their inputs and dispatches the differences
+	 * @param keys The keys
+	 * @param window The GLFW handle of the game window
+	 * @param timestamp The correction time, as given by {@link System#nanoTime()}
+	 * @param handler Applies the corrected inputs, as the input events are
+	 * @return The number of corrected inputs, each fixing all the keys bound to it
+	 */
+	
+	public int reconcile(final Key[] keys, final long window, final long timestamp, final InputQueue.Handler handler) {
+		final int words = (keys.length + Long.SIZE - 1) / Long.SIZE;
+		if (actual.length < words) {
+			// Only happens when the layout grows, the arrays are then reused
+			actual = new long[words];
+			shown = new long[words];
+			unknown = new long[words];
+		}
+		for (int word = 0; word < words; word++) {
+			actual[word] = 0;
+			shown[word] = 0;
+			unknown[word] = 0;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			final long bit = 1L << i;
+			final int word = i >>> 6;
+			if (keys[i].isKeyDown()) {
+				shown[word] |= bit;
+			}
+			final int state = readInput(keys[i].getInput(), window);
+			if (state < 0) {
+				unknown[word] |= bit;
+			}
+			else if (state > 0) {
+				actual[word] |= bit;
+			}
+		}
+		int fixed = 0;
+		for (int word = 0; word < words; word++) {
+			long different = (actual[word] ^ shown[word]) & ~unknown[word];
+			while (different != 0) {
+				final int i = word << 6 | Long.numberOfTrailingZeros(different);
+				different &= different - 1;
+				// A previous correction may have fixed this key too, if it shares the input
+				final boolean pressed = (actual[word] >>> i & 1) != 0;
+				if (keys[i].isKeyDown() != pressed) {
+					InputMappings.Input input = keys[i].getInput();
+					handler.onInput(input.getType(), input.getKeyCode(), pressed, timestamp);
+					fixed++;
+				}
+			}
+		}
+		corrections += fixed;
+		return fixed;
+	}
+	
+	/**
+	 * Reads the real status of an input
+	 * @param input The input
+	 * @param window The GLFW handle of the game window
+	 * @return 1 if it is pressed, 0 if it is released, -1 if it can't be read
+	 */
+	
+	private static int readInput(final InputMappings.Input input, final long window) {
+		final int code = input.getKeyCode();
+		if (code < 0) {
+			return -1;
+		}
+		switch (input.getType()) {
+			case KEYSYM:
+				return InputMappings.isKeyDown(window, code) ? 1 : 0;
+			case MOUSE:
+				return GLFW.glfwGetMouseButton(window, code) == GLFW.GLFW_PRESS ? 1 : 0;
+			default:
+				return -1;
+		}
+	}
+	
+	/**
+	 * Gets the number of inputs corrected since the game started
+	 * @return The corrections count
+	 */
+	
+	public long getCorrections() {
+		return corrections;
+	}
+}
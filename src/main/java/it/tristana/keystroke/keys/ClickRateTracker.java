@@ -0,0 +1,195 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+/**
+ * Counts clicks over one or more sliding time windows.<br>
+ * The timestamps are stored in a primitive ring buffer, so once the tracker<br>
+ * is built recording and counting clicks never allocates any object.<br>
+ * Each window keeps its own start cursor that only moves forward, making both<br>
+ * the insertion and the eviction of timestamps O(1) amortized
+ * @author Massimiliano Micol
+ */
+
+public final class ClickRateTracker {
+	
+	/**
+	 * The number of nanoseconds in a second
+	 */
+	
+	public static final long NANOS_PER_SECOND = 1_000_000_000L;
+	
+	/**
+	 * The click timestamps, in nanoseconds. Its length is always a power of two
+	 */
+	
+	private final long[] timestamps;
+	
+	/**
+	 * Used to turn a sequence number into an index of {@link #timestamps}
+	 */
+	
+	private final int mask;
+	
+	/**
+	 * The length of each window, in nanoseconds
+	 */
+	
+	private final long[] windowLengths;
+	
+	/**
+	 * For each window, the sequence number of its oldest click still inside it
+	 */
+	
+	private final long[] windowStarts;
+	
+	/**
+	 * The sequence number the next click will be stored with
+	 */
+	
+	private long head;
+	
+	/**
+	 * The highest click count ever reached by the first window
+	 */
+	
+	private int peak;
+
+	/**
+	 * The class constructor
+	 * @param capacity The maximum number of timestamps kept, rounded up to a power of two.<br>
+	 * It should be big enough to hold all the clicks of the longest window
+	 * @param windowLengths The length of each window, in nanoseconds. The first one is used for the peak count
+	 */
+	
+	public ClickRateTracker(final int capacity, final long... windowLengths) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		if (windowLengths.length == 0) {
+			throw new IllegalArgumentException("At least a window is required");
+		}
+		int size = Integer.highestOneBit(capacity);
+		// Rounds the capacity up to a power of two, so the indices can be masked
+		if (size < capacity) {
+			size <<= 1;
+		}
+		timestamps = new long[size];
+		mask = timestamps.length - 1;
+		this.windowLengths = windowLengths.clone();
+		windowStarts = new long[windowLengths.length];
+	}
+	
+	/**
+	 * Records a click
+	 * @param timestamp The click time, as given by {@link System#nanoTime()}
+	 */
+	
+	public void click(final long timestamp) {
+		timestamps[(int) (head & mask)] = timestamp;
+		head++;
+		// If the buffer was full the oldest timestamp has just been overwritten
+		long oldest = head - timestamps.length;
+		for (int i = 0; i < windowStarts.length; i++) {
+			if (windowStarts[i] < oldest) {
+				windowStarts[i] = oldest;
+			}
+		}
+		// A new click can only increase the count, so this is the only place where the peak may change
+		int count = getCount(0, timestamp);
+		if (count > peak) {
+			peak = count;
+		}
+	}
+	
+	/**
+	 * Evicts the expired clicks of a window and counts the remaining ones
+	 * @param window The index of the window, as passed to the constructor
+	 * @param timestamp The current time, as given by {@link System#nanoTime()}
+	 * @return The number of clicks recorded in the given window
+	 */
+	
+	public int getCount(final int window, final long timestamp) {
+		final long limit = timestamp - windowLengths[window];
+		long start = windowStarts[window];
+		// The timestamps are ordered, so we can stop at the first one still inside the window
+		while (start < head && timestamps[(int) (start & mask)] < limit) {
+			start++;
+		}
+		windowStarts[window] = start;
+		return (int) (head - start);
+	}
+	
+	/**
+	 * Gets the average number of clicks per second in a window
+	 * @param window The index of the window, as passed to the constructor
+	 * @param timestamp The current time, as given by {@link System#nanoTime()}
+	 * @return The average clicks per second
+	 */
+	
+	public float getRate(final int window, final long timestamp) {
+		return getCount(window, timestamp) * (float) NANOS_PER_SECOND / windowLengths[window];
+	}
+	
+	/**
+	 * Gets the number of clicks recorded since the tracker was built
+	 * @return The total clicks, also the sequence number of the next click
+	 */
+	
+	public long getTotal() {
+		return head;
+	}
+	
+	/**
+	 * Gets the timestamp of a recorded click, only the most recent ones are remembered
+	 * @param sequence The click sequence number, from {@code getTotal() - capacity} to {@code getTotal() - 1}
+	 * @return The click time, as given by {@link System#nanoTime()}
+	 */
+	
+	public long getTimestamp(final long sequence) {
+		return timestamps[(int) (sequence & mask)];
+	}
+	
+	/**
+	 * Gets the highest click count ever reached by the first window
+	 * @return The peak count
+	 */
+	
+	public int getPeak() {
+		return peak;
+	}
+	
+	/**
+	 * Forgets all the recorded clicks and the peak count
+	 */
+	
+	public void reset() {
+		for (int i = 0; i < windowStarts.length; i++) {
+			windowStarts[i] = head;
+		}
+		peak = 0;
+	}
+}
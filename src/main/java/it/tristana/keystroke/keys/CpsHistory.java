@@ -0,0 +1,191 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import java.util.Arrays;
+
+/**
+ * The recent history of a click rate, in fixed time buckets.<br>
+ * The clicks are counted in the bucket they fall in, and when a bucket closes the clicks of the<br>
+ * last second are stored as its CPS, the same value {@link KeyMouse#getCps()} had at that moment.<br>
+ * All the arrays are allocated once: closing a bucket only updates a running sum and moves the heads
+ * @author Massimiliano Micol
+ */
+
+public final class CpsHistory {
+	
+	/**
+	 * The length of a bucket, in nanoseconds
+	 */
+	
+	public static final long BUCKET_LENGTH = 50_000_000L;
+	
+	/**
+	 * The number of buckets in the one second window
+	 */
+	
+	private static final int WINDOW_BUCKETS = (int) (ClickRateTracker.NANOS_PER_SECOND / BUCKET_LENGTH);
+	
+	/**
+	 * The clicks of the buckets inside the one second window, as a ring
+	 */
+	
+	private final int[] clicks;
+	
+	/**
+	 * The CPS of the closed buckets, as a ring
+	 */
+	
+	private final int[] history;
+	
+	/**
+	 * The clicks in the one second window
+	 */
+	
+	private int windowClicks;
+	
+	/**
+	 * The number of the open bucket, its start time divided by {@link #BUCKET_LENGTH}
+	 */
+	
+	private long bucket;
+	
+	/**
+	 * Whether {@link #bucket} has been set by the first call
+	 */
+	
+	private boolean started;
+	
+	/**
+	 * The number of closed buckets, at most the history length
+	 */
+	
+	private int size;
+	
+	/**
+	 * Incremented every time a bucket closes
+	 */
+	
+	private int revision;
+	
+	/**
+	 * The class constructor
+	 * @param seconds The length of the history, in seconds
+	 */
+	
+	public CpsHistory(final int seconds) {
+		clicks = new int[WINDOW_BUCKETS];
+		history = new int[seconds * WINDOW_BUCKETS];
+	}
+	
+	/**
+	 * Records a click, closing the elapsed buckets first
+	 * @param timestamp When the click happened, as given by {@link System#nanoTime()}
+	 */
+	
+	public void click(final long timestamp) {
+		advance(timestamp);
+		clicks[(int) Math.floorMod(bucket, WINDOW_BUCKETS)]++;
+		windowClicks++;
+	}
+	
+	/**
+	 * Closes the buckets elapsed up to a time
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return {@code True} if at least a bucket closed, {@code False} othewhise
+	 */
+	
+	public boolean advance(final long now) {
+		final long current = Math.floorDiv(now, BUCKET_LENGTH);
+		if (!started) {
+			started = true;
+			bucket = current;
+			return false;
+		}
+		if (current <= bucket) {
+			return false;
+		}
+		long elapsed = current - bucket;
+		// After a long pause every bucket is empty, there is no need to close them one by one
+		if (elapsed > history.length + WINDOW_BUCKETS) {
+			Arrays.fill(clicks, 0);
+			windowClicks = 0;
+			Arrays.fill(history, 0);
+			size = history.length;
+			bucket = current;
+			revision++;
+			return true;
+		}
+		for (; elapsed > 0; elapsed--) {
+			history[(int) Math.floorMod(bucket, history.length)] = windowClicks;
+			size = Math.min(size + 1, history.length);
+			bucket++;
+			// The oldest bucket leaves the window, its slot becomes the new bucket
+			int slot = (int) Math.floorMod(bucket, WINDOW_BUCKETS);
+			windowClicks -= clicks[slot];
+			clicks[slot] = 0;
+		}
+		revision++;
+		return true;
+	}
+	
+	/**
+	 * Gets the number of closed buckets
+	 * @return The history size, at most the history length
+	 */
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets the maximum number of closed buckets
+	 * @return The history length
+	 */
+	
+	public int capacity() {
+		return history.length;
+	}
+	
+	/**
+	 * Gets the CPS of a closed bucket
+	 * @param index The bucket index, 0 being the oldest and {@link #size()} - 1 the latest
+	 * @return The clicks in the second before the bucket closed
+	 */
+	
+	public int getCps(final int index) {
+		return history[(int) Math.floorMod(bucket - size + index, history.length)];
+	}
+	
+	/**
+	 * Gets a number incremented every time a bucket closes
+	 * @return The history revision
+	 */
+	
+	public int getRevision() {
+		return revision;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+/**
+ * Precomputed easing curves for the key animations. Each curve is a table of {@value #STEPS} + 1 weights<br>
+ * from 0 to {@value #STEPS}, indexed by the animation progress in steps, so an animated frame<br>
+ * only costs an array read per key instead of evaluating the curve
+ * @author Massimiliano Micol
+ */
+
+public final class Easing {
+	
+	/**
+	 * The number of steps of an animation, and the weight of a complete one
+	 */
+	
+	public static final int STEPS = 256;
+	
+	/**
+	 * A cubic curve starting fast and slowing down at the end
+	 */
+	
+	private static final int[] EASE_OUT = new int[STEPS + 1];
+	
+	/**
+	 * A cubic curve starting and ending slowly
+	 */
+	
+	private static final int[] EASE_IN_OUT = new int[STEPS + 1];
+	
+	static {
+		for (int i = 0; i <= STEPS; i++) {
+			double x = (double) i / STEPS;
+			double inverse = 1 - x;
+			EASE_OUT[i] = (int) Math.round((1 - inverse * inverse * inverse) * STEPS);
+			EASE_IN_OUT[i] = (int) Math.round((x < 0.5 ? 4 * x * x * x : 1 - 4 * inverse * inverse * inverse) * STEPS);
+		}
+	}
+	
+	/**
+	 * A private constructor, the class only has static methods
+	 */
+	
+	private Easing() {}
+	
+	/**
+	 * Reads the ease out curve
+	 * @param step The animation progress, from 0 to {@link #STEPS}
+	 * @return The eased weight, from 0 to {@link #STEPS}
+	 */
+	
+	public static int easeOut(final int step) {
+		return EASE_OUT[step];
+	}
+	
+	/**
+	 * Reads the ease in and out curve
+	 * @param step The animation progress, from 0 to {@link #STEPS}
+	 * @return The eased weight, from 0 to {@link #STEPS}
+	 */
+	
+	public static int easeInOut(final int step) {
+		return EASE_IN_OUT[step];
+	}
+}
@@ -24,15 +24,10 @@ SOFTWARE.
 
 package it.tristana.keystroke.keys;
 
-import org.lwjgl.glfw.GLFW;
-
-import com.mojang.blaze3d.matrix.MatrixStack;
-
-import net.minecraft.client.MainWindow;
-import net.minecraft.client.Minecraft;
-import net.minecraft.client.gui.AbstractGui;
-import net.minecraft.client.gui.FontRenderer;
+import it.tristana.keystroke.render.OverlayRenderer;
+import it.tristana.keystroke.stats.KeyCounters;
 import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
 
 /**
  * The base class to represent a key. It has a position, bounds and an associated<br>
@@ -81,12 +76,6 @@ public class Key {
 	
 	public static final int TEXT_COLOR = toARGB(0xff, 0xff, 0xff, 0xff);
 	
-	/**
-	 * The Minecraft font renderer instance
-	 */
-	
-	public static final FontRenderer fontRenderer = Minecraft.getInstance().fontRenderer;
-	
 	/**
 	 * The bounds of this key, expressed as a percentage following these rules:
 	 * <ul>
@@ -116,6 +105,66 @@ public class Key {
 	 */
 	
 	private boolean isKeyDown;
+	
+	/**
+	 * Whether the key is drawn as pressed in the current frame, see {@link #beginFrame(long, long)}
+	 */
+	
+	private boolean isShownDown;
+	
+	/**
+	 * Whether the local key is drawn as pressed in the current frame, even while another player's keys are shown instead
+	 */
+	
+	private boolean isLocalShownDown;
+	
+	/**
+	 * Whether a press is being kept on screen for the minimum time
+	 */
+	
+	private boolean latched;
+	
+	/**
+	 * When the key was last pressed, as given by {@link System#nanoTime()}
+	 */
+	
+	private long lastPress;
+	
+	/**
+	 * The number of presses since the last frame
+	 */
+	
+	private int framePresses;
+	
+	/**
+	 * The number of presses released before a frame could show them, only displayed thanks to latching
+	 */
+	
+	private int latchedPresses;
+	
+	/**
+	 * How far the press animation is, from 0 (released) to 1 (pressed)
+	 */
+	
+	private float pressProgress;
+	
+	/**
+	 * {@link #pressProgress} in animation steps, from 0 to {@link Easing#STEPS}
+	 */
+	
+	private int animationStep;
+	
+	/**
+	 * Incremented every time the drawn key status changes
+	 */
+	
+	private int revision;
+	
+	/**
+	 * The persistent statistics of this key, may be null
+	 */
+	
+	private KeyCounters counters;
 
 	/**
 	 * The class constructor
@@ -143,32 +192,61 @@ public class Key {
 	}
 	
 	/**
-	 * Draws the key components on the screen, with the background color based on the key's status
-	 * @param window The main window
-	 * @param matrix The graphics matrix
+	 * Gets the input currently bound to the associated KeyBinding
+	 * @return The bound input, holding both the input type and its code
 	 */
 	
-	public void draw(final MainWindow window, final MatrixStack matrix) {
-		int windowWidth = window.getScaledWidth();
-		int windowHeight = window.getScaledHeight();
-		// All the values are calculated based on the current window size and position
-		int elementX = ceil(windowWidth * bounds.x / 100d);
-		int elementY = ceil(windowHeight * bounds.y / 100d);
-		int elementWidth = ceil(windowWidth * bounds.width / 100d);
-		int elementHeight = ceil(windowHeight * bounds.height / 100d);
-		// Draws the background rectangle, scaled by one pixel in all the sides
-		AbstractGui.fill(matrix, elementX + 1, elementY + 1, elementX + elementWidth - 1, elementY + elementHeight - 1, isKeyDown() ? BUTTON_DOWN_COLOR : BUTTON_UP_COLOR);
-		// Stores the current matrix status so we can do whatever we like on it
-		matrix.push();
-		// Draws the key name
-		drawKeyText(matrix, Math.min(windowWidth / BASE_SCREEN_WIDTH, windowHeight / BASE_SCREEN_HEIGHT) * TEXT_BASE_SCALE, elementX, elementY, elementWidth, elementHeight);
-		// Restores the previous matrix status undoing all the changes
-		matrix.pop();
+	public InputMappings.Input getInput() {
+		return key.getKey();
+	}
+	
+	/**
+	 * Queues the key background, with the color based on the key's status, and its decorations.<br>
+	 * While the press animation runs, the color fades between the released and pressed ones<br>
+	 * and the background shrinks a little towards its center.<br>
+	 * All the keys backgrounds are queued before drawing any text, since they may be batched
+	 * @param renderer The renderer drawing the overlay
+	 * @param layout The layout holding the pixel geometry, already resolved for the current window
+	 * @param index The index of this key in the layout
+	 */
+	
+	public void drawBackground(final OverlayRenderer renderer, final KeyLayout layout, final int index) {
+		int elementX = layout.getX(index);
+		int elementY = layout.getY(index);
+		int elementWidth = layout.getWidth(index);
+		int elementHeight = layout.getHeight(index);
+		// The background rectangle, scaled by one pixel in all the sides, and by up to a sixteenth of the key when pressed
+		final int inset = 1 + Easing.easeOut(animationStep) * Math.min(elementWidth, elementHeight) / (Easing.STEPS * 16);
+		final int color = lerpARGB(BUTTON_UP_COLOR, BUTTON_DOWN_COLOR, Easing.easeInOut(animationStep));
+		renderer.fill(elementX + inset, elementY + inset, elementX + elementWidth - inset, elementY + elementHeight - inset, color);
+		addDecorations(renderer, elementX, elementY, elementWidth, elementHeight);
+	}
+	
+	/**
+	 * Draws the key text on the screen, over the already drawn background
+	 * @param renderer The renderer drawing the overlay
+	 * @param layout The layout holding the pixel geometry, already resolved for the current window
+	 * @param index The index of this key in the layout
+	 */
+	
+	public void draw(final OverlayRenderer renderer, final KeyLayout layout, final int index) {
+		drawKeyText(renderer, layout.getTextRatio(), layout.getX(index), layout.getY(index), layout.getWidth(index), layout.getHeight(index));
 	}
 	
+	/**
+	 * Queues any additional rectangle drawn over the background. By default there are none
+	 * @param renderer The renderer drawing the overlay
+	 * @param elementX The X coordinate of the background rectangle
+	 * @param elementY The Y coordinate of the background rectangle
+	 * @param elementWidth The width of the background rectangle
+	 * @param elementHeight The height of the background rectangle
+	 */
+	
+	protected void addDecorations(final OverlayRenderer renderer, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {}
+	
 	/**
 	 * Draws the key name on the center of the background rectangle, scaled by a given factor
-	 * @param matrix The graphics matrix
+	 * @param renderer The renderer drawing the overlay
 	 * @param textRatio The scaling factor
 	 * @param elementX The X coordinate of the background rectangle
 	 * @param elementY The Y coordinate of the background rectangle
@@ -176,17 +254,16 @@ public class Key {
 	 * @param elementHeight The height of the background rectangle
 	 */
 	
-	protected void drawKeyText(final MatrixStack matrix, final float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
-		matrix.scale(textRatio, textRatio, textRatio);
+	protected void drawKeyText(final OverlayRenderer renderer, final float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
 		// Draws the key name
-		AbstractGui.drawCenteredString(matrix, fontRenderer, getKeyName(), ceil((elementX + elementWidth / 2d) / textRatio), ceil((elementY + elementHeight / 2d) / textRatio) - fontRenderer.FONT_HEIGHT / 2, TEXT_COLOR);
+		renderer.drawCenteredText(getKeyName(), ceil((elementX + elementWidth / 2d) / textRatio), ceil((elementY + elementHeight / 2d) / textRatio) - renderer.getFontHeight() / 2, textRatio, TEXT_COLOR);
 	}
 	
 	/**
 	 * Gets the key name, following these rules:
 	 * <ul>
 	 * 	<li>If the value of the field {@link #keyName} is not null, then that value is returned</li>
-	 * 	<li>Else, the method tries to determine the key name based on {@link GLFW#glfwGetKeyScancode(int)}</li>
+	 * 	<li>Else, the key name is taken from the {@link KeyLabelCache}, that asks GLFW only the first time</li>
 	 * 	<li>If a name is found then it is returned</li>
 	 * 	<li>If all the above fails, the string "???" is returned</li>
 	 * </ul>
@@ -194,26 +271,12 @@ public class Key {
 	 */
 	
 	public String getKeyName() {
-		String name;
 		// There is not a fixed name
 		if (keyName == null) {
-			int code = getKey();
-			// Tries to get the key name...
-			name = GLFW.glfwGetKeyName(code, GLFW.glfwGetKeyScancode(code));
-			// ...and put it upper case
-			if (name != null) {
-				name = name.toUpperCase();
-			}
-			else {
-				// A name for that key was not found
-				name = "???";
-			}
+			return KeyLabelCache.getInstance().getLabel(getKey());
 		}
-		else {
-			// We already have the key name
-			name = keyName;
-		}
-		return name;
+		// We already have the key name
+		return keyName;
 	}
 	
 	/**
@@ -235,14 +298,195 @@ public class Key {
 	}
 	
 	/**
-	 * Sets the key status
+	 * Sets the key status, as if it changed right now
 	 * @param isKeyDown A value representing the key status
 	 */
 	
 	public void setKeyDown(final boolean isKeyDown) {
+		setKeyDown(isKeyDown, System.nanoTime());
+	}
+	
+	/**
+	 * Sets the key status
+	 * @param isKeyDown A value representing the key status
+	 * @param timestamp When the status changed, as given by {@link System#nanoTime()}
+	 */
+	
+	public void setKeyDown(final boolean isKeyDown, final long timestamp) {
+		if (this.isKeyDown != isKeyDown) {
+			if (isKeyDown) {
+				lastPress = timestamp;
+				framePresses++;
+			}
+			if (counters != null) {
+				if (isKeyDown) {
+					counters.onPress(timestamp);
+				}
+				else {
+					counters.onRelease(timestamp);
+				}
+			}
+		}
+		this.isKeyDown = isKeyDown;
+	}
+	
+	/**
+	 * Fixes the key status after its press or release event was lost. It is not a real press,<br>
+	 * so it isn't counted, clicked or latched: only an ongoing hold is closed in the statistics
+	 * @param isKeyDown The real key status
+	 * @param timestamp When the status was checked, as given by {@link System#nanoTime()}
+	 */
+	
+	public void correctKeyDown(final boolean isKeyDown, final long timestamp) {
+		if (!isKeyDown && this.isKeyDown && counters != null) {
+			counters.onRelease(timestamp);
+		}
 		this.isKeyDown = isKeyDown;
 	}
 	
+	/**
+	 * Decides how the key is drawn in the frame about to start. A press is always shown for at least<br>
+	 * one frame and for a minimum time, even if the key was released before the frame started:<br>
+	 * othewhise the taps shorter than a frame would never light the key up
+	 * @param now The frame start, as given by {@link System#nanoTime()}
+	 * @param minimumPressTime The minimum time a press is shown, in nanoseconds
+	 */
+	
+	public void beginFrame(final long now, final long minimumPressTime) {
+		show(latch(now, minimumPressTime));
+	}
+	
+	/**
+	 * Shows the status of another player key in the frame about to start, while spectating them.<br>
+	 * The local presses are still latched, so they are counted as usual
+	 * @param now The frame start, as given by {@link System#nanoTime()}
+	 * @param minimumPressTime The minimum time a local press is shown, in nanoseconds
+	 * @param isRemoteDown Whether the key of the other player is pressed
+	 */
+	
+	public void beginRemoteFrame(final long now, final long minimumPressTime, final boolean isRemoteDown) {
+		latch(now, minimumPressTime);
+		show(isRemoteDown);
+	}
+	
+	/**
+	 * Updates the latch of the local presses
+	 * @param now The frame start, as given by {@link System#nanoTime()}
+	 * @param minimumPressTime The minimum time a press is shown, in nanoseconds
+	 * @return Whether the local key should be drawn as pressed
+	 */
+	
+	private boolean latch(final long now, final long minimumPressTime) {
+		if (framePresses > 0) {
+			// A press still held would have been shown anyway, all the others only are thanks to latching
+			latchedPresses += isKeyDown ? framePresses - 1 : framePresses;
+			framePresses = 0;
+			latched = true;
+		}
+		else {
+			latched = latched && now - lastPress < minimumPressTime;
+		}
+		isLocalShownDown = isKeyDown || latched;
+		return isLocalShownDown;
+	}
+	
+	/**
+	 * Sets the drawn key status
+	 * @param shown Whether the key is drawn as pressed
+	 */
+	
+	private void show(final boolean shown) {
+		if (shown != isShownDown) {
+			isShownDown = shown;
+			revision++;
+		}
+	}
+	
+	/**
+	 * Moves the press animation towards the drawn key status, called once per frame after the status is decided
+	 * @param pressStep The progress made by a press animation in this frame, 1 or more to complete it at once
+	 * @param releaseStep The progress made by a release animation in this frame, 1 or more to complete it at once
+	 */
+	
+	public void animate(final float pressStep, final float releaseStep) {
+		if (isShownDown) {
+			if (pressProgress == 1f) {
+				return;
+			}
+			pressProgress = Math.min(pressProgress + pressStep, 1f);
+		}
+		else {
+			if (pressProgress == 0f) {
+				return;
+			}
+			pressProgress = Math.max(pressProgress - releaseStep, 0f);
+		}
+		final int step = (int) (pressProgress * Easing.STEPS);
+		// The overlay is only drawn again when the animation moved by at least a step
+		if (step != animationStep) {
+			animationStep = step;
+			revision++;
+		}
+	}
+	
+	/**
+	 * Gets whether the key is drawn as pressed in the current frame.<br>
+	 * It may differ from {@link #isKeyDown()} while a short press is kept on screen
+	 * @return {@code True} if the key is drawn as pressed, {@code False} othewhise
+	 */
+	
+	public boolean isShownDown() {
+		return isShownDown;
+	}
+	
+	/**
+	 * Gets whether the local key is drawn as pressed in the current frame.<br>
+	 * It is the same as {@link #isShownDown()}, except while spectating another player
+	 * @return {@code True} if the local key is drawn as pressed, {@code False} othewhise
+	 */
+	
+	public boolean isLocalShownDown() {
+		return isLocalShownDown;
+	}
+	
+	/**
+	 * Gets the number of presses that were released before a frame could show them.<br>
+	 * Without latching the key would never have lit up for any of them
+	 * @return The latched presses count
+	 */
+	
+	public int getLatchedPresses() {
+		return latchedPresses;
+	}
+	
+	/**
+	 * Gets the persistent statistics of this key
+	 * @return The key counters, or {@code null} if the key is not tracked
+	 */
+	
+	public KeyCounters getCounters() {
+		return counters;
+	}
+	
+	/**
+	 * Sets the persistent statistics updated when this key is pressed and released
+	 * @param counters The key counters, may be null
+	 */
+	
+	public void setCounters(final KeyCounters counters) {
+		this.counters = counters;
+	}
+	
+	/**
+	 * Gets a number that changes every time the key appearance changes,<br>
+	 * used to find out whether the overlay has to be drawn again
+	 * @return The key revision
+	 */
+	
+	public int getRevision() {
+		return revision;
+	}
+	
 	/**
 	 * Determines the first integer value equal to or greater than the input
 	 * @param num The number whose value has to be ceiled
@@ -267,4 +511,21 @@ public class Key {
 	protected static int toARGB(final int alpha, final int red, final int green, final int blue) {
 		return ((alpha & 0xff) << 030) | ((red & 0xff) << 020) | ((green & 0xff) << 010) | (blue & 0xff);
 	}
+	
+	/**
+	 * Blends two colors built by {@link #toARGB(int, int, int, int)}, component by component.<br>
+	 * Two components are blended at once: red and blue, then alpha and green, each pair<br>
+	 * in a single multiplication since there is a free byte between them
+	 * @param from The color at weight 0
+	 * @param to The color at weight {@link Easing#STEPS}
+	 * @param weight How much of the second color is used, from 0 to {@link Easing#STEPS}
+	 * @return The blended color
+	 */
+	
+	protected static int lerpARGB(final int from, final int to, final int weight) {
+		final int inverse = Easing.STEPS - weight;
+		final int redBlue = ((from & 0xff00ff) * inverse + (to & 0xff00ff) * weight) >>> 010 & 0xff00ff;
+		final int alphaGreen = ((from >>> 010 & 0xff00ff) * inverse + (to >>> 010 & 0xff00ff) * weight) & 0xff00ff00;
+		return alphaGreen | redBlue;
+	}
 }
@@ -0,0 +1,87 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import it.tristana.keystroke.input.GamepadPoller;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * A key showing a game controller button. It has no KeyBinding, its status comes<br>
+ * from the {@link GamepadPoller} instead of the keyboard and mouse events
+ * @author Massimiliano Micol
+ * @see Key
+ */
+
+public final class KeyGamepad extends Key {
+	
+	/**
+	 * The shown button, see {@link GamepadPoller}
+	 */
+	
+	private final int button;
+	
+	/**
+	 * The class constructor
+	 * @param percentX The X coordinate of this key, expressed as a percentage of the main window's X
+	 * @param percentY The Y coordinate of this key, expressed as a percentage of the main window's Y
+	 * @param percentWidth The width of this key, expressed as a percentage of the main window's width
+	 * @param percentHeight The height of this key, expressed as a percentage of the main window's height
+	 * @param button The shown button
+	 * @param keyName The name of this key, the button label is shown if null
+	 */
+	
+	public KeyGamepad(final double percentX, final double percentY, final double percentWidth, final double percentHeight, final int button, final String keyName) {
+		super(percentX, percentY, percentWidth, percentHeight, null, keyName == null ? GamepadPoller.getLabel(button) : keyName);
+		this.button = button;
+	}
+	
+	/**
+	 * Gets the shown button
+	 * @return The button, see {@link GamepadPoller}
+	 */
+	
+	public int getButton() {
+		return button;
+	}
+	
+	/**
+	 * There is no keyboard key, the input is never dispatched by the keys table
+	 */
+	
+	@Override
+	public int getKey() {
+		return InputMappings.INPUT_INVALID.getKeyCode();
+	}
+	
+	/**
+	 * There is no keyboard or mouse input, the input is never dispatched by the keys table
+	 */
+	
+	@Override
+	public InputMappings.Input getInput() {
+		return InputMappings.INPUT_INVALID;
+	}
+}
@@ -24,9 +24,7 @@ SOFTWARE.
 
 package it.tristana.keystroke.keys;
 
-import com.mojang.blaze3d.matrix.MatrixStack;
-
-import net.minecraft.client.gui.AbstractGui;
+import it.tristana.keystroke.render.OverlayRenderer;
 import net.minecraft.client.settings.KeyBinding;
 
 /**
@@ -46,14 +44,21 @@ public final class KeyJump extends Key {
 	}
 
 	/**
-	 * Ignores the button name and draws a filled centered rectangle with the text's color
+	 * Queues a filled centered rectangle with the text's color in place of the button name
 	 */
 	
 	@Override
-	protected void drawKeyText(final MatrixStack matrix, final float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
+	protected void addDecorations(final OverlayRenderer renderer, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
 		final int offsetX = elementWidth / 4;
 		final int offsetY = elementHeight * 3 / 8;
-		// Draws a centered rectangle inside the key's background
-		AbstractGui.fill(matrix, elementX + offsetX, elementY + offsetY, elementX + elementWidth - offsetX, elementY + elementHeight - offsetY, TEXT_COLOR);
+		// A centered rectangle inside the key's background
+		renderer.fill(elementX + offsetX, elementY + offsetY, elementX + elementWidth - offsetX, elementY + elementHeight - offsetY, TEXT_COLOR);
 	}
+	
+	/**
+	 * Ignores the button name, the key is represented by the rectangle queued in {@link #addDecorations(OverlayRenderer, int, int, int, int)}
+	 */
+	
+	@Override
+	protected void drawKeyText(final OverlayRenderer renderer, final float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {}
 }
@@ -0,0 +1,159 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+/**
+ * Caches the upper case labels of the keyboard keys, so that the names are not<br>
+ * asked to GLFW on every frame. Each label is resolved the first time it is needed<br>
+ * and kept until {@link #invalidate()} is called, which happens when a key is<br>
+ * remapped or the keyboard layout may have changed. It has a singleton pattern
+ * @author Massimiliano Micol
+ */
+
+public final class KeyLabelCache {
+	
+	/**
+	 * The label used for the keys without a printable name
+	 */
+	
+	public static final String UNKNOWN_LABEL = "???";
+	
+	/**
+	 * The number of cached key codes, enough for all the GLFW keys
+	 */
+	
+	private static final int MAX_CODES = 512;
+	
+	/**
+	 * The singleton instance
+	 */
+	
+	private static KeyLabelCache instance;
+	
+	/**
+	 * The cached labels, indexed by key code
+	 */
+	
+	private final String[] labels;
+	
+	/**
+	 * For each key code, the generation its label was resolved in
+	 */
+	
+	private final int[] generations;
+	
+	/**
+	 * The current generation. Labels resolved in older generations are stale
+	 */
+	
+	private int generation;
+	
+	/**
+	 * The lookup used to resolve the key names
+	 */
+	
+	private KeyNameLookup lookup;
+	
+	/**
+	 * A private constructor for the singleton
+	 */
+	
+	private KeyLabelCache() {
+		labels = new String[MAX_CODES];
+		generations = new int[MAX_CODES];
+		// Generation 0 is never valid, so every label starts stale
+		generation = 1;
+		lookup = KeyNameLookup.GLFW_LOOKUP;
+	}
+	
+	/**
+	 * Gets this class singleton, instantiating it if needed
+	 * @return The singleton instance
+	 */
+	
+	public static KeyLabelCache getInstance() {
+		if (instance == null) {
+			instance = new KeyLabelCache();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Gets the label of a key, resolving it if it is not cached
+	 * @param code The key integer value, as specified by <a href="https://www.glfw.org/docs/latest/group__keys.html">this link</a>
+	 * @return The upper case key name, or {@link #UNKNOWN_LABEL} if it has no name
+	 */
+	
+	public String getLabel(final int code) {
+		// Codes out of range can't be cached
+		if (code < 0 || code >= MAX_CODES) {
+			return resolve(code);
+		}
+		if (generations[code] != generation) {
+			labels[code] = resolve(code);
+			generations[code] = generation;
+		}
+		return labels[code];
+	}
+	
+	/**
+	 * Marks all the cached labels as stale, they will be resolved again when next needed
+	 */
+	
+	public void invalidate() {
+		generation++;
+	}
+	
+	/**
+	 * Gets the current generation, incremented every time the cached labels become stale
+	 * @return The labels generation
+	 */
+	
+	public int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Replaces the lookup used to resolve the key names, invalidating the cache
+	 * @param lookup The new lookup
+	 */
+	
+	public void setLookup(final KeyNameLookup lookup) {
+		this.lookup = lookup;
+		invalidate();
+	}
+	
+	/**
+	 * Asks the lookup for a key name and puts it upper case
+	 * @param code The key integer value
+	 * @return The label as stated by {@link #getLabel(int)}
+	 */
+	
+	private String resolve(final int code) {
+		String name = lookup.getName(code);
+		return name == null ? UNKNOWN_LABEL : name.toUpperCase();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import net.minecraft.client.MainWindow;
+
+/**
+ * Resolves the percentage bounds of a set of keys into pixels.<br>
+ * The results are stored in a flat array and only computed again when the<br>
+ * scaled window size or the GUI scale change, or after {@link #invalidate()}
+ * @author Massimiliano Micol
+ */
+
+public final class KeyLayout {
+	
+	/**
+	 * The number of values stored for each key: X, Y, width and height
+	 */
+	
+	private static final int VALUES_PER_KEY = 4;
+	
+	/**
+	 * The keys whose bounds are resolved
+	 */
+	
+	private final Key[] keys;
+	
+	/**
+	 * The pixel bounds of each key, in the order given by {@link #VALUES_PER_KEY}
+	 */
+	
+	private final int[] geometry;
+	
+	/**
+	 * The scale applied to the keys text
+	 */
+	
+	private float textRatio;
+	
+	/**
+	 * The scaled window width the geometry was computed for, or -1 if it has to be computed
+	 */
+	
+	private int resolvedWidth;
+	
+	/**
+	 * The scaled window height the geometry was computed for
+	 */
+	
+	private int resolvedHeight;
+	
+	/**
+	 * The GUI scale the geometry was computed for
+	 */
+	
+	private double resolvedScale;
+	
+	/**
+	 * How many times the cached geometry was reused
+	 */
+	
+	private long hits;
+	
+	/**
+	 * How many times the geometry had to be computed
+	 */
+	
+	private long misses;
+	
+	/**
+	 * The class constructor
+	 * @param keys The keys to lay out. The index of each key in this array is used to read its geometry
+	 */
+	
+	public KeyLayout(final Key[] keys) {
+		this.keys = keys;
+		geometry = new int[keys.length * VALUES_PER_KEY];
+		invalidate();
+	}
+	
+	/**
+	 * Makes sure the geometry matches the given window, computing it again only if needed
+	 * @param window The main window
+	 */
+	
+	public void resolve(final MainWindow window) {
+		resolve(window.getScaledWidth(), window.getScaledHeight(), window.getGuiScaleFactor());
+	}
+	
+	/**
+	 * Makes sure the geometry matches the given window size, computing it again only if needed
+	 * @param windowWidth The scaled window width
+	 * @param windowHeight The scaled window height
+	 * @param scale The GUI scale
+	 */
+	
+	public void resolve(final int windowWidth, final int windowHeight, final double scale) {
+		if (windowWidth == resolvedWidth && windowHeight == resolvedHeight && scale == resolvedScale) {
+			hits++;
+			return;
+		}
+		misses++;
+		for (int i = 0; i < keys.length; i++) {
+			Rectangle bounds = keys[i].getBounds();
+			int offset = i * VALUES_PER_KEY;
+			geometry[offset] = Key.ceil(windowWidth * bounds.x / 100d);
+			geometry[offset + 1] = Key.ceil(windowHeight * bounds.y / 100d);
+			geometry[offset + 2] = Key.ceil(windowWidth * bounds.width / 100d);
+			geometry[offset + 3] = Key.ceil(windowHeight * bounds.height / 100d);
+		}
+		textRatio = Math.min(windowWidth / Key.BASE_SCREEN_WIDTH, windowHeight / Key.BASE_SCREEN_HEIGHT) * Key.TEXT_BASE_SCALE;
+		resolvedWidth = windowWidth;
+		resolvedHeight = windowHeight;
+		resolvedScale = scale;
+	}
+	
+	/**
+	 * Forces the geometry to be computed again on the next {@link #resolve(MainWindow)} call
+	 */
+	
+	public void invalidate() {
+		resolvedWidth = -1;
+	}
+	
+	/**
+	 * Gets a number that changes every time the geometry is computed again
+	 * @return The layout revision
+	 */
+	
+	public int getRevision() {
+		return (int) misses;
+	}
+	
+	/**
+	 * Gets the X coordinate of a key
+	 * @param index The index of the key
+	 * @return The X coordinate, in scaled pixels
+	 */
+	
+	public int getX(final int index) {
+		return geometry[index * VALUES_PER_KEY];
+	}
+	
+	/**
+	 * Gets the Y coordinate of a key
+	 * @param index The index of the key
+	 * @return The Y coordinate, in scaled pixels
+	 */
+	
+	public int getY(final int index) {
+		return geometry[index * VALUES_PER_KEY + 1];
+	}
+	
+	/**
+	 * Gets the width of a key
+	 * @param index The index of the key
+	 * @return The width, in scaled pixels
+	 */
+	
+	public int getWidth(final int index) {
+		return geometry[index * VALUES_PER_KEY + 2];
+	}
+	
+	/**
+	 * Gets the height of a key
+	 * @param index The index of the key
+	 * @return The height, in scaled pixels
+	 */
+	
+	public int getHeight(final int index) {
+		return geometry[index * VALUES_PER_KEY + 3];
+	}
+	
+	/**
+	 * Gets the scale of the keys text
+	 * @return The text scaling factor
+	 */
+	
+	public float getTextRatio() {
+		return textRatio;
+	}
+	
+	/**
+	 * Gets the scaled window width the geometry was computed for
+	 * @return The window width, or -1 if the geometry was never computed
+	 */
+	
+	public int getResolvedWidth() {
+		return resolvedWidth;
+	}
+	
+	/**
+	 * Gets the scaled window height the geometry was computed for
+	 * @return The window height, meaningless if the geometry was never computed
+	 */
+	
+	public int getResolvedHeight() {
+		return resolvedHeight;
+	}
+	
+	/**
+	 * Gets how many times the cached geometry was reused
+	 * @return The number of cache hits
+	 */
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Gets how many times the geometry had to be computed
+	 * @return The number of cache misses
+	 */
+	
+	public long getMisses() {
+		return misses;
+	}
+}
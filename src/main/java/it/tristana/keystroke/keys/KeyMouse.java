@@ -24,28 +24,114 @@ SOFTWARE.
 
 package it.tristana.keystroke.keys;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
-import com.mojang.blaze3d.matrix.MatrixStack;
-
-import net.minecraft.client.gui.AbstractGui;
+import it.tristana.keystroke.render.OverlayRenderer;
 import net.minecraft.client.settings.KeyBinding;
 
 /**
  * An extension of the {@link Key} class to represent mouse keys.<br>
- * This class holds a CPS (Clicks Per Second) counter, displayed on screen
+ * This class holds a CPS (Clicks Per Second) counter, displayed on screen,<br>
+ * and optionally a graph of the recent CPS drawn behind the text
  * @author Massimiliano Micol
  */
 
 public final class KeyMouse extends Key {
 
 	/**
-	 * A list to hold the clicks timestamps
+	 * The maximum number of clicks remembered, enough for the 5 seconds window even at extreme click rates
+	 */
+	
+	private static final int MAX_TRACKED_CLICKS = 512;
+	
+	/**
+	 * The index of the one second window in {@link #clicks}
+	 */
+	
+	private static final int WINDOW_CPS = 0;
+	
+	/**
+	 * The index of the five seconds window in {@link #clicks}
+	 */
+	
+	private static final int WINDOW_AVERAGE = 1;
+	
+	/**
+	 * The CPS labels, indexed by the CPS value. They are built once so drawing<br>
+	 * the counter doesn't concatenate a new String on every frame
+	 */
+	
+	private static final String[] CPS_LABELS = new String[MAX_TRACKED_CLICKS + 1];
+	
+	/**
+	 * The CPS reaching the top of the graph, unless a higher one is in the history
+	 */
+	
+	private static final int MIN_GRAPH_CPS = 10;
+	
+	/**
+	 * The color of the CPS graph
+	 */
+	
+	private static final int GRAPH_COLOR = toARGB(0xa0, 0xff, 0xd0, 0x40);
+	
+	static {
+		for (int i = 0; i < CPS_LABELS.length; i++) {
+			CPS_LABELS[i] = i + " CPS";
+		}
+	}
+	
+	/**
+	 * Holds the clicks timestamps
+	 */
+	
+	private final ClickRateTracker clicks;
+	
+	/**
+	 * The CPS value seen by the last {@link #getRevision()} call
+	 */
+	
+	private int lastCps;
+	
+	/**
+	 * Incremented every time the displayed CPS value changes
+	 */
+	
+	private int cpsRevision;
+	
+	/**
+	 * The CPS of the spectated player, or -1 to show the local one
+	 */
+	
+	private int remoteCps = -1;
+	
+	/**
+	 * The recent CPS shown in the graph, {@code null} if the graph is disabled
+	 */
+	
+	private CpsHistory history;
+	
+	/**
+	 * The points of the graph, as X and Y pairs
+	 */
+	
+	private float[] graphVertices;
+	
+	/**
+	 * The number of points in {@link #graphVertices}
 	 */
 	
-	private final List<Long> clickTimestamps;
+	private int graphPoints;
+	
+	/**
+	 * The history revision the graph points were built from
+	 */
+	
+	private int graphRevision;
+	
+	/**
+	 * The area the graph points were built for: X, Y, width and height
+	 */
+	
+	private final int[] graphArea = new int[4];
 	
 	/**
 	 * @see Key#Key(double, double, double, double, KeyBinding, String)
@@ -53,7 +139,7 @@ public final class KeyMouse extends Key {
 	
 	public KeyMouse(final double percentX, final double percentY, final double percentWidth, final double percentHeight, final KeyBinding key, final String keyName) {
 		super(percentX, percentY, percentWidth, percentHeight, key, keyName);
-		clickTimestamps = new LinkedList<Long>();
+		clicks = new ClickRateTracker(MAX_TRACKED_CLICKS, ClickRateTracker.NANOS_PER_SECOND, ClickRateTracker.NANOS_PER_SECOND * 5);
 	}
 
 	/**
@@ -61,52 +147,196 @@ public final class KeyMouse extends Key {
 	 */
 	
 	@Override
-	protected void drawKeyText(final MatrixStack matrix, float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
+	protected void drawKeyText(final OverlayRenderer renderer, float textRatio, final int elementX, final int elementY, final int elementWidth, final int elementHeight) {
 		// Since there are two lines in this key the text must be made smaller
 		textRatio *= 0.75f;
-		matrix.scale(textRatio, textRatio, textRatio);
 		int x = ceil((elementX + elementWidth / 2d) / textRatio);
 		int y = ceil((elementY + elementHeight / 2d) / textRatio);
+		// The graph goes behind the text
+		if (history != null) {
+			drawGraph(renderer, elementX + 1, elementY + 1, elementWidth - 2, elementHeight - 2);
+		}
 		// The key name
-		AbstractGui.drawCenteredString(matrix, fontRenderer, getKeyName(), x, y - fontRenderer.FONT_HEIGHT - 1, TEXT_COLOR);
+		renderer.drawCenteredText(getKeyName(), x, y - renderer.getFontHeight() - 1, textRatio, TEXT_COLOR);
 		// The current CPS
-		AbstractGui.drawCenteredString(matrix, fontRenderer, getCps() + " CPS", x, y + 1, TEXT_COLOR);
+		renderer.drawCenteredText(getCpsLabel(getDisplayedCps()), x, y + 1, textRatio, TEXT_COLOR);
+	}
+	
+	/**
+	 * Draws the CPS graph, the newest value on the right. The points are only built again<br>
+	 * when a history bucket closes or the key moves, all the other frames draw the same ones
+	 * @param renderer The renderer drawing the overlay
+	 * @param x The X coordinate of the graph area
+	 * @param y The Y coordinate of the graph area
+	 * @param width The width of the graph area
+	 * @param height The height of the graph area
+	 */
+	
+	private void drawGraph(final OverlayRenderer renderer, final int x, final int y, final int width, final int height) {
+		if (history.getRevision() != graphRevision || x != graphArea[0] || y != graphArea[1] || width != graphArea[2] || height != graphArea[3]) {
+			graphRevision = history.getRevision();
+			graphArea[0] = x;
+			graphArea[1] = y;
+			graphArea[2] = width;
+			graphArea[3] = height;
+			graphPoints = history.size();
+			int max = MIN_GRAPH_CPS;
+			for (int i = 0; i < graphPoints; i++) {
+				max = Math.max(max, history.getCps(i));
+			}
+			final float step = width / (float) Math.max(history.capacity() - 1, 1);
+			final float left = x + width - (graphPoints - 1) * step;
+			final float bottom = y + height - 0.5f;
+			final float scale = (height - 1) / (float) max;
+			for (int i = 0; i < graphPoints; i++) {
+				graphVertices[i * 2] = left + i * step;
+				graphVertices[i * 2 + 1] = bottom - history.getCps(i) * scale;
+			}
+		}
+		renderer.drawLineStrip(graphVertices, graphPoints, GRAPH_COLOR);
 	}
 	
 	/**
-	 * Updates the key status and adds the current timestamp to the list of key pressing times
+	 * Updates the key status and records the click timestamp in the clicks tracker
 	 */
 	
 	@Override
-	public void setKeyDown(final boolean isKeyDown) {
-		super.setKeyDown(isKeyDown);
+	public void setKeyDown(final boolean isKeyDown, final long timestamp) {
+		super.setKeyDown(isKeyDown, timestamp);
 		// Only add the timestamp if the key has been pressed
 		if (isKeyDown) {
-			clickTimestamps.add(System.currentTimeMillis());
+			clicks.click(timestamp);
+			if (history != null) {
+				history.click(timestamp);
+			}
+			if (getCounters() != null) {
+				getCounters().onCps(clicks.getCount(WINDOW_CPS, timestamp));
+			}
 		}
 	}
 	
 	/**
-	 * Removes all the timestamps whose value is lower than the current<br>
-	 * current timestamp minus 1000 and returns the list size
-	 * @return The number of CPS in the last second
+	 * Also closes the elapsed buckets of the CPS graph
 	 */
 	
-	private int getCps() {
-		long time = System.currentTimeMillis();
-		Iterator<Long> iterator = clickTimestamps.iterator();
-		while (iterator.hasNext()) {
-			long next = iterator.next();
-			// If this timestamp is older than a second...
-			if (next + 1000 < time) {
-				// ...then it gets removed
-				iterator.remove();
-			}
-			else {
-				// Since the list is ordered, we can exit now
-				break;
-			}
+	@Override
+	public void beginFrame(final long now, final long minimumPressTime) {
+		super.beginFrame(now, minimumPressTime);
+		if (history != null) {
+			history.advance(now);
+		}
+	}
+	
+	/**
+	 * Also closes the elapsed buckets of the CPS graph, which always shows the local clicks
+	 */
+	
+	@Override
+	public void beginRemoteFrame(final long now, final long minimumPressTime, final boolean isRemoteDown) {
+		super.beginRemoteFrame(now, minimumPressTime, isRemoteDown);
+		if (history != null) {
+			history.advance(now);
+		}
+	}
+	
+	/**
+	 * The revision also changes when the displayed CPS value changes or the graph scrolls
+	 */
+	
+	@Override
+	public int getRevision() {
+		int cps = getDisplayedCps();
+		if (cps != lastCps) {
+			lastCps = cps;
+			cpsRevision++;
 		}
-		return clickTimestamps.size();
+		return super.getRevision() + cpsRevision + (history == null ? 0 : history.getRevision());
+	}
+	
+	/**
+	 * Enables the CPS graph
+	 * @param history The recent CPS to show, or {@code null} to hide the graph
+	 */
+	
+	public void setHistory(final CpsHistory history) {
+		this.history = history;
+		graphVertices = history == null ? null : new float[history.capacity() * 2];
+		graphPoints = 0;
+		graphRevision = -1;
+	}
+	
+	/**
+	 * Gets the number of clicks in the last second
+	 * @return The number of CPS in the last second
+	 */
+	
+	public int getCps() {
+		return clicks.getCount(WINDOW_CPS, System.nanoTime());
+	}
+	
+	/**
+	 * Gets the number of clicks since the game started
+	 * @return The total clicks
+	 */
+	
+	public long getClickCount() {
+		return clicks.getTotal();
+	}
+	
+	/**
+	 * Gets when one of the most recent clicks happened
+	 * @param click The click number, only the last {@value #MAX_TRACKED_CLICKS} are remembered
+	 * @return The click time, as given by {@link System#nanoTime()}
+	 */
+	
+	public long getClickTimestamp(final long click) {
+		return clicks.getTimestamp(click);
+	}
+	
+	/**
+	 * Gets the CPS drawn on the key: the one of the spectated player, if any, othewhise the local one
+	 * @return The displayed CPS
+	 */
+	
+	public int getDisplayedCps() {
+		return remoteCps < 0 ? getCps() : remoteCps;
+	}
+	
+	/**
+	 * Sets the CPS of the spectated player, shown in place of the local one
+	 * @param remoteCps The CPS of the other player, or -1 to show the local one
+	 */
+	
+	public void setRemoteCps(final int remoteCps) {
+		this.remoteCps = remoteCps;
+	}
+	
+	/**
+	 * Gets the label shown for a CPS value, without allocating a new String
+	 * @param cps The CPS value
+	 * @return The label, such as "12 CPS"
+	 */
+	
+	public static String getCpsLabel(final int cps) {
+		// The tracker can't count more clicks than it remembers, this is just a safety net
+		return cps < CPS_LABELS.length ? CPS_LABELS[cps] : cps + " CPS";
+	}
+	
+	/**
+	 * Gets the average clicks per second over the last five seconds
+	 * @return The average CPS
+	 */
+	
+	public float getAverageCps() {
+		return clicks.getRate(WINDOW_AVERAGE, System.nanoTime());
+	}
+	
+	/**
+	 * Gets the highest CPS reached since the game started
+	 * @return The peak CPS
+	 */
+	
+	public int getPeakCps() {
+		return clicks.getPeak();
 	}
 }
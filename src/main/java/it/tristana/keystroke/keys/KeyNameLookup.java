@@ -0,0 +1,53 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import org.lwjgl.glfw.GLFW;
+
+/**
+ * Resolves the printable name of a keyboard key.<br>
+ * The default implementation asks GLFW, tests and benchmarks may provide their own
+ * @author Massimiliano Micol
+ * @see KeyLabelCache#setLookup(KeyNameLookup)
+ */
+
+@FunctionalInterface
+public interface KeyNameLookup {
+	
+	/**
+	 * The lookup based on {@link GLFW#glfwGetKeyName(int, int)}, following the current keyboard layout
+	 */
+	
+	KeyNameLookup GLFW_LOOKUP = code -> GLFW.glfwGetKeyName(code, GLFW.glfwGetKeyScancode(code));
+	
+	/**
+	 * Gets the name of a key
+	 * @param code The key integer value, as specified by <a href="https://www.glfw.org/docs/latest/group__keys.html">this link</a>
+	 * @return The key name, or {@code null} if the key has no printable name
+	 */
+	
+	String getName(int code);
+}
@@ -0,0 +1,201 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.metrics;
+
+import java.io.PrintWriter;
+
+/**
+ * A fixed memory histogram of durations, with logarithmic buckets like the HDR histograms.<br>
+ * Each power of two is split in {@link #SUB_BUCKETS} linear buckets, so any value is<br>
+ * stored with a relative error of about 3%, from a nanosecond up to centuries.<br>
+ * Recording a value costs a couple of bit operations and never allocates
+ * @author Massimiliano Micol
+ */
+
+public final class LatencyHistogram {
+	
+	/**
+	 * The number of bits used to split each power of two
+	 */
+	
+	private static final int SUB_BUCKET_BITS = 5;
+	
+	/**
+	 * The number of buckets each power of two is split into
+	 */
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * The number of values in each bucket
+	 */
+	
+	private final long[] counts;
+	
+	/**
+	 * The number of recorded values
+	 */
+	
+	private long total;
+	
+	/**
+	 * The highest recorded value
+	 */
+	
+	private long max;
+	
+	/**
+	 * The class constructor
+	 */
+	
+	public LatencyHistogram() {
+		// The values below SUB_BUCKETS take one band, then one band for each following power of two
+		counts = new long[(Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS];
+	}
+	
+	/**
+	 * Records a value. Negative values are recorded as 0
+	 * @param value The value, usually in nanoseconds
+	 */
+	
+	public void record(final long value) {
+		final long clamped = Math.max(value, 0);
+		counts[indexOf(clamped)]++;
+		total++;
+		if (clamped > max) {
+			max = clamped;
+		}
+	}
+	
+	/**
+	 * Gets the value below which a given percentage of the recorded values fall
+	 * @param percentile The percentage, from 0 to 100
+	 * @return The highest value of the bucket holding the percentile, or 0 if nothing was recorded
+	 */
+	
+	public long getPercentile(final double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		final long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Gets the highest recorded value
+	 * @return The maximum value
+	 */
+	
+	public long getMax() {
+		return max;
+	}
+	
+	/**
+	 * Gets the number of recorded values
+	 * @return The values count
+	 */
+	
+	public long getCount() {
+		return total;
+	}
+	
+	/**
+	 * Forgets all the recorded values
+	 */
+	
+	public void reset() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+		}
+		total = 0;
+		max = 0;
+	}
+	
+	/**
+	 * Copies the recorded values into another histogram, replacing its own
+	 * @param target The histogram receiving the copy
+	 */
+	
+	public void copyTo(final LatencyHistogram target) {
+		System.arraycopy(counts, 0, target.counts, 0, counts.length);
+		target.total = total;
+		target.max = max;
+	}
+	
+	/**
+	 * Writes the main percentiles and all the non empty buckets, as plain text
+	 * @param writer The destination
+	 * @param unit The unit each value is divided by, for example 1000 to write microseconds
+	 */
+	
+	public void write(final PrintWriter writer, final double unit) {
+		writer.printf("count=%d p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n", total, getPercentile(50) / unit, getPercentile(90) / unit, getPercentile(99) / unit, getPercentile(99.9) / unit, max / unit);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				seen += counts[i];
+				writer.printf("%.1f\t%d\t%.5f%n", Math.min(highestValueOf(i), max) / unit, counts[i], (double) seen / total);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the bucket of a value
+	 * @param value The value, not negative
+	 * @return The bucket index
+	 */
+	
+	private static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// Only the highest SUB_BUCKET_BITS + 1 bits are kept, the first one is always set
+		final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+	
+	/**
+	 * Gets the highest value stored in a bucket
+	 * @param index The bucket index
+	 * @return The highest value
+	 */
+	
+	private static long highestValueOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
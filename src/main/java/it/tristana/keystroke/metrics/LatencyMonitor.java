@@ -0,0 +1,202 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Measures how long the input takes to appear on the overlay and how long the overlay takes to draw.<br>
+ * The timestamp of every applied input event is kept until the end of the next overlay frame,<br>
+ * when the time passed since the event is recorded. All the measures go in fixed memory histograms
+ * @author Massimiliano Micol
+ */
+
+public final class LatencyMonitor {
+	
+	/**
+	 * The number of nanoseconds in a microsecond
+	 */
+	
+	private static final double NANOS_PER_MICRO = 1000d;
+	
+	/**
+	 * The number of events waiting for a frame that can be remembered, the others are dropped
+	 */
+	
+	private static final int MAX_PENDING = 256;
+	
+	/**
+	 * The logger used to report the dumps
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The time between an input event and the end of the frame showing it
+	 */
+	
+	private final LatencyHistogram eventToFrame;
+	
+	/**
+	 * The time spent drawing the overlay in each frame
+	 */
+	
+	private final LatencyHistogram frameTime;
+	
+	/**
+	 * The timestamps of the applied events not yet shown by a frame
+	 */
+	
+	private final long[] pending;
+	
+	/**
+	 * The number of values in {@link #pending}
+	 */
+	
+	private int pendingCount;
+	
+	/**
+	 * When the current frame started, as given by {@link System#nanoTime()}
+	 */
+	
+	private long frameStart;
+	
+	/**
+	 * The class constructor
+	 */
+	
+	public LatencyMonitor() {
+		eventToFrame = new LatencyHistogram();
+		frameTime = new LatencyHistogram();
+		pending = new long[MAX_PENDING];
+	}
+	
+	/**
+	 * Called when an input event has been applied to the keys
+	 * @param timestamp When the event arrived, as given by {@link System#nanoTime()}
+	 */
+	
+	public void onEventApplied(final long timestamp) {
+		if (pendingCount < pending.length) {
+			pending[pendingCount++] = timestamp;
+		}
+	}
+	
+	/**
+	 * Called when the overlay starts to be drawn
+	 */
+	
+	public void onFrameStart() {
+		frameStart = System.nanoTime();
+	}
+	
+	/**
+	 * Called when the overlay has been drawn, the pending events are now on screen
+	 */
+	
+	public void onFrameEnd() {
+		final long now = System.nanoTime();
+		frameTime.record(now - frameStart);
+		for (int i = 0; i < pendingCount; i++) {
+			eventToFrame.record(now - pending[i]);
+		}
+		pendingCount = 0;
+	}
+	
+	/**
+	 * Forgets the events waiting for a frame, for example because the overlay is hidden<br>
+	 * and they would only be shown much later
+	 */
+	
+	public void discardPending() {
+		pendingCount = 0;
+	}
+	
+	/**
+	 * Gets the histogram of the time between an input event and the end of the frame showing it
+	 * @return The event to frame histogram, in nanoseconds
+	 */
+	
+	public LatencyHistogram getEventToFrame() {
+		return eventToFrame;
+	}
+	
+	/**
+	 * Gets the histogram of the time spent drawing the overlay
+	 * @return The frame time histogram, in nanoseconds
+	 */
+	
+	public LatencyHistogram getFrameTime() {
+		return frameTime;
+	}
+	
+	/**
+	 * Builds a short summary of the measures, for the debug line. It allocates, so it shouldn't be called every frame
+	 * @return The summary, in microseconds
+	 */
+	
+	public String getSummary() {
+		return String.format("input p50 %.0f p99 %.0f max %.0f us | frame p50 %.0f p99 %.0f max %.0f us",
+			eventToFrame.getPercentile(50) / NANOS_PER_MICRO, eventToFrame.getPercentile(99) / NANOS_PER_MICRO, eventToFrame.getMax() / NANOS_PER_MICRO,
+			frameTime.getPercentile(50) / NANOS_PER_MICRO, frameTime.getPercentile(99) / NANOS_PER_MICRO, frameTime.getMax() / NANOS_PER_MICRO);
+	}
+	
+	/**
+	 * Writes a copy of the histograms to a new file on a background thread, so the game doesn't wait for the disk
+	 * @param directory The directory holding the dumps, created if missing
+	 */
+	
+	public void dump(final File directory) {
+		final LatencyHistogram eventCopy = new LatencyHistogram();
+		final LatencyHistogram frameCopy = new LatencyHistogram();
+		eventToFrame.copyTo(eventCopy);
+		frameTime.copyTo(frameCopy);
+		final File file = new File(directory, "latency-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+		Thread writer = new Thread(() -> {
+			directory.mkdirs();
+			try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+				out.println("# Input event to overlay frame latency (us)");
+				eventCopy.write(out, NANOS_PER_MICRO);
+				out.println();
+				out.println("# Overlay frame time (us)");
+				frameCopy.write(out, NANOS_PER_MICRO);
+				LOGGER.info("Latency histograms written to {}", file);
+			}
+			catch (IOException e) {
+				LOGGER.error("Could not write the latency histograms to {}", file, e);
+			}
+		}, "Keystroke latency dump");
+		writer.setDaemon(true);
+		writer.start();
+	}
+}
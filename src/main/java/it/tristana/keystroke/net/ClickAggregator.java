@@ -0,0 +1,553 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import it.tristana.keystroke.keys.ClickRateTracker;
+
+/**
+ * Tracks the clicks of many players at once on the server, to spot the ones clicking like an autoclicker.<br>
+ * The players are spread over independent stripes by their entity id, each guarded by its own lock,<br>
+ * so the network threads feeding different players rarely wait for each other. Every mouse button of a<br>
+ * player has its own slot, like every {@link it.tristana.keystroke.keys.KeyMouse} has its own counter: a<br>
+ * {@link ClickRateTracker} with the same one second window of {@link it.tristana.keystroke.keys.KeyMouse#getCps()},<br>
+ * a histogram of the intervals between its clicks and their moving average and variance. The buttons are<br>
+ * never mixed, othewhise alternating two buttons would look like clicking one twice as fast and as regularly.<br>
+ * The memory of a button is fixed, no matter how long it clicks
+ * @author Massimiliano Micol
+ */
+
+public final class ClickAggregator {
+	
+	/**
+	 * The clicks remembered for each button, the same of {@link it.tristana.keystroke.keys.KeyMouse}
+	 */
+	
+	private static final int MAX_TRACKED_CLICKS = 512;
+	
+	/**
+	 * The number of interval histogram buckets, the last one holding every interval of 2^14 ms or longer
+	 */
+	
+	public static final int INTERVAL_BUCKETS = 16;
+	
+	/**
+	 * The weight of a new interval in the moving average and variance, about the last 50 clicks
+	 */
+	
+	private static final double SMOOTHING = 0.04;
+	
+	/**
+	 * The number of nanoseconds in a millisecond
+	 */
+	
+	private static final double NANOS_PER_MILLI = 1_000_000d;
+	
+	/**
+	 * Intervals longer than this, in milliseconds, are pauses and don't count in the moving average
+	 */
+	
+	private static final double MAX_INTERVAL = 1000;
+	
+	/**
+	 * The CPS from which a button may be flagged
+	 */
+	
+	private static final int SUSPICIOUS_CPS = 8;
+	
+	/**
+	 * The clicks needed before a button may be flagged, so the moving average has settled
+	 */
+	
+	private static final int SUSPICIOUS_CLICKS = 100;
+	
+	/**
+	 * The ratio between the deviation and the average of the intervals below which the clicks are too regular for a human
+	 */
+	
+	private static final double SUSPICIOUS_VARIATION = 0.1;
+	
+	/**
+	 * The stripes, their number is a power of two
+	 */
+	
+	private final Stripe[] stripes;
+	
+	/**
+	 * Used to pick the stripe of a player
+	 */
+	
+	private final int mask;
+	
+	/**
+	 * The class constructor
+	 * @param stripes The number of stripes, rounded up to a power of two. More stripes means less contention
+	 */
+	
+	public ClickAggregator(final int stripes) {
+		this.stripes = new Stripe[stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		mask = this.stripes.length - 1;
+	}
+	
+	/**
+	 * Builds an aggregator with four stripes per processor
+	 */
+	
+	public ClickAggregator() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+	
+	/**
+	 * Records a click of a player button, adding the button if it is new.<br>
+	 * The clicks of a button must be recorded in order, an earlier timestamp is moved to the previous click
+	 * @param player The player entity id
+	 * @param button The mouse key index, in the order of the player layout
+	 * @param timestamp When the click happened, as given by {@link System#nanoTime()}
+	 */
+	
+	public void click(final int player, final int button, final long timestamp) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			stripe.click(stripe.getOrAdd(player, button), timestamp);
+		}
+	}
+	
+	/**
+	 * Records the clicks following a state sent by a client, see {@link KeyStateCodec}.<br>
+	 * The clicks of each mouse key go to their own button
+	 * @param player The player entity id
+	 * @param in The payload, left unchanged
+	 * @param now When the payload was received, as given by {@link System#nanoTime()}
+	 * @return {@code True} if the player buttons may have been added, {@code False} if the payload had no clicks
+	 */
+	
+	public boolean onState(final int player, final ByteBuffer in, final long now) {
+		ByteBuffer data = in.duplicate();
+		try {
+			if ((KeyStateCodec.skipState(data) & KeyStateCodec.CLICKS_FLAG) == 0) {
+				return false;
+			}
+			int mice = Math.min(data.get(), KeyStateCodec.MAX_MICE);
+			Stripe stripe = getStripe(player);
+			synchronized (stripe) {
+				for (int i = 0; i < mice; i++) {
+					long count = Math.min(KeyStateCodec.getVarLong(data), KeyStateCodec.MAX_CLICKS);
+					if (count == 0) {
+						continue;
+					}
+					int slot = stripe.getOrAdd(player, i);
+					for (long j = 0; j < count; j++) {
+						stripe.click(slot, now - KeyStateCodec.getVarLong(data) * 1000);
+					}
+				}
+			}
+			return true;
+		}
+		catch (RuntimeException e) {
+			// A broken payload only loses its clicks, but some buttons may have been added before
+			return true;
+		}
+	}
+	
+	/**
+	 * Forgets all the buttons of a player, called when it leaves the server
+	 * @param player The player entity id
+	 */
+	
+	public void remove(final int player) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			for (int slot = stripe.size - 1; slot >= 0; slot--) {
+				if (stripe.ids[slot] == player) {
+					stripe.remove(slot);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of clicks of a player button in the last second, the same value its {@link it.tristana.keystroke.keys.KeyMouse} shows
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return The CPS, 0 if the button never clicked
+	 */
+	
+	public int getCps(final int player, final int button, final long now) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			return slot < 0 ? 0 : stripe.trackers[slot].getCount(0, now);
+		}
+	}
+	
+	/**
+	 * Gets the number of clicks of all the buttons of a player in the last second.<br>
+	 * Counting needs no order, so the total is just the sum of the buttons
+	 * @param player The player entity id
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return The total CPS, 0 if the player never clicked
+	 */
+	
+	public int getCps(final int player, final long now) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int cps = 0;
+			for (int slot = 0; slot < stripe.size; slot++) {
+				if (stripe.ids[slot] == player) {
+					cps += stripe.trackers[slot].getCount(0, now);
+				}
+			}
+			return cps;
+		}
+	}
+	
+	/**
+	 * Gets the highest CPS reached by a player button
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @return The peak CPS, 0 if the button never clicked
+	 */
+	
+	public int getPeakCps(final int player, final int button) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			return slot < 0 ? 0 : stripe.trackers[slot].getPeak();
+		}
+	}
+	
+	/**
+	 * Gets the moving average of the intervals between the clicks of a player button
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @return The average interval in milliseconds, 0 if unknown
+	 */
+	
+	public double getIntervalMean(final int player, final int button) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			return slot < 0 ? 0 : stripe.means[slot];
+		}
+	}
+	
+	/**
+	 * Gets the moving standard deviation of the intervals between the clicks of a player button
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @return The interval deviation in milliseconds, 0 if unknown
+	 */
+	
+	public double getIntervalDeviation(final int player, final int button) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			return slot < 0 ? 0 : Math.sqrt(stripe.variances[slot]);
+		}
+	}
+	
+	/**
+	 * Copies the interval histogram of a player button, bucket i counting the intervals from 2^(i-1) to 2^i milliseconds
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @param destination Receives the {@value #INTERVAL_BUCKETS} buckets
+	 */
+	
+	public void copyIntervalHistogram(final int player, final int button, final long[] destination) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			if (slot < 0) {
+				Arrays.fill(destination, 0, INTERVAL_BUCKETS, 0);
+			}
+			else {
+				System.arraycopy(stripe.histograms, slot * INTERVAL_BUCKETS, destination, 0, INTERVAL_BUCKETS);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if a player button is clicking fast with intervals too regular for a human
+	 * @param player The player entity id
+	 * @param button The mouse key index
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return True if the clicks look like an autoclicker
+	 */
+	
+	public boolean isSuspicious(final int player, final int button, final long now) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int slot = stripe.find(player, button);
+			return slot >= 0 && stripe.isSuspicious(slot, now);
+		}
+	}
+	
+	/**
+	 * Checks if a button of a player just became suspicious, so it can be reported once instead of on every check
+	 * @param player The player entity id
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return The first button that is suspicious and wasn't on the previous check, or -1 if there is none
+	 */
+	
+	public int checkSuspicious(final int player, final long now) {
+		Stripe stripe = getStripe(player);
+		synchronized (stripe) {
+			int found = -1;
+			for (int slot = 0; slot < stripe.size; slot++) {
+				if (stripe.ids[slot] != player) {
+					continue;
+				}
+				boolean suspicious = stripe.isSuspicious(slot, now);
+				if (suspicious && !stripe.flagged[slot] && found < 0) {
+					found = stripe.buttons[slot];
+				}
+				stripe.flagged[slot] = suspicious;
+			}
+			return found;
+		}
+	}
+	
+	/**
+	 * Gets the number of tracked buttons, over all the players
+	 * @return The buttons count
+	 */
+	
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Gets the stripe of a player, mixing the id since the entity ids are sequential.<br>
+	 * All the buttons of a player share its stripe, so they can be read together under one lock
+	 * @param player The player entity id
+	 * @return The player stripe
+	 */
+	
+	private Stripe getStripe(final int player) {
+		return stripes[(player * 0x9e3779b9 >>> 16) & mask];
+	}
+	
+	/**
+	 * The buttons of the players of a stripe, in parallel arrays indexed by slot. Only used while holding its lock
+	 * @author Massimiliano Micol
+	 */
+	
+	private static final class Stripe {
+		
+		/**
+		 * The entity ids of the players
+		 */
+		
+		private int[] ids = new int[4];
+		
+		/**
+		 * The mouse key index of the buttons
+		 */
+		
+		private int[] buttons = new int[4];
+		
+		/**
+		 * The clicks of the buttons
+		 */
+		
+		private ClickRateTracker[] trackers = new ClickRateTracker[4];
+		
+		/**
+		 * The timestamp of the last click of the buttons
+		 */
+		
+		private long[] lastClicks = new long[4];
+		
+		/**
+		 * The number of clicks of the buttons
+		 */
+		
+		private long[] clickCounts = new long[4];
+		
+		/**
+		 * The moving average of the intervals of the buttons, in milliseconds
+		 */
+		
+		private double[] means = new double[4];
+		
+		/**
+		 * The moving variance of the intervals of the buttons
+		 */
+		
+		private double[] variances = new double[4];
+		
+		/**
+		 * The interval histograms of the buttons, {@value ClickAggregator#INTERVAL_BUCKETS} buckets each
+		 */
+		
+		private long[] histograms = new long[4 * INTERVAL_BUCKETS];
+		
+		/**
+		 * Whether the buttons were suspicious on their last check
+		 */
+		
+		private boolean[] flagged = new boolean[4];
+		
+		/**
+		 * The number of buttons
+		 */
+		
+		private int size;
+		
+		/**
+		 * Finds the slot of a player button. The stripes are small, a linear scan is faster than hashing
+		 * @param player The player entity id
+		 * @param button The mouse key index
+		 * @return The button slot, or -1 if it is not tracked
+		 */
+		
+		private int find(final int player, final int button) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == player && buttons[i] == button) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * Finds the slot of a player button, adding it if it is not tracked
+		 * @param player The player entity id
+		 * @param button The mouse key index
+		 * @return The button slot
+		 */
+		
+		private int getOrAdd(final int player, final int button) {
+			int slot = find(player, button);
+			if (slot >= 0) {
+				return slot;
+			}
+			if (size == ids.length) {
+				int capacity = size * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				buttons = Arrays.copyOf(buttons, capacity);
+				trackers = Arrays.copyOf(trackers, capacity);
+				lastClicks = Arrays.copyOf(lastClicks, capacity);
+				clickCounts = Arrays.copyOf(clickCounts, capacity);
+				means = Arrays.copyOf(means, capacity);
+				variances = Arrays.copyOf(variances, capacity);
+				histograms = Arrays.copyOf(histograms, capacity * INTERVAL_BUCKETS);
+				flagged = Arrays.copyOf(flagged, capacity);
+			}
+			slot = size++;
+			ids[slot] = player;
+			buttons[slot] = button;
+			// The trackers of the removed buttons are reused
+			if (trackers[slot] == null) {
+				trackers[slot] = new ClickRateTracker(MAX_TRACKED_CLICKS, ClickRateTracker.NANOS_PER_SECOND);
+			}
+			else {
+				trackers[slot].reset();
+			}
+			clickCounts[slot] = 0;
+			means[slot] = 0;
+			variances[slot] = 0;
+			Arrays.fill(histograms, slot * INTERVAL_BUCKETS, (slot + 1) * INTERVAL_BUCKETS, 0);
+			flagged[slot] = false;
+			return slot;
+		}
+		
+		/**
+		 * Records a click of a button
+		 * @param slot The button slot
+		 * @param timestamp When the click happened
+		 */
+		
+		private void click(final int slot, long timestamp) {
+			if (clickCounts[slot] > 0) {
+				// The clicks sent in different packets may overlap by a little network jitter
+				timestamp = Math.max(timestamp, lastClicks[slot]);
+				double interval = (timestamp - lastClicks[slot]) / NANOS_PER_MILLI;
+				int bucket = Math.min(64 - Long.numberOfLeadingZeros((long) interval), INTERVAL_BUCKETS - 1);
+				histograms[slot * INTERVAL_BUCKETS + bucket]++;
+				if (interval <= MAX_INTERVAL) {
+					if (clickCounts[slot] == 1) {
+						means[slot] = interval;
+					}
+					else {
+						// The exponentially weighted variance follows the recent clicks, not the whole session
+						double difference = interval - means[slot];
+						means[slot] += SMOOTHING * difference;
+						variances[slot] = (1 - SMOOTHING) * (variances[slot] + SMOOTHING * difference * difference);
+					}
+				}
+			}
+			lastClicks[slot] = timestamp;
+			clickCounts[slot]++;
+			trackers[slot].click(timestamp);
+		}
+		
+		/**
+		 * Checks if a button is clicking fast with intervals too regular for a human
+		 * @param slot The button slot
+		 * @param now The current time
+		 * @return True if the clicks look like an autoclicker
+		 */
+		
+		private boolean isSuspicious(final int slot, final long now) {
+			return clickCounts[slot] >= SUSPICIOUS_CLICKS && trackers[slot].getCount(0, now) >= SUSPICIOUS_CPS
+				&& Math.sqrt(variances[slot]) < means[slot] * SUSPICIOUS_VARIATION;
+		}
+		
+		/**
+		 * Forgets a button, moving the last one in its slot
+		 * @param slot The button slot
+		 */
+		
+		private void remove(final int slot) {
+			int last = --size;
+			ids[slot] = ids[last];
+			buttons[slot] = buttons[last];
+			ClickRateTracker tracker = trackers[slot];
+			trackers[slot] = trackers[last];
+			trackers[last] = tracker;
+			lastClicks[slot] = lastClicks[last];
+			clickCounts[slot] = clickCounts[last];
+			means[slot] = means[last];
+			variances[slot] = variances[last];
+			System.arraycopy(histograms, last * INTERVAL_BUCKETS, histograms, slot * INTERVAL_BUCKETS, INTERVAL_BUCKETS);
+			flagged[slot] = flagged[last];
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the keys state of a player: a flags byte, then the pressed keys bitset as a varint if it<br>
+ * changed, then the count and the varint CPS of the mouse keys if they changed. A removed player<br>
+ * only has its flags. The spectator packets start with the 16 bits count of their entries,<br>
+ * each entry being the varint player entity id followed by the state.<br>
+ * The states sent by the clients may end with their new clicks: the count of mouse keys, then for<br>
+ * each of them the varint count of clicks followed by their varint ages in microseconds, oldest first
+ * @author Massimiliano Micol
+ */
+
+public final class KeyStateCodec {
+	
+	/**
+	 * The maximum number of keys in a state, the following ones are not sent
+	 */
+	
+	public static final int MAX_KEYS = Long.SIZE;
+	
+	/**
+	 * The maximum number of mouse keys in a state, the following ones are not sent
+	 */
+	
+	public static final int MAX_MICE = 4;
+	
+	/**
+	 * The flag telling the pressed keys follow
+	 */
+	
+	static final int KEYS_FLAG = 1;
+	
+	/**
+	 * The flag telling the CPS follow
+	 */
+	
+	static final int CPS_FLAG = 2;
+	
+	/**
+	 * The flag telling the player left, nothing follows
+	 */
+	
+	static final int REMOVED_FLAG = 4;
+	
+	/**
+	 * The flag telling the new clicks follow the state, only sent by the clients
+	 */
+	
+	static final int CLICKS_FLAG = 8;
+	
+	/**
+	 * The maximum number of clicks of a mouse key in a state, the older ones are not sent
+	 */
+	
+	static final int MAX_CLICKS = 32;
+	
+	/**
+	 * The maximum size of an encoded state, including the player id
+	 */
+	
+	static final int MAX_ENTRY_SIZE = 5 + 1 + 10 + 1 + MAX_MICE * 5;
+	
+	/**
+	 * The maximum size of the clicks following a state
+	 */
+	
+	static final int MAX_CLICKS_SIZE = 1 + MAX_MICE * (5 + MAX_CLICKS * 5);
+	
+	/**
+	 * The maximum size of a payload
+	 */
+	
+	static final int MAX_PAYLOAD_SIZE = 8192;
+	
+	/**
+	 * A private constructor, this class only has static methods
+	 */
+	
+	private KeyStateCodec() {}
+	
+	/**
+	 * Writes a state
+	 * @param out The destination
+	 * @param flags Which parts of the state are written
+	 * @param keys The pressed keys bitset
+	 * @param cps The CPS array
+	 * @param offset The index of the first CPS in the array
+	 * @param mice The number of CPS values
+	 */
+	
+	static void writeState(final ByteBuffer out, final int flags, final long keys, final int[] cps, final int offset, final int mice) {
+		out.put((byte) flags);
+		if ((flags & KEYS_FLAG) != 0) {
+			putVarLong(out, keys);
+		}
+		if ((flags & CPS_FLAG) != 0) {
+			out.put((byte) mice);
+			for (int i = 0; i < mice; i++) {
+				putVarLong(out, cps[offset + i]);
+			}
+		}
+	}
+	
+	/**
+	 * Moves past a state, leaving the buffer on what follows it
+	 * @param in The source
+	 * @return The state flags
+	 * @throws IllegalArgumentException If the state is not valid
+	 */
+	
+	static int skipState(final ByteBuffer in) {
+		final int flags = in.get();
+		if ((flags & KEYS_FLAG) != 0) {
+			getVarLong(in);
+		}
+		if ((flags & CPS_FLAG) != 0) {
+			for (int i = in.get(); i > 0; i--) {
+				getVarLong(in);
+			}
+		}
+		return flags;
+	}
+	
+	/**
+	 * Writes a value with 7 bits per byte, the highest bit telling whether more bytes follow
+	 * @param out The destination
+	 * @param value The value, treated as unsigned
+	 */
+	
+	static void putVarLong(final ByteBuffer out, long value) {
+		while ((value & ~0x7fL) != 0) {
+			out.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+	
+	/**
+	 * Reads a value written with 7 bits per byte
+	 * @param in The source
+	 * @return The value
+	 * @throws IllegalArgumentException If the value is longer than 64 bits
+	 */
+	
+	static long getVarLong(final ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte current = in.get();
+			value |= (current & 0x7fL) << shift;
+			if (current >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+}
@@ -0,0 +1,193 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyMouse;
+
+/**
+ * Sends the keys state of the local player to the server, once per tick and only the parts that changed.<br>
+ * The whole state is sent again every second, so a packet dropped by the server rate limit is soon repaired
+ * @author Massimiliano Micol
+ */
+
+public final class KeyStateSender {
+	
+	/**
+	 * The number of ticks after which the whole state is sent even if it didn't change
+	 */
+	
+	private static final int RESEND_TICKS = 20;
+	
+	/**
+	 * Holds the encoded state
+	 */
+	
+	private final ByteBuffer out;
+	
+	/**
+	 * The current CPS of the mouse keys
+	 */
+	
+	private final int[] cps;
+	
+	/**
+	 * The last sent CPS of the mouse keys
+	 */
+	
+	private final int[] sentCps;
+	
+	/**
+	 * The total clicks of each mouse key when its clicks were last sent
+	 */
+	
+	private final long[] sentClicks;
+	
+	/**
+	 * The mouse keys whose clicks are sent, in the layout order
+	 */
+	
+	private final KeyMouse[] mouseKeys;
+	
+	/**
+	 * The last sent pressed keys bitset
+	 */
+	
+	private long sentKeys;
+	
+	/**
+	 * The last sent number of mouse keys, or -1 if nothing was sent yet
+	 */
+	
+	private int sentMice = -1;
+	
+	/**
+	 * The number of ticks since the last packet
+	 */
+	
+	private int ticksSinceSend;
+	
+	/**
+	 * The class constructor
+	 */
+	
+	public KeyStateSender() {
+		out = ByteBuffer.allocate(KeyStateCodec.MAX_ENTRY_SIZE + KeyStateCodec.MAX_CLICKS_SIZE);
+		cps = new int[KeyStateCodec.MAX_MICE];
+		sentCps = new int[KeyStateCodec.MAX_MICE];
+		sentClicks = new long[KeyStateCodec.MAX_MICE];
+		mouseKeys = new KeyMouse[KeyStateCodec.MAX_MICE];
+	}
+	
+	/**
+	 * Sends the state of the keys if it changed, called once per tick
+	 * @param keys The local keys, the pressed status sent is the local one drawn in the last frame, even while spectating
+	 * @param transport The connection to the server
+	 */
+	
+	public void tick(final Key[] keys, final Transport transport) {
+		long pressed = 0;
+		int mice = 0;
+		for (int i = 0; i < keys.length && i < KeyStateCodec.MAX_KEYS; i++) {
+			if (keys[i].isLocalShownDown()) {
+				pressed |= 1L << i;
+			}
+			if (keys[i] instanceof KeyMouse && mice < KeyStateCodec.MAX_MICE) {
+				KeyMouse mouse = (KeyMouse) keys[i];
+				// A new layout has new keys, their clicks are counted from now on
+				if (mouse != mouseKeys[mice]) {
+					mouseKeys[mice] = mouse;
+					sentClicks[mice] = mouse.getClickCount();
+				}
+				cps[mice++] = mouse.getCps();
+			}
+		}
+		boolean clicked = false;
+		for (int i = 0; i < mice && !clicked; i++) {
+			clicked = mouseKeys[i].getClickCount() != sentClicks[i];
+		}
+		int flags = clicked ? KeyStateCodec.CLICKS_FLAG : 0;
+		if (++ticksSinceSend >= RESEND_TICKS || sentMice < 0) {
+			flags |= KeyStateCodec.KEYS_FLAG | KeyStateCodec.CPS_FLAG;
+		}
+		else {
+			if (pressed != sentKeys) {
+				flags |= KeyStateCodec.KEYS_FLAG;
+			}
+			boolean cpsChanged = mice != sentMice;
+			for (int i = 0; i < mice && !cpsChanged; i++) {
+				cpsChanged = cps[i] != sentCps[i];
+			}
+			if (cpsChanged) {
+				flags |= KeyStateCodec.CPS_FLAG;
+			}
+		}
+		if (flags == 0) {
+			return;
+		}
+		out.clear();
+		KeyStateCodec.writeState(out, flags, pressed, cps, 0, mice);
+		if (clicked) {
+			writeClicks(mice);
+		}
+		out.flip();
+		transport.send(0, out);
+		sentKeys = pressed;
+		System.arraycopy(cps, 0, sentCps, 0, mice);
+		sentMice = mice;
+		ticksSinceSend = 0;
+	}
+	
+	/**
+	 * Writes the clicks of each mouse key since the last packet, as their age in microseconds
+	 * @param mice The number of mouse keys
+	 */
+	
+	private void writeClicks(final int mice) {
+		final long now = System.nanoTime();
+		out.put((byte) mice);
+		for (int i = 0; i < mice; i++) {
+			final long total = mouseKeys[i].getClickCount();
+			// Only the most recent clicks are sent after a long pause
+			final long first = Math.max(sentClicks[i], total - KeyStateCodec.MAX_CLICKS);
+			KeyStateCodec.putVarLong(out, total - first);
+			for (long click = first; click < total; click++) {
+				KeyStateCodec.putVarLong(out, Math.max(now - mouseKeys[i].getClickTimestamp(click), 0) / 1000);
+			}
+			sentClicks[i] = total;
+		}
+	}
+	
+	/**
+	 * Forgets what was sent, so the next tick sends the whole state. Called when joining a server
+	 */
+	
+	public void reset() {
+		sentMice = -1;
+	}
+}
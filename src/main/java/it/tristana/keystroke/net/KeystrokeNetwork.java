@@ -0,0 +1,368 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import it.tristana.keystroke.config.Config;
+import it.tristana.keystroke.keys.Key;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.NetworkRegistry;
+import net.minecraftforge.fml.network.PacketDistributor;
+import net.minecraftforge.fml.network.simple.SimpleChannel;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The mod network channel, letting the spectators see the keys of the players. It has a singleton pattern.<br>
+ * Its instance may be accessed with {@link #getInstance()}.<br>
+ * The clients send their keys state with a {@link KeyStateSender}, the server relays them with a<br>
+ * {@link SpectatorRelay} to the players in spectator mode, whose {@link SpectatorView} holds them.<br>
+ * The relay only runs when enabled with {@link Config#SPECTATOR_RELAY}.<br>
+ * The server also follows the clicks of every player with a {@link ClickAggregator}, reporting the autoclickers.<br>
+ * The channel is optional on both sides, so the mod still works on servers that don't have it
+ * @author Massimiliano Micol
+ */
+
+public final class KeystrokeNetwork {
+	
+	/**
+	 * The version of the network protocol
+	 */
+	
+	private static final String PROTOCOL = "1";
+	
+	/**
+	 * The bytes each spectator may receive per second.<br>
+	 * Set with the {@code -Dkeystroke.spectatorBandwidth=<value>} JVM argument on the server
+	 */
+	
+	private static final int SPECTATOR_BANDWIDTH = Integer.getInteger("keystroke.spectatorBandwidth", 4096);
+	
+	/**
+	 * The states each player may send per second, a bit more than one per tick
+	 */
+	
+	private static final int STATES_PER_SECOND = 25;
+	
+	/**
+	 * The ticks between two checks of the players clicks
+	 */
+	
+	private static final int CLICKS_CHECK_TICKS = 20;
+	
+	/**
+	 * The logger used to report the suspicious players
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The singleton instance
+	 */
+	
+	private static KeystrokeNetwork instance;
+	
+	/**
+	 * The network channel
+	 */
+	
+	private final SimpleChannel channel;
+	
+	/**
+	 * Relays the players states, only used on the server thread
+	 */
+	
+	private final SpectatorRelay relay;
+	
+	/**
+	 * Follows the clicks of the players, fed by the network threads
+	 */
+	
+	private final ClickAggregator clicks;
+	
+	/**
+	 * Holds the states relayed by the server, only used on the client thread
+	 */
+	
+	private final SpectatorView view;
+	
+	/**
+	 * Sends the local keys state, only used on the client thread
+	 */
+	
+	private final KeyStateSender sender;
+	
+	/**
+	 * Sends the payloads to the server
+	 */
+	
+	private final Transport toServer;
+	
+	/**
+	 * Sends the payloads to the spectators of the current tick
+	 */
+	
+	private final Transport toSpectators;
+	
+	/**
+	 * The spectators of the current tick
+	 */
+	
+	private ServerPlayerEntity[] spectators;
+	
+	/**
+	 * The entity ids of the spectators of the current tick
+	 */
+	
+	private int[] spectatorIds;
+	
+	/**
+	 * The number of spectators of the current tick
+	 */
+	
+	private int spectatorCount;
+	
+	/**
+	 * The server ticks since the players clicks were last checked
+	 */
+	
+	private int ticksSinceCheck;
+	
+	/**
+	 * A private constructor for the singleton, it registers the channel
+	 */
+	
+	private KeystrokeNetwork() {
+		channel = NetworkRegistry.newSimpleChannel(new ResourceLocation("keystroke", "keys"), () -> PROTOCOL, NetworkRegistry.acceptMissingOr(PROTOCOL), NetworkRegistry.acceptMissingOr(PROTOCOL));
+		channel.registerMessage(0, KeystrokePacket.class, KeystrokePacket::encode, KeystrokePacket::decode, this::handle);
+		relay = new SpectatorRelay(SPECTATOR_BANDWIDTH, STATES_PER_SECOND);
+		clicks = new ClickAggregator();
+		view = new SpectatorView();
+		sender = new KeyStateSender();
+		toServer = (connection, payload) -> channel.sendToServer(new KeystrokePacket(copy(payload)));
+		toSpectators = this::sendToSpectator;
+		spectators = new ServerPlayerEntity[8];
+		spectatorIds = new int[spectators.length];
+	}
+	
+	/**
+	 * Gets this class singleton, instantiating it if needed
+	 * @return The singleton instance
+	 */
+	
+	public static KeystrokeNetwork getInstance() {
+		if (instance == null) {
+			instance = new KeystrokeNetwork();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Sends the local keys state to the server if it changed, called once per client tick
+	 * @param keys The local keys
+	 * @param connection The connection to the server
+	 */
+	
+	public void sendState(final Key[] keys, final NetworkManager connection) {
+		// Servers without the mod don't want the packets
+		if (channel.isRemotePresent(connection)) {
+			sender.tick(keys, toServer);
+		}
+	}
+	
+	/**
+	 * Forgets the states of the previous server, called when joining a server
+	 */
+	
+	public void onJoin() {
+		sender.reset();
+		view.clear();
+	}
+	
+	/**
+	 * Gets the keys states of the other players
+	 * @return The spectator view
+	 */
+	
+	public SpectatorView getView() {
+		return view;
+	}
+	
+	/**
+	 * Gets the clicks of the players, only filled on the server
+	 * @return The click aggregator
+	 */
+	
+	public ClickAggregator getClicks() {
+		return clicks;
+	}
+	
+	/**
+	 * Called at the start and at the end of every server tick, it relays the changed states to the spectators<br>
+	 * and reports the players that started clicking like an autoclicker
+	 * @param event The tick event
+	 */
+	
+	@SubscribeEvent
+	public void onServerTick(final TickEvent.ServerTickEvent event) {
+		MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+		if (event.phase != TickEvent.Phase.END || server == null) {
+			return;
+		}
+		List<ServerPlayerEntity> players = server.getPlayerList().getPlayers();
+		final long now = System.nanoTime();
+		if (++ticksSinceCheck >= CLICKS_CHECK_TICKS) {
+			ticksSinceCheck = 0;
+			for (int i = 0; i < players.size(); i++) {
+				ServerPlayerEntity player = players.get(i);
+				int id = player.getEntityId();
+				int button = clicks.checkSuspicious(id, now);
+				if (button >= 0) {
+					LOGGER.warn("{} is clicking mouse key {} like an autoclicker: {} CPS, {} ms intervals with {} ms deviation", player.getScoreboardName(), button,
+						clicks.getCps(id, button, now), String.format("%.1f", clicks.getIntervalMean(id, button)), String.format("%.2f", clicks.getIntervalDeviation(id, button)));
+				}
+			}
+		}
+		if (!Config.SPECTATOR_RELAY) {
+			return;
+		}
+		spectatorCount = 0;
+		for (int i = 0; i < players.size(); i++) {
+			ServerPlayerEntity player = players.get(i);
+			if (player.isSpectator()) {
+				if (spectatorCount == spectators.length) {
+					spectators = Arrays.copyOf(spectators, spectatorCount * 2);
+					spectatorIds = Arrays.copyOf(spectatorIds, spectatorCount * 2);
+				}
+				spectators[spectatorCount] = player;
+				spectatorIds[spectatorCount++] = player.getEntityId();
+			}
+		}
+		relay.tick(now, spectatorIds, spectatorCount, toSpectators);
+		// The players must not be kept after they leave
+		Arrays.fill(spectators, 0, spectatorCount, null);
+	}
+	
+	/**
+	 * Called when a player leaves the server, the spectators are told to forget it
+	 * @param event The logout event
+	 */
+	
+	@SubscribeEvent
+	public void onLogout(final PlayerEvent.PlayerLoggedOutEvent event) {
+		relay.removePlayer(event.getPlayer().getEntityId());
+		clicks.remove(event.getPlayer().getEntityId());
+	}
+	
+	/**
+	 * Handles a received packet on the game thread of its side.<br>
+	 * The clicks are recorded right away on the network thread, the aggregator doesn't need the game thread:<br>
+	 * the game thread only checks afterwards that the player didn't leave meanwhile
+	 * @param packet The packet
+	 * @param supplier The packet context
+	 */
+	
+	private void handle(final KeystrokePacket packet, final Supplier<NetworkEvent.Context> supplier) {
+		NetworkEvent.Context context = supplier.get();
+		if (context.getDirection().getReceptionSide().isServer()) {
+			final ServerPlayerEntity player = context.getSender();
+			if (player != null) {
+				if (clicks.onState(player.getEntityId(), ByteBuffer.wrap(packet.data), System.nanoTime())) {
+					// The player may have been removed while the clicks were recorded, the entity id would never be freed again
+					context.enqueueWork(() -> {
+						if (!isOnline(player)) {
+							clicks.remove(player.getEntityId());
+						}
+					});
+				}
+				if (Config.SPECTATOR_RELAY) {
+					context.enqueueWork(() -> {
+						// A state still queued when the player left would take a slot that is never freed
+						if (isOnline(player)) {
+							relay.onState(player.getEntityId(), ByteBuffer.wrap(packet.data), System.nanoTime());
+						}
+					});
+				}
+			}
+		}
+		else {
+			context.enqueueWork(() -> view.apply(ByteBuffer.wrap(packet.data)));
+		}
+		context.setPacketHandled(true);
+	}
+	
+	/**
+	 * Checks if a player is still in the server players list, only called on the server thread
+	 * @param player The player
+	 * @return {@code True} if the player didn't leave, {@code False} othewhise
+	 */
+	
+	private static boolean isOnline(final ServerPlayerEntity player) {
+		MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+		return server != null && server.getPlayerList().getPlayerByUUID(player.getUniqueID()) == player;
+	}
+	
+	/**
+	 * Sends a payload to one of the spectators of the current tick
+	 * @param connection The spectator entity id
+	 * @param payload The payload
+	 */
+	
+	private void sendToSpectator(final int connection, final ByteBuffer payload) {
+		for (int i = 0; i < spectatorCount; i++) {
+			if (spectatorIds[i] == connection) {
+				final ServerPlayerEntity player = spectators[i];
+				channel.send(PacketDistributor.PLAYER.with(() -> player), new KeystrokePacket(copy(payload)));
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Copies a payload, since the packets are encoded later on the network thread
+	 * @param payload The payload, from its position to its limit
+	 * @return The copied bytes
+	 */
+	
+	private static byte[] copy(final ByteBuffer payload) {
+		byte[] data = new byte[payload.remaining()];
+		payload.get(data);
+		return data;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * The packet of the mod network channel, carrying a keystroke payload in both directions
+ * @author Massimiliano Micol
+ */
+
+final class KeystrokePacket {
+	
+	/**
+	 * The payload
+	 */
+	
+	final byte[] data;
+	
+	/**
+	 * The class constructor
+	 * @param data The payload
+	 */
+	
+	KeystrokePacket(final byte[] data) {
+		this.data = data;
+	}
+	
+	/**
+	 * Writes a packet
+	 * @param packet The packet
+	 * @param buffer The destination
+	 */
+	
+	static void encode(final KeystrokePacket packet, final PacketBuffer buffer) {
+		buffer.writeByteArray(packet.data);
+	}
+	
+	/**
+	 * Reads a packet
+	 * @param buffer The source
+	 * @return The packet
+	 */
+	
+	static KeystrokePacket decode(final PacketBuffer buffer) {
+		return new KeystrokePacket(buffer.readByteArray(KeyStateCodec.MAX_PAYLOAD_SIZE));
+	}
+}
@@ -0,0 +1,543 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs on the server: it keeps the last keys state of every player and relays the changes to the spectators.<br>
+ * Every player state carries a version, incremented when it changes, and every spectator remembers the<br>
+ * version it last received for each player: once per tick each spectator gets a single packet with all the<br>
+ * players changed since, so many changes of the same player between two packets are sent only once.<br>
+ * Each spectator has a budget of bytes per second: players that don't fit wait for the next tick, and the<br>
+ * next packet starts from them so nobody is starved. Each player may only send a few states per second,<br>
+ * the extra ones are dropped. Everything runs on the server thread
+ * @author Massimiliano Micol
+ */
+
+public final class SpectatorRelay {
+	
+	/**
+	 * The initial number of player slots
+	 */
+	
+	private static final int INITIAL_SLOTS = 16;
+	
+	/**
+	 * The number of nanoseconds in a second
+	 */
+	
+	private static final double NANOS_PER_SECOND = 1_000_000_000d;
+	
+	/**
+	 * A connection receiving the players states
+	 */
+	
+	private static final class Spectator {
+		
+		/**
+		 * The spectator entity id
+		 */
+		
+		final int id;
+		
+		/**
+		 * The version of each player slot last sent to this spectator
+		 */
+		
+		long[] sentVersions;
+		
+		/**
+		 * The bytes that may be sent right now
+		 */
+		
+		double tokens;
+		
+		/**
+		 * When the tokens were last refilled, as given by {@link System#nanoTime()}
+		 */
+		
+		long lastRefill;
+		
+		/**
+		 * The slot the next packet starts from
+		 */
+		
+		int cursor;
+		
+		/**
+		 * Whether the spectator was still in the list of the current tick
+		 */
+		
+		boolean seen;
+		
+		/**
+		 * The class constructor
+		 * @param id The spectator entity id
+		 * @param slots The number of player slots
+		 * @param tokens The initial bytes budget
+		 * @param now The current time, as given by {@link System#nanoTime()}
+		 */
+		
+		Spectator(final int id, final int slots, final double tokens, final long now) {
+			this.id = id;
+			sentVersions = new long[slots];
+			this.tokens = tokens;
+			lastRefill = now;
+		}
+	}
+	
+	/**
+	 * The bytes each spectator may receive per second
+	 */
+	
+	private final int bytesPerSecond;
+	
+	/**
+	 * The bytes a spectator may receive at once after being idle
+	 */
+	
+	private final int burstBytes;
+	
+	/**
+	 * The states each player may send per second
+	 */
+	
+	private final int statesPerSecond;
+	
+	/**
+	 * The connected spectators
+	 */
+	
+	private final List<Spectator> spectators;
+	
+	/**
+	 * Holds the packet being built
+	 */
+	
+	private final ByteBuffer out;
+	
+	/**
+	 * Whether each player slot is in use
+	 */
+	
+	private boolean[] used;
+	
+	/**
+	 * Whether the player of each slot left, the slot is freed once all the spectators know
+	 */
+	
+	private boolean[] removed;
+	
+	/**
+	 * The player entity id of each slot
+	 */
+	
+	private int[] playerIds;
+	
+	/**
+	 * The pressed keys bitset of each slot
+	 */
+	
+	private long[] keys;
+	
+	/**
+	 * The CPS of the mouse keys, {@link KeyStateCodec#MAX_MICE} values for each slot
+	 */
+	
+	private int[] cps;
+	
+	/**
+	 * The number of mouse keys of each slot
+	 */
+	
+	private int[] mice;
+	
+	/**
+	 * The version of each slot, incremented every time its state changes. It keeps growing when the slot is reused
+	 */
+	
+	private long[] versions;
+	
+	/**
+	 * The version of each slot when its pressed keys last changed
+	 */
+	
+	private long[] keysVersions;
+	
+	/**
+	 * The version of each slot when its CPS last changed
+	 */
+	
+	private long[] cpsVersions;
+	
+	/**
+	 * The states each slot may send right now
+	 */
+	
+	private double[] stateTokens;
+	
+	/**
+	 * When the state tokens of each slot were last refilled, as given by {@link System#nanoTime()}
+	 */
+	
+	private long[] stateRefills;
+	
+	/**
+	 * The number of slots ever used, the following ones were never touched
+	 */
+	
+	private int slots;
+	
+	/**
+	 * The number of states dropped by the rate limit or because they were invalid
+	 */
+	
+	private long droppedStates;
+	
+	/**
+	 * The class constructor
+	 * @param bytesPerSecond The bytes each spectator may receive per second
+	 * @param statesPerSecond The states each player may send per second
+	 */
+	
+	public SpectatorRelay(final int bytesPerSecond, final int statesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		// Half a second of traffic, but always enough for at least one entry
+		burstBytes = Math.max(bytesPerSecond / 2, Short.BYTES + KeyStateCodec.MAX_ENTRY_SIZE);
+		this.statesPerSecond = statesPerSecond;
+		spectators = new ArrayList<Spectator>();
+		out = ByteBuffer.allocate(KeyStateCodec.MAX_PAYLOAD_SIZE);
+		used = new boolean[INITIAL_SLOTS];
+		removed = new boolean[INITIAL_SLOTS];
+		playerIds = new int[INITIAL_SLOTS];
+		keys = new long[INITIAL_SLOTS];
+		cps = new int[INITIAL_SLOTS * KeyStateCodec.MAX_MICE];
+		mice = new int[INITIAL_SLOTS];
+		versions = new long[INITIAL_SLOTS];
+		keysVersions = new long[INITIAL_SLOTS];
+		cpsVersions = new long[INITIAL_SLOTS];
+		stateTokens = new double[INITIAL_SLOTS];
+		stateRefills = new long[INITIAL_SLOTS];
+	}
+	
+	/**
+	 * Applies a state sent by a player
+	 * @param playerId The player entity id
+	 * @param in The state, as written by {@link KeyStateSender}
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return {@code True} if the state was applied, {@code False} if it was dropped
+	 */
+	
+	public boolean onState(final int playerId, final ByteBuffer in, final long now) {
+		int slot = find(playerId);
+		if (slot < 0) {
+			slot = add(playerId, now);
+		}
+		stateTokens[slot] = Math.min(statesPerSecond, stateTokens[slot] + (now - stateRefills[slot]) * statesPerSecond / NANOS_PER_SECOND);
+		stateRefills[slot] = now;
+		if (stateTokens[slot] < 1) {
+			droppedStates++;
+			return false;
+		}
+		stateTokens[slot]--;
+		final int offset = slot * KeyStateCodec.MAX_MICE;
+		try {
+			final int flags = in.get();
+			long pressed = keys[slot];
+			if ((flags & KeyStateCodec.KEYS_FLAG) != 0) {
+				pressed = KeyStateCodec.getVarLong(in);
+			}
+			if ((flags & KeyStateCodec.CPS_FLAG) != 0) {
+				final int count = in.get();
+				if (count < 0 || count > KeyStateCodec.MAX_MICE) {
+					droppedStates++;
+					return false;
+				}
+				boolean changed = count != mice[slot];
+				for (int i = 0; i < count; i++) {
+					final int value = (int) Math.min(KeyStateCodec.getVarLong(in), Integer.MAX_VALUE);
+					changed |= value != cps[offset + i];
+					cps[offset + i] = value;
+				}
+				mice[slot] = count;
+				if (changed) {
+					cpsVersions[slot] = ++versions[slot];
+				}
+			}
+			if (pressed != keys[slot]) {
+				keys[slot] = pressed;
+				keysVersions[slot] = ++versions[slot];
+			}
+			return true;
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e) {
+			droppedStates++;
+			return false;
+		}
+	}
+	
+	/**
+	 * Removes a player that left. The spectators are told in the next packets
+	 * @param playerId The player entity id
+	 */
+	
+	public void removePlayer(final int playerId) {
+		final int slot = find(playerId);
+		if (slot >= 0) {
+			removed[slot] = true;
+			versions[slot]++;
+		}
+	}
+	
+	/**
+	 * Sends to each spectator the players changed since its last packet, within its bytes budget
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @param spectatorIds The entity ids of the current spectators
+	 * @param count The number of spectators in the array
+	 * @param transport Sends the packets
+	 */
+	
+	public void tick(final long now, final int[] spectatorIds, final int count, final Transport transport) {
+		updateSpectators(now, spectatorIds, count);
+		for (int i = 0; i < spectators.size(); i++) {
+			Spectator spectator = spectators.get(i);
+			spectator.tokens = Math.min(burstBytes, spectator.tokens + (now - spectator.lastRefill) * bytesPerSecond / NANOS_PER_SECOND);
+			spectator.lastRefill = now;
+			send(spectator, transport);
+		}
+		// A removed slot can only be reused once no spectator has to be told about it anymore
+		for (int slot = 0; slot < slots; slot++) {
+			if (removed[slot]) {
+				boolean delivered = true;
+				for (int i = 0; i < spectators.size() && delivered; i++) {
+					delivered = spectators.get(i).sentVersions[slot] == versions[slot];
+				}
+				if (delivered) {
+					removed[slot] = false;
+					used[slot] = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of player states dropped by the rate limit or because they were invalid
+	 * @return The dropped states
+	 */
+	
+	public long getDroppedStates() {
+		return droppedStates;
+	}
+	
+	/**
+	 * Gets the number of connected spectators
+	 * @return The spectators count
+	 */
+	
+	public int getSpectators() {
+		return spectators.size();
+	}
+	
+	/**
+	 * Gets the number of player slots in use, the players who left count until all the spectators know
+	 * @return The players count
+	 */
+	
+	public int getPlayers() {
+		int players = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (used[slot]) {
+				players++;
+			}
+		}
+		return players;
+	}
+	
+	/**
+	 * Gets the bytes a spectator may receive at once after being idle
+	 * @return The burst size, in bytes
+	 */
+	
+	int getBurstBytes() {
+		return burstBytes;
+	}
+	
+	/**
+	 * Builds and sends the packet of a spectator
+	 * @param spectator The spectator
+	 * @param transport Sends the packet
+	 */
+	
+	private void send(final Spectator spectator, final Transport transport) {
+		final int budget = (int) Math.min(spectator.tokens, out.capacity());
+		if (budget < Short.BYTES + KeyStateCodec.MAX_ENTRY_SIZE) {
+			return;
+		}
+		if (spectator.sentVersions.length < slots) {
+			spectator.sentVersions = Arrays.copyOf(spectator.sentVersions, used.length);
+		}
+		out.clear();
+		out.putShort((short) 0);
+		int entries = 0;
+		for (int n = 0; n < slots; n++) {
+			final int slot = (spectator.cursor + n) % slots;
+			final long sent = spectator.sentVersions[slot];
+			if (!used[slot] || sent == versions[slot]) {
+				continue;
+			}
+			if (out.position() + KeyStateCodec.MAX_ENTRY_SIZE > budget) {
+				// The next packet starts from here
+				spectator.cursor = slot;
+				break;
+			}
+			KeyStateCodec.putVarLong(out, playerIds[slot] & 0xffffffffL);
+			if (removed[slot]) {
+				out.put((byte) KeyStateCodec.REMOVED_FLAG);
+			}
+			else {
+				int flags = 0;
+				if (keysVersions[slot] > sent) {
+					flags |= KeyStateCodec.KEYS_FLAG;
+				}
+				if (cpsVersions[slot] > sent) {
+					flags |= KeyStateCodec.CPS_FLAG;
+				}
+				KeyStateCodec.writeState(out, flags, keys[slot], cps, slot * KeyStateCodec.MAX_MICE, mice[slot]);
+			}
+			spectator.sentVersions[slot] = versions[slot];
+			entries++;
+		}
+		if (entries > 0) {
+			out.putShort(0, (short) entries);
+			out.flip();
+			spectator.tokens -= out.remaining();
+			transport.send(spectator.id, out);
+		}
+	}
+	
+	/**
+	 * Adds the new spectators and forgets the ones that are not in the list anymore
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @param spectatorIds The entity ids of the current spectators
+	 * @param count The number of spectators in the array
+	 */
+	
+	private void updateSpectators(final long now, final int[] spectatorIds, final int count) {
+		for (int i = 0; i < spectators.size(); i++) {
+			spectators.get(i).seen = false;
+		}
+		for (int i = 0; i < count; i++) {
+			Spectator spectator = null;
+			for (int j = 0; j < spectators.size() && spectator == null; j++) {
+				if (spectators.get(j).id == spectatorIds[i]) {
+					spectator = spectators.get(j);
+				}
+			}
+			if (spectator == null) {
+				spectator = new Spectator(spectatorIds[i], used.length, burstBytes, now);
+				spectators.add(spectator);
+			}
+			spectator.seen = true;
+		}
+		for (int i = spectators.size() - 1; i >= 0; i--) {
+			if (!spectators.get(i).seen) {
+				spectators.set(i, spectators.get(spectators.size() - 1));
+				spectators.remove(spectators.size() - 1);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the slot of a player
+	 * @param playerId The player entity id
+	 * @return The slot, or -1 if the player has none
+	 */
+	
+	private int find(final int playerId) {
+		for (int slot = 0; slot < slots; slot++) {
+			if (used[slot] && !removed[slot] && playerIds[slot] == playerId) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gives a slot to a new player, reusing a free one if possible
+	 * @param playerId The player entity id
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 * @return The slot
+	 */
+	
+	private int add(final int playerId, final long now) {
+		int slot = 0;
+		while (slot < slots && used[slot]) {
+			slot++;
+		}
+		if (slot == used.length) {
+			grow(used.length * 2);
+		}
+		if (slot == slots) {
+			slots++;
+		}
+		used[slot] = true;
+		playerIds[slot] = playerId;
+		keys[slot] = 0;
+		mice[slot] = 0;
+		Arrays.fill(cps, slot * KeyStateCodec.MAX_MICE, (slot + 1) * KeyStateCodec.MAX_MICE, 0);
+		// The versions keep growing, so the spectators never mistake the new player for the old one
+		versions[slot]++;
+		keysVersions[slot] = versions[slot];
+		cpsVersions[slot] = versions[slot];
+		stateTokens[slot] = statesPerSecond;
+		stateRefills[slot] = now;
+		return slot;
+	}
+	
+	/**
+	 * Resizes the slot arrays
+	 * @param capacity The new number of slots
+	 */
+	
+	private void grow(final int capacity) {
+		used = Arrays.copyOf(used, capacity);
+		removed = Arrays.copyOf(removed, capacity);
+		playerIds = Arrays.copyOf(playerIds, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		cps = Arrays.copyOf(cps, capacity * KeyStateCodec.MAX_MICE);
+		mice = Arrays.copyOf(mice, capacity);
+		versions = Arrays.copyOf(versions, capacity);
+		keysVersions = Arrays.copyOf(keysVersions, capacity);
+		cpsVersions = Arrays.copyOf(cpsVersions, capacity);
+		stateTokens = Arrays.copyOf(stateTokens, capacity);
+		stateRefills = Arrays.copyOf(stateRefills, capacity);
+	}
+}
@@ -0,0 +1,222 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Runs on the client: it holds the keys state of the other players, as relayed by the server
+ * @author Massimiliano Micol
+ */
+
+public final class SpectatorView {
+	
+	/**
+	 * The initial number of players
+	 */
+	
+	private static final int INITIAL_PLAYERS = 16;
+	
+	/**
+	 * The entity id of each known player
+	 */
+	
+	private int[] playerIds;
+	
+	/**
+	 * The pressed keys bitset of each player
+	 */
+	
+	private long[] keys;
+	
+	/**
+	 * The CPS of the mouse keys, {@link KeyStateCodec#MAX_MICE} values for each player
+	 */
+	
+	private int[] cps;
+	
+	/**
+	 * The number of mouse keys of each player
+	 */
+	
+	private int[] mice;
+	
+	/**
+	 * The number of known players
+	 */
+	
+	private int players;
+	
+	/**
+	 * The class constructor
+	 */
+	
+	public SpectatorView() {
+		playerIds = new int[INITIAL_PLAYERS];
+		keys = new long[INITIAL_PLAYERS];
+		cps = new int[INITIAL_PLAYERS * KeyStateCodec.MAX_MICE];
+		mice = new int[INITIAL_PLAYERS];
+	}
+	
+	/**
+	 * Applies a packet sent by the {@link SpectatorRelay}
+	 * @param in The packet
+	 * @return {@code True} if the packet was valid, {@code False} if it was applied only in part
+	 */
+	
+	public boolean apply(final ByteBuffer in) {
+		try {
+			for (int entries = in.getShort() & 0xffff; entries > 0; entries--) {
+				final int playerId = (int) KeyStateCodec.getVarLong(in);
+				final int flags = in.get();
+				int index = find(playerId);
+				if ((flags & KeyStateCodec.REMOVED_FLAG) != 0) {
+					if (index >= 0) {
+						remove(index);
+					}
+					continue;
+				}
+				if (index < 0) {
+					index = add(playerId);
+				}
+				if ((flags & KeyStateCodec.KEYS_FLAG) != 0) {
+					keys[index] = KeyStateCodec.getVarLong(in);
+				}
+				if ((flags & KeyStateCodec.CPS_FLAG) != 0) {
+					final int count = in.get();
+					if (count < 0 || count > KeyStateCodec.MAX_MICE) {
+						return false;
+					}
+					for (int i = 0; i < count; i++) {
+						cps[index * KeyStateCodec.MAX_MICE + i] = (int) KeyStateCodec.getVarLong(in);
+					}
+					mice[index] = count;
+				}
+			}
+			return true;
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Forgets all the players, called when leaving a server
+	 */
+	
+	public void clear() {
+		players = 0;
+	}
+	
+	/**
+	 * Finds a player
+	 * @param playerId The player entity id
+	 * @return The player index, or -1 if the player is unknown
+	 */
+	
+	public int find(final int playerId) {
+		for (int i = 0; i < players; i++) {
+			if (playerIds[i] == playerId) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the pressed keys of a player
+	 * @param index The player index, as returned by {@link #find(int)}
+	 * @return The pressed keys bitset, in the order of the player layout
+	 */
+	
+	public long getKeys(final int index) {
+		return keys[index];
+	}
+	
+	/**
+	 * Gets the number of mouse keys of a player
+	 * @param index The player index, as returned by {@link #find(int)}
+	 * @return The mouse keys count
+	 */
+	
+	public int getMice(final int index) {
+		return mice[index];
+	}
+	
+	/**
+	 * Gets the CPS of a mouse key of a player
+	 * @param index The player index, as returned by {@link #find(int)}
+	 * @param mouse The index among the mouse keys of the player
+	 * @return The clicks in the last second
+	 */
+	
+	public int getCps(final int index, final int mouse) {
+		return cps[index * KeyStateCodec.MAX_MICE + mouse];
+	}
+	
+	/**
+	 * Gets the number of known players
+	 * @return The players count
+	 */
+	
+	public int getPlayers() {
+		return players;
+	}
+	
+	/**
+	 * Adds a player with an empty state
+	 * @param playerId The player entity id
+	 * @return The player index
+	 */
+	
+	private int add(final int playerId) {
+		if (players == playerIds.length) {
+			playerIds = Arrays.copyOf(playerIds, players * 2);
+			keys = Arrays.copyOf(keys, players * 2);
+			cps = Arrays.copyOf(cps, players * 2 * KeyStateCodec.MAX_MICE);
+			mice = Arrays.copyOf(mice, players * 2);
+		}
+		playerIds[players] = playerId;
+		keys[players] = 0;
+		mice[players] = 0;
+		return players++;
+	}
+	
+	/**
+	 * Removes a player, the last one takes its place
+	 * @param index The player index
+	 */
+	
+	private void remove(final int index) {
+		final int last = --players;
+		playerIds[index] = playerIds[last];
+		keys[index] = keys[last];
+		mice[index] = mice[last];
+		System.arraycopy(cps, last * KeyStateCodec.MAX_MICE, cps, index * KeyStateCodec.MAX_MICE, KeyStateCodec.MAX_MICE);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delivers the keystroke payloads to the other side of a connection.<br>
+ * The game uses the mod network channel, the tests connect a client and a server in the same process instead
+ * @author Massimiliano Micol
+ */
+
+@FunctionalInterface
+public interface Transport {
+	
+	/**
+	 * Sends a payload. The buffer is reused by the caller, so it must be copied if it is kept
+	 * @param connection The receiver: the player entity id on the server, ignored on the client
+	 * @param payload The payload, from its position to its limit
+	 */
+	
+	void send(int connection, ByteBuffer payload);
+}
@@ -0,0 +1,143 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes the current thread allocates between {@link #begin()} and {@link #end()}.<br>
+ * It is only a debug aid, shown in the debug line when the game runs with {@code -Dkeystroke.debug=true}:<br>
+ * the allocation budget of the render path is enforced by the tests.<br>
+ * If the JVM can't measure the allocations every measure is reported as 0
+ * @author Massimiliano Micol
+ */
+
+public final class AllocationProbe {
+	
+	/**
+	 * The JVM thread bean, or {@code null} if it can't measure the allocated bytes
+	 */
+	
+	private final com.sun.management.ThreadMXBean threads;
+	
+	/**
+	 * The bytes allocated by the probe itself when measuring, subtracted from every measure
+	 */
+	
+	private final long overhead;
+	
+	/**
+	 * The thread allocated bytes when the current measure started
+	 */
+	
+	private long start;
+	
+	/**
+	 * The bytes allocated during the last measure
+	 */
+	
+	private long lastBytes;
+	
+	/**
+	 * The highest number of bytes allocated during a measure
+	 */
+	
+	private long maxBytes;
+	
+	/**
+	 * The class constructor, it measures the probe own overhead
+	 */
+	
+	public AllocationProbe() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean supported = null;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			supported = (com.sun.management.ThreadMXBean) bean;
+			if (supported.isThreadAllocatedMemorySupported()) {
+				supported.setThreadAllocatedMemoryEnabled(true);
+			}
+			else {
+				supported = null;
+			}
+		}
+		threads = supported;
+		// Reading the counter allocates its arguments arrays, so an empty measure isn't 0
+		long calibration = Long.MAX_VALUE;
+		for (int i = 0; i < 16; i++) {
+			long before = read();
+			calibration = Math.min(calibration, read() - before);
+		}
+		overhead = calibration;
+	}
+	
+	/**
+	 * Starts a measure
+	 */
+	
+	public void begin() {
+		start = read();
+	}
+	
+	/**
+	 * Ends the current measure
+	 * @return The bytes allocated since {@link #begin()}
+	 */
+	
+	public long end() {
+		lastBytes = Math.max(read() - start - overhead, 0);
+		if (lastBytes > maxBytes) {
+			maxBytes = lastBytes;
+		}
+		return lastBytes;
+	}
+	
+	/**
+	 * Gets the bytes allocated during the last measure
+	 * @return The allocated bytes
+	 */
+	
+	public long getLastBytes() {
+		return lastBytes;
+	}
+	
+	/**
+	 * Gets the highest number of bytes allocated during a measure
+	 * @return The allocated bytes
+	 */
+	
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * Reads the bytes allocated so far by the current thread
+	 * @return The allocated bytes, or 0 if they can't be measured
+	 */
+	
+	private long read() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,277 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import java.util.Arrays;
+
+/**
+ * Rasterizes the overlay into an in-memory ARGB buffer, without the game or a GPU.<br>
+ * Rectangles are blended over the buffer as the game does, lines one pixel at a time. The text uses a fixed<br>
+ * placeholder font where every visible character is a filled box, so the same<br>
+ * overlay always produces the same pixels on any machine
+ * @author Massimiliano Micol
+ */
+
+public final class HeadlessRenderer implements OverlayRenderer {
+	
+	/**
+	 * The height of a line of text, the same of the game font
+	 */
+	
+	public static final int FONT_HEIGHT = 9;
+	
+	/**
+	 * The horizontal space taken by each character
+	 */
+	
+	public static final int CHAR_ADVANCE = 6;
+	
+	/**
+	 * The width of the box drawn for each visible character
+	 */
+	
+	private static final int GLYPH_WIDTH = 5;
+	
+	/**
+	 * The height of the box drawn for each visible character
+	 */
+	
+	private static final int GLYPH_HEIGHT = 7;
+	
+	/**
+	 * The text shadow is as dark as a quarter of the text color, like in the game
+	 */
+	
+	private static final int SHADOW_MASK = 0xfcfcfc;
+	
+	/**
+	 * The image width
+	 */
+	
+	private final int width;
+	
+	/**
+	 * The image height
+	 */
+	
+	private final int height;
+	
+	/**
+	 * The image pixels, in ARGB format, row by row
+	 */
+	
+	private final int[] pixels;
+	
+	/**
+	 * The number of rectangles drawn since the last {@link #clear(int)}
+	 */
+	
+	private int fills;
+	
+	/**
+	 * The class constructor
+	 * @param width The image width
+	 * @param height The image height
+	 */
+	
+	public HeadlessRenderer(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+		pixels = new int[width * height];
+	}
+	
+	/**
+	 * Fills the whole image with a color
+	 * @param color The ARGB color
+	 */
+	
+	public void clear(final int color) {
+		Arrays.fill(pixels, color);
+		fills = 0;
+	}
+	
+	@Override
+	public void fill(final int left, final int top, final int right, final int bottom, final int color) {
+		blend(Math.min(left, right), Math.min(top, bottom), Math.max(left, right), Math.max(top, bottom), color);
+		fills++;
+	}
+	
+	/**
+	 * The rectangles are drawn right away, there is nothing to flush
+	 */
+	
+	@Override
+	public void flush() {}
+	
+	@Override
+	public void drawLineStrip(final float[] vertices, final int count, final int color) {
+		for (int i = 1; i < count; i++) {
+			drawLine(Math.round(vertices[i * 2 - 2]), Math.round(vertices[i * 2 - 1]), Math.round(vertices[i * 2]), Math.round(vertices[i * 2 + 1]), color, i == 1);
+		}
+	}
+	
+	@Override
+	public void drawText(final String text, final int x, final int y, final float scale, final int color) {
+		// The shadow is drawn one pixel down and right, with a darker color
+		drawGlyphs(text, x + 1, y + 1, scale, (color & 0xff000000) | ((color & SHADOW_MASK) >> 2));
+		drawGlyphs(text, x, y, scale, color);
+	}
+	
+	@Override
+	public int getFontHeight() {
+		return FONT_HEIGHT;
+	}
+	
+	@Override
+	public int getStringWidth(final String text) {
+		return text.length() * CHAR_ADVANCE;
+	}
+	
+	/**
+	 * Gets the color of a pixel
+	 * @param x The pixel X coordinate
+	 * @param y The pixel Y coordinate
+	 * @return The ARGB color
+	 */
+	
+	public int getPixel(final int x, final int y) {
+		return pixels[y * width + x];
+	}
+	
+	/**
+	 * Gets the image pixels, row by row
+	 * @return The same array used by the renderer
+	 */
+	
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * Gets the image width
+	 * @return The width
+	 */
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the image height
+	 * @return The height
+	 */
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Gets the number of rectangles drawn since the last {@link #clear(int)}
+	 * @return The drawn rectangles
+	 */
+	
+	public int getFills() {
+		return fills;
+	}
+	
+	/**
+	 * Draws a box for each visible character of a text
+	 * @param text The text
+	 * @param x The X coordinate of the text, already divided by the scale
+	 * @param y The Y coordinate of the text top, already divided by the scale
+	 * @param scale The text scale
+	 * @param color The ARGB color
+	 */
+	
+	private void drawGlyphs(final String text, final int x, final int y, final float scale, final int color) {
+		for (int i = 0, length = text.length(); i < length; i++) {
+			if (text.charAt(i) != ' ') {
+				float glyphX = x + i * CHAR_ADVANCE;
+				blend(Math.round(glyphX * scale), Math.round(y * scale), Math.round((glyphX + GLYPH_WIDTH) * scale), Math.round((y + GLYPH_HEIGHT) * scale), color);
+			}
+		}
+	}
+	
+	/**
+	 * Blends a color over the pixels of a line, with the Bresenham algorithm
+	 * @param fromX The X coordinate of the first point
+	 * @param fromY The Y coordinate of the first point
+	 * @param toX The X coordinate of the last point
+	 * @param toY The Y coordinate of the last point
+	 * @param color The ARGB color
+	 * @param first Whether the first point is drawn, the lines of a strip share their ends
+	 */
+	
+	private void drawLine(int fromX, int fromY, final int toX, final int toY, final int color, final boolean first) {
+		final int deltaX = Math.abs(toX - fromX);
+		final int deltaY = -Math.abs(toY - fromY);
+		final int stepX = fromX < toX ? 1 : -1;
+		final int stepY = fromY < toY ? 1 : -1;
+		int error = deltaX + deltaY;
+		if (first) {
+			blend(fromX, fromY, fromX + 1, fromY + 1, color);
+		}
+		while (fromX != toX || fromY != toY) {
+			int doubled = error * 2;
+			if (doubled >= deltaY) {
+				error += deltaY;
+				fromX += stepX;
+			}
+			if (doubled <= deltaX) {
+				error += deltaX;
+				fromY += stepY;
+			}
+			blend(fromX, fromY, fromX + 1, fromY + 1, color);
+		}
+	}
+	
+	/**
+	 * Blends a color over a rectangle of pixels, clipped to the image
+	 * @param left The left edge, included
+	 * @param top The top edge, included
+	 * @param right The right edge, excluded
+	 * @param bottom The bottom edge, excluded
+	 * @param color The ARGB color
+	 */
+	
+	private void blend(final int left, final int top, final int right, final int bottom, final int color) {
+		final int alpha = color >>> 24;
+		final int inverse = 255 - alpha;
+		final int fromX = Math.max(left, 0);
+		final int toX = Math.min(right, width);
+		for (int y = Math.max(top, 0), toY = Math.min(bottom, height); y < toY; y++) {
+			for (int x = fromX, offset = y * width + fromX; x < toX; x++, offset++) {
+				int destination = pixels[offset];
+				// The usual source over blending, done on each component
+				int red = (((color >> 16) & 0xff) * alpha + ((destination >> 16) & 0xff) * inverse) / 255;
+				int green = (((color >> 8) & 0xff) * alpha + ((destination >> 8) & 0xff) * inverse) / 255;
+				int blue = ((color & 0xff) * alpha + (destination & 0xff) * inverse) / 255;
+				int resultAlpha = alpha + ((destination >>> 24) * inverse) / 255;
+				pixels[offset] = (resultAlpha << 24) | (red << 16) | (green << 8) | blue;
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import org.lwjgl.opengl.GL11;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import it.tristana.keystroke.stats.PressHeatmap;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.texture.NativeImage;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.math.vector.Matrix4f;
+
+/**
+ * Draws a {@link PressHeatmap} with a single textured quad. The texture has one texel per heatmap<br>
+ * texel, and only the cells whose heat changed are written and uploaded again, so a press costs<br>
+ * a handful of texels instead of a hundred filled rectangles every frame
+ * @author Massimiliano Micol
+ */
+
+public final class HeatmapTexture {
+	
+	/**
+	 * The texture, created on the first draw since it needs the render thread
+	 */
+	
+	private DynamicTexture texture;
+	
+	/**
+	 * The pixels of the texture, kept in memory
+	 */
+	
+	private NativeImage image;
+	
+	/**
+	 * How many cells were uploaded since the game started
+	 */
+	
+	private long uploads;
+	
+	/**
+	 * Uploads the changed cells and draws the heatmap
+	 * @param heatmap The press heatmap
+	 * @param matrix The graphics matrix
+	 * @param left The X coordinate of the heatmap
+	 * @param top The Y coordinate of the heatmap
+	 * @param width The width the heatmap is stretched to
+	 * @param height The height the heatmap is stretched to
+	 */
+	
+	public void draw(final PressHeatmap heatmap, final MatrixStack matrix, final float left, final float top, final float width, final float height) {
+		if (texture == null) {
+			// A cleared texture is all transparent, the gaps between the keys are never written
+			texture = new DynamicTexture(PressHeatmap.WIDTH, PressHeatmap.HEIGHT, true);
+			image = texture.getTextureData();
+			heatmap.markAllDirty();
+		}
+		texture.bindTexture();
+		for (int cell = heatmap.pollDirty(0); cell >= 0; cell = heatmap.pollDirty(cell + 1)) {
+			upload(heatmap, cell);
+		}
+		final float right = left + width;
+		final float bottom = top + height;
+		Matrix4f transform = matrix.getLast().getMatrix();
+		BufferBuilder buffer = Tessellator.getInstance().getBuffer();
+		RenderSystem.enableBlend();
+		RenderSystem.defaultBlendFunc();
+		RenderSystem.color4f(1f, 1f, 1f, 1f);
+		buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_TEX);
+		buffer.pos(transform, left, bottom, 0f).tex(0f, 1f).endVertex();
+		buffer.pos(transform, right, bottom, 0f).tex(1f, 1f).endVertex();
+		buffer.pos(transform, right, top, 0f).tex(1f, 0f).endVertex();
+		buffer.pos(transform, left, top, 0f).tex(0f, 0f).endVertex();
+		buffer.finishDrawing();
+		WorldVertexBufferUploader.draw(buffer);
+		RenderSystem.disableBlend();
+	}
+	
+	/**
+	 * Writes the color of a cell in the image and uploads its texels, the texture must be bound
+	 * @param heatmap The press heatmap
+	 * @param cell The cell
+	 */
+	
+	private void upload(final PressHeatmap heatmap, final int cell) {
+		final int x = heatmap.getCellX(cell);
+		final int y = heatmap.getCellY(cell);
+		// The last column and row are the gap between the keys
+		final int width = heatmap.getCellWidth(cell) - 1;
+		final int height = heatmap.getCellHeight(cell) - 1;
+		image.fillAreaRGBA(x, y, width, height, toABGR(heatmap.getColor(cell)));
+		// Without blur the texture is sampled with the nearest filter, keeping the keys edges sharp
+		image.uploadTextureSub(0, x, y, x, y, width, height, false, false, false, false);
+		uploads++;
+	}
+	
+	/**
+	 * Swaps the red and blue channels of a color, the image stores its pixels as ABGR
+	 * @param color The ARGB color
+	 * @return The ABGR color
+	 */
+	
+	private static int toABGR(final int color) {
+		return (color & 0xff00ff00) | (color >>> 020 & 0xff) | (color & 0xff) << 020;
+	}
+	
+	/**
+	 * Gets how many cells were uploaded since the game started
+	 * @return The uploaded cells
+	 */
+	
+	public long getUploads() {
+		return uploads;
+	}
+}
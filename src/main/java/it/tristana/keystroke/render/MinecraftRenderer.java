@@ -0,0 +1,156 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import org.lwjgl.opengl.GL11;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.math.vector.Matrix4f;
+
+/**
+ * Draws the overlay in the game: the rectangles go in a {@link QuadBatch},<br>
+ * drawn with a single call on {@link #flush()}, and the text through the game font.<br>
+ * The line strips go straight to the tessellator, one draw call each
+ * @author Massimiliano Micol
+ */
+
+public final class MinecraftRenderer implements OverlayRenderer {
+	
+	/**
+	 * The Minecraft font renderer
+	 */
+	
+	private final FontRenderer font;
+	
+	/**
+	 * Collects the rectangles of the frame
+	 */
+	
+	private final QuadBatch batch;
+	
+	/**
+	 * The graphics matrix of the current frame
+	 */
+	
+	private MatrixStack matrix;
+	
+	/**
+	 * The class constructor
+	 * @param font The Minecraft font renderer
+	 * @param capacity The number of rectangles the batch can hold before growing
+	 */
+	
+	public MinecraftRenderer(final FontRenderer font, final int capacity) {
+		this.font = font;
+		batch = new QuadBatch(capacity);
+	}
+	
+	/**
+	 * Starts a new frame, it must be called before drawing anything
+	 * @param matrix The graphics matrix of the frame
+	 */
+	
+	public void beginFrame(final MatrixStack matrix) {
+		this.matrix = matrix;
+		batch.beginFrame();
+	}
+	
+	@Override
+	public void fill(final int left, final int top, final int right, final int bottom, final int color) {
+		batch.add(left, top, right, bottom, color);
+	}
+	
+	@Override
+	public void flush() {
+		batch.flush(matrix);
+	}
+	
+	@Override
+	public void drawLineStrip(final float[] vertices, final int count, final int color) {
+		if (count < 2) {
+			return;
+		}
+		Matrix4f transform = matrix.getLast().getMatrix();
+		BufferBuilder buffer = Tessellator.getInstance().getBuffer();
+		int alpha = color >>> 030;
+		int red = (color >> 020) & 0xff;
+		int green = (color >> 010) & 0xff;
+		int blue = color & 0xff;
+		RenderSystem.enableBlend();
+		RenderSystem.disableTexture();
+		RenderSystem.defaultBlendFunc();
+		RenderSystem.lineWidth(1f);
+		buffer.begin(GL11.GL_LINE_STRIP, DefaultVertexFormats.POSITION_COLOR);
+		for (int i = 0; i < count; i++) {
+			buffer.pos(transform, vertices[i * 2], vertices[i * 2 + 1], 0f).color(red, green, blue, alpha).endVertex();
+		}
+		buffer.finishDrawing();
+		WorldVertexBufferUploader.draw(buffer);
+		RenderSystem.enableTexture();
+		RenderSystem.disableBlend();
+		batch.countDrawCall();
+	}
+	
+	@Override
+	public void drawText(final String text, final int x, final int y, final float scale, final int color) {
+		if (scale == 1f) {
+			font.drawStringWithShadow(matrix, text, x, y, color);
+			return;
+		}
+		// Stores the current matrix status so we can do whatever we like on it
+		matrix.push();
+		matrix.scale(scale, scale, scale);
+		font.drawStringWithShadow(matrix, text, x, y, color);
+		// Restores the previous matrix status undoing all the changes
+		matrix.pop();
+	}
+	
+	@Override
+	public int getFontHeight() {
+		return font.FONT_HEIGHT;
+	}
+	
+	@Override
+	public int getStringWidth(final String text) {
+		return font.getStringWidth(text);
+	}
+	
+	/**
+	 * Gets the batch collecting the rectangles, to read its draw calls counter
+	 * @return The quads batch
+	 */
+	
+	public QuadBatch getBatch() {
+		return batch;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import org.lwjgl.opengl.GL11;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import net.minecraft.client.MainWindow;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.shader.Framebuffer;
+import net.minecraft.util.math.vector.Matrix4f;
+
+/**
+ * Keeps the drawn overlay in an offscreen framebuffer, so that the keys are only<br>
+ * drawn again when their appearance changes. On all the other frames the cached<br>
+ * texture is copied on screen with a single textured quad.<br>
+ * Usage, once per frame:
+ * <pre>
+ * if (cache.beginRefresh(window, revision)) {
+ * 	// draw the keys
+ * 	cache.endRefresh();
+ * }
+ * cache.blit(window, matrix);
+ * </pre>
+ * @author Massimiliano Micol
+ */
+
+public final class OverlayCache {
+	
+	/**
+	 * The minimum time between two refreshes, in nanoseconds. If 0 there is no limit
+	 */
+	
+	private final long minRefreshInterval;
+	
+	/**
+	 * The offscreen framebuffer, created on the first refresh
+	 */
+	
+	private Framebuffer framebuffer;
+	
+	/**
+	 * The overlay revision drawn in the framebuffer
+	 */
+	
+	private int drawnRevision;
+	
+	/**
+	 * Whether the framebuffer holds a complete overlay
+	 */
+	
+	private boolean valid;
+	
+	/**
+	 * When the last refresh happened, as given by {@link System#nanoTime()}
+	 */
+	
+	private long lastRefresh;
+	
+	/**
+	 * How many times the overlay was drawn again
+	 */
+	
+	private long refreshes;
+	
+	/**
+	 * How many times the cached texture was copied on screen
+	 */
+	
+	private long blits;
+	
+	/**
+	 * The class constructor
+	 * @param maxRefreshRate The maximum number of refreshes per second, or 0 to refresh as soon as something changes
+	 */
+	
+	public OverlayCache(final int maxRefreshRate) {
+		minRefreshInterval = maxRefreshRate > 0 ? 1_000_000_000L / maxRefreshRate : 0;
+	}
+	
+	/**
+	 * Checks whether the overlay has to be drawn again and, if so, binds the offscreen framebuffer
+	 * @param window The main window
+	 * @param revision A value that changes every time the overlay appearance changes
+	 * @return {@code True} if the keys must be drawn now, followed by {@link #endRefresh()}, {@code False} othewhise
+	 */
+	
+	public boolean beginRefresh(final MainWindow window, final int revision) {
+		final int width = window.getFramebufferWidth();
+		final int height = window.getFramebufferHeight();
+		if (framebuffer == null) {
+			framebuffer = new Framebuffer(width, height, false, Minecraft.IS_RUNNING_ON_MAC);
+			valid = false;
+		}
+		else if (framebuffer.framebufferWidth != width || framebuffer.framebufferHeight != height) {
+			framebuffer.resize(width, height, Minecraft.IS_RUNNING_ON_MAC);
+			valid = false;
+		}
+		if (valid) {
+			long now = System.nanoTime();
+			// Nothing changed, or a change arrived too early and will be drawn by a later frame
+			if (revision == drawnRevision || now - lastRefresh < minRefreshInterval) {
+				return false;
+			}
+		}
+		framebuffer.setFramebufferColor(0f, 0f, 0f, 0f);
+		framebuffer.framebufferClear(Minecraft.IS_RUNNING_ON_MAC);
+		framebuffer.bindFramebuffer(true);
+		drawnRevision = revision;
+		lastRefresh = System.nanoTime();
+		refreshes++;
+		return true;
+	}
+	
+	/**
+	 * Stops drawing in the offscreen framebuffer, binding the game one again
+	 */
+	
+	public void endRefresh() {
+		Minecraft.getInstance().getFramebuffer().bindFramebuffer(true);
+		valid = true;
+	}
+	
+	/**
+	 * Copies the cached overlay on the whole screen
+	 * @param window The main window
+	 * @param matrix The graphics matrix
+	 */
+	
+	public void blit(final MainWindow window, final MatrixStack matrix) {
+		if (!valid) {
+			return;
+		}
+		final float width = window.getScaledWidth();
+		final float height = window.getScaledHeight();
+		Matrix4f transform = matrix.getLast().getMatrix();
+		BufferBuilder buffer = Tessellator.getInstance().getBuffer();
+		framebuffer.bindFramebufferTexture();
+		RenderSystem.enableBlend();
+		// The texture holds colors already multiplied by their alpha
+		RenderSystem.blendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		RenderSystem.color4f(1f, 1f, 1f, 1f);
+		buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_TEX);
+		// The framebuffer texture is upside down
+		buffer.pos(transform, 0f, height, 0f).tex(0f, 0f).endVertex();
+		buffer.pos(transform, width, height, 0f).tex(1f, 0f).endVertex();
+		buffer.pos(transform, width, 0f, 0f).tex(1f, 1f).endVertex();
+		buffer.pos(transform, 0f, 0f, 0f).tex(0f, 1f).endVertex();
+		buffer.finishDrawing();
+		WorldVertexBufferUploader.draw(buffer);
+		framebuffer.unbindFramebufferTexture();
+		RenderSystem.defaultBlendFunc();
+		RenderSystem.disableBlend();
+		blits++;
+	}
+	
+	/**
+	 * Marks the cached overlay as outdated, so the next frame draws it again regardless of the refresh limit
+	 */
+	
+	public void invalidate() {
+		valid = false;
+	}
+	
+	/**
+	 * Gets how many times the overlay was drawn again
+	 * @return The number of refreshes
+	 */
+	
+	public long getRefreshes() {
+		return refreshes;
+	}
+	
+	/**
+	 * Gets how many times the cached texture was copied on screen
+	 * @return The number of blits
+	 */
+	
+	public long getBlits() {
+		return blits;
+	}
+}
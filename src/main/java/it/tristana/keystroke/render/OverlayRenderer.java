@@ -0,0 +1,103 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+/**
+ * Everything the keys need to draw themselves. The game uses {@link MinecraftRenderer},<br>
+ * while {@link HeadlessRenderer} draws into memory so the overlay can be tested<br>
+ * and benchmarked without a running client or a GPU.<br>
+ * Filled rectangles may be batched, so they are only guaranteed to be drawn after {@link #flush()},<br>
+ * while texts and lines are drawn right away
+ * @author Massimiliano Micol
+ */
+
+public interface OverlayRenderer {
+	
+	/**
+	 * Draws a filled rectangle. The coordinates follow the same rules of {@code AbstractGui.fill}
+	 * @param left The X coordinate of the first corner
+	 * @param top The Y coordinate of the first corner
+	 * @param right The X coordinate of the opposite corner
+	 * @param bottom The Y coordinate of the opposite corner
+	 * @param color The ARGB color
+	 */
+	
+	void fill(int left, int top, int right, int bottom, int color);
+	
+	/**
+	 * Draws all the rectangles still waiting in a batch
+	 */
+	
+	void flush();
+	
+	/**
+	 * Draws a strip of connected lines one pixel wide, with a single draw call
+	 * @param vertices The X and Y coordinates of the points, one pair after the other
+	 * @param count The number of points
+	 * @param color The ARGB color
+	 */
+	
+	void drawLineStrip(float[] vertices, int count, int color);
+	
+	/**
+	 * Draws a text with a shadow
+	 * @param text The text
+	 * @param x The X coordinate of the text, already divided by the scale
+	 * @param y The Y coordinate of the text top, already divided by the scale
+	 * @param scale The text scale
+	 * @param color The ARGB color
+	 */
+	
+	void drawText(String text, int x, int y, float scale, int color);
+	
+	/**
+	 * Draws a text with a shadow, horizontally centered on a point
+	 * @param text The text
+	 * @param centerX The X coordinate of the text center, already divided by the scale
+	 * @param y The Y coordinate of the text top, already divided by the scale
+	 * @param scale The text scale
+	 * @param color The ARGB color
+	 */
+	
+	default void drawCenteredText(final String text, final int centerX, final int y, final float scale, final int color) {
+		drawText(text, centerX - getStringWidth(text) / 2, y, scale, color);
+	}
+	
+	/**
+	 * Gets the height of a line of text, without scaling
+	 * @return The font height
+	 */
+	
+	int getFontHeight();
+	
+	/**
+	 * Gets the width of a text, without scaling
+	 * @param text The text
+	 * @return The text width
+	 */
+	
+	int getStringWidth(String text);
+}
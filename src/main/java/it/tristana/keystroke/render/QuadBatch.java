@@ -0,0 +1,194 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.render;
+
+import org.lwjgl.opengl.GL11;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.math.vector.Matrix4f;
+
+/**
+ * Collects filled rectangles and draws all of them with a single draw call.<br>
+ * It replaces a call to {@code AbstractGui.fill} for each rectangle, which<br>
+ * sets up the blending state and flushes its own buffer every time.<br>
+ * The rectangles are drawn in the same order they were added
+ * @author Massimiliano Micol
+ */
+
+public final class QuadBatch {
+	
+	/**
+	 * The number of values stored for each quad: the two corners and the color
+	 */
+	
+	private static final int VALUES_PER_QUAD = 5;
+	
+	/**
+	 * The queued quads, as left, top, right, bottom and ARGB color
+	 */
+	
+	private int[] quads;
+	
+	/**
+	 * The number of queued quads
+	 */
+	
+	private int size;
+	
+	/**
+	 * The draw calls issued since the current frame started
+	 */
+	
+	private int drawCalls;
+	
+	/**
+	 * The draw calls issued during the previous frame
+	 */
+	
+	private int lastFrameDrawCalls;
+	
+	/**
+	 * The class constructor
+	 * @param capacity The number of quads the batch can hold before growing
+	 */
+	
+	public QuadBatch(final int capacity) {
+		quads = new int[Math.max(capacity, 1) * VALUES_PER_QUAD];
+	}
+	
+	/**
+	 * Starts a new frame, resetting the draw calls counter
+	 */
+	
+	public void beginFrame() {
+		lastFrameDrawCalls = drawCalls;
+		drawCalls = 0;
+	}
+	
+	/**
+	 * Queues a filled rectangle. The coordinates follow the same rules of {@code AbstractGui.fill}
+	 * @param left The X coordinate of the first corner
+	 * @param top The Y coordinate of the first corner
+	 * @param right The X coordinate of the opposite corner
+	 * @param bottom The Y coordinate of the opposite corner
+	 * @param color The ARGB color
+	 */
+	
+	public void add(final int left, final int top, final int right, final int bottom, final int color) {
+		if ((size + 1) * VALUES_PER_QUAD > quads.length) {
+			// Only happens while the overlay grows, the array is then reused by all the following frames
+			int[] bigger = new int[quads.length * 2];
+			System.arraycopy(quads, 0, bigger, 0, quads.length);
+			quads = bigger;
+		}
+		int offset = size * VALUES_PER_QUAD;
+		quads[offset] = Math.min(left, right);
+		quads[offset + 1] = Math.min(top, bottom);
+		quads[offset + 2] = Math.max(left, right);
+		quads[offset + 3] = Math.max(top, bottom);
+		quads[offset + 4] = color;
+		size++;
+	}
+	
+	/**
+	 * Draws all the queued quads at once and empties the batch
+	 * @param matrix The graphics matrix
+	 */
+	
+	public void flush(final MatrixStack matrix) {
+		if (size == 0) {
+			return;
+		}
+		Matrix4f transform = matrix.getLast().getMatrix();
+		BufferBuilder buffer = Tessellator.getInstance().getBuffer();
+		RenderSystem.enableBlend();
+		RenderSystem.disableTexture();
+		RenderSystem.defaultBlendFunc();
+		buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR);
+		for (int i = 0; i < size; i++) {
+			int offset = i * VALUES_PER_QUAD;
+			float left = quads[offset];
+			float top = quads[offset + 1];
+			float right = quads[offset + 2];
+			float bottom = quads[offset + 3];
+			int color = quads[offset + 4];
+			int alpha = color >>> 030;
+			int red = (color >> 020) & 0xff;
+			int green = (color >> 010) & 0xff;
+			int blue = color & 0xff;
+			buffer.pos(transform, left, bottom, 0f).color(red, green, blue, alpha).endVertex();
+			buffer.pos(transform, right, bottom, 0f).color(red, green, blue, alpha).endVertex();
+			buffer.pos(transform, right, top, 0f).color(red, green, blue, alpha).endVertex();
+			buffer.pos(transform, left, top, 0f).color(red, green, blue, alpha).endVertex();
+		}
+		buffer.finishDrawing();
+		WorldVertexBufferUploader.draw(buffer);
+		RenderSystem.enableTexture();
+		RenderSystem.disableBlend();
+		drawCalls++;
+		size = 0;
+	}
+	
+	/**
+	 * Counts a draw call issued outside of the batch, so the frame counter includes it
+	 */
+	
+	public void countDrawCall() {
+		drawCalls++;
+	}
+	
+	/**
+	 * Empties the batch without drawing the queued quads
+	 */
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Gets the number of queued quads
+	 * @return The queued quads
+	 */
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets the number of draw calls issued during the previous frame
+	 * @return The draw calls of the last complete frame
+	 */
+	
+	public int getLastFrameDrawCalls() {
+		return lastFrameDrawCalls;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stats;
+
+/**
+ * The statistics of a single input, updated by the game thread as the key is pressed and released.<br>
+ * The updates are plain reads followed by ordered stores in the shared {@link KeyStatistics}<br>
+ * array: they are safe because the game thread is the only writer, and they never block
+ * @author Massimiliano Micol
+ */
+
+public final class KeyCounters {
+	
+	/**
+	 * The number of nanoseconds in a millisecond
+	 */
+	
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+	
+	/**
+	 * The statistics holding the counters
+	 */
+	
+	private final KeyStatistics statistics;
+	
+	/**
+	 * The index of the first counter of this key in the session array
+	 */
+	
+	private final int offset;
+	
+	/**
+	 * The lifetime totals before this session
+	 */
+	
+	private final long[] previous;
+	
+	/**
+	 * When the key was last pressed, as given by {@link System#nanoTime()}, or 0 if it never was
+	 */
+	
+	private long lastPress;
+	
+	/**
+	 * Whether the key is currently held
+	 */
+	
+	private boolean held;
+	
+	/**
+	 * The class constructor
+	 * @param statistics The statistics holding the counters
+	 * @param offset The index of the first counter of this key in the session array
+	 * @param previous The lifetime totals before this session
+	 */
+	
+	KeyCounters(final KeyStatistics statistics, final int offset, final long[] previous) {
+		this.statistics = statistics;
+		this.offset = offset;
+		this.previous = previous;
+	}
+	
+	/**
+	 * Records a press. The counters are shared by all the keys bound to the same input,<br>
+	 * so the press is only counted by the first of them: the others find the input already held
+	 * @param timestamp When the key was pressed, as given by {@link System#nanoTime()}
+	 */
+	
+	public void onPress(final long timestamp) {
+		if (held) {
+			return;
+		}
+		if (lastPress != 0) {
+			long interval = Math.max((timestamp - lastPress) / NANOS_PER_MILLI, 1);
+			int bucket = Math.min(63 - Long.numberOfLeadingZeros(interval), KeyStatistics.INTERVAL_BUCKETS - 1);
+			add(KeyStatistics.INTERVALS + bucket, 1);
+		}
+		add(KeyStatistics.PRESSES, 1);
+		lastPress = timestamp;
+		held = true;
+	}
+	
+	/**
+	 * Records a release, adding the hold time
+	 * @param timestamp When the key was released, as given by {@link System#nanoTime()}
+	 */
+	
+	public void onRelease(final long timestamp) {
+		if (held) {
+			add(KeyStatistics.HOLD_TIME, Math.max(timestamp - lastPress, 0));
+			held = false;
+		}
+	}
+	
+	/**
+	 * Records the current CPS, keeping it if it is the highest of the session
+	 * @param cps The clicks in the last second
+	 */
+	
+	public void onCps(final int cps) {
+		final int index = offset + KeyStatistics.PEAK_CPS;
+		if (cps > statistics.session.get(index)) {
+			statistics.session.lazySet(index, cps);
+		}
+	}
+	
+	/**
+	 * Gets the number of presses in this session
+	 * @return The session presses
+	 */
+	
+	public long getSessionPresses() {
+		return statistics.session.get(offset + KeyStatistics.PRESSES);
+	}
+	
+	/**
+	 * Gets the total hold time in this session
+	 * @return The session hold time, in nanoseconds
+	 */
+	
+	public long getSessionHoldTime() {
+		return statistics.session.get(offset + KeyStatistics.HOLD_TIME);
+	}
+	
+	/**
+	 * Gets the highest CPS of this session
+	 * @return The session peak CPS
+	 */
+	
+	public long getSessionPeakCps() {
+		return statistics.session.get(offset + KeyStatistics.PEAK_CPS);
+	}
+	
+	/**
+	 * Gets the number of presses since the statistics were first recorded
+	 * @return The lifetime presses
+	 */
+	
+	public long getLifetimePresses() {
+		return previous[KeyStatistics.PRESSES] + getSessionPresses();
+	}
+	
+	/**
+	 * Builds the lifetime totals including this session. The peak is the highest one, all the other values are summed
+	 * @return A new array of {@link KeyStatistics#SLOT_SIZE} values
+	 */
+	
+	long[] getLifetime() {
+		long[] totals = new long[KeyStatistics.SLOT_SIZE];
+		for (int i = 0; i < totals.length; i++) {
+			long current = statistics.session.get(offset + i);
+			totals[i] = i == KeyStatistics.PEAK_CPS ? Math.max(previous[i], current) : previous[i] + current;
+		}
+		return totals;
+	}
+	
+	/**
+	 * Adds a value to a session counter, only called by the game thread
+	 * @param counter The counter offset in the slot
+	 * @param value The value to add
+	 */
+	
+	private void add(final int counter, final long value) {
+		final int index = offset + counter;
+		statistics.session.lazySet(index, statistics.session.get(index) + value);
+	}
+}
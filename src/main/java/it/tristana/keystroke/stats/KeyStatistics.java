@@ -0,0 +1,267 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds the press statistics of every tracked key, for this session and for the whole lifetime.<br>
+ * The session counters live in a flat {@link AtomicLongArray}: the game thread is their only<br>
+ * writer and updates them with ordered stores, so it never waits. A background thread<br>
+ * periodically adds them to the lifetime totals read at startup and writes the result in<br>
+ * a small binary file, replaced atomically. A last snapshot is written when the game closes
+ * @author Massimiliano Micol
+ */
+
+public final class KeyStatistics {
+	
+	/**
+	 * The number of buckets of the press interval histogram. Bucket {@code i} holds<br>
+	 * the intervals from 2<sup>i</sup> to 2<sup>i+1</sup> - 1 milliseconds, the last one all the longer ones
+	 */
+	
+	public static final int INTERVAL_BUCKETS = 16;
+	
+	/**
+	 * The input type of the controller buttons, which aren't a {@code InputMappings.Type}
+	 */
+	
+	public static final int GAMEPAD = -1;
+	
+	/**
+	 * The offset of the press count in a slot
+	 */
+	
+	static final int PRESSES = 0;
+	
+	/**
+	 * The offset of the total hold time in a slot, in nanoseconds
+	 */
+	
+	static final int HOLD_TIME = 1;
+	
+	/**
+	 * The offset of the peak CPS in a slot
+	 */
+	
+	static final int PEAK_CPS = 2;
+	
+	/**
+	 * The offset of the first bucket of the press interval histogram in a slot
+	 */
+	
+	static final int INTERVALS = 3;
+	
+	/**
+	 * The number of values in a slot
+	 */
+	
+	static final int SLOT_SIZE = INTERVALS + INTERVAL_BUCKETS;
+	
+	/**
+	 * The maximum number of tracked keys
+	 */
+	
+	private static final int MAX_SLOTS = 128;
+	
+	/**
+	 * Identifies the statistics files
+	 */
+	
+	private static final int MAGIC = 0x4b53544b;
+	
+	/**
+	 * The version of the file format
+	 */
+	
+	private static final int VERSION = 2;
+	
+	/**
+	 * The logger used to report the file errors
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The statistics file
+	 */
+	
+	private final Path file;
+	
+	/**
+	 * The counters of this session, {@link #SLOT_SIZE} values for each key
+	 */
+	
+	final AtomicLongArray session;
+	
+	/**
+	 * The lifetime totals read from the file, by input. Inputs not used by the current layout are kept as well
+	 */
+	
+	private final Map<Long, long[]> lifetime;
+	
+	/**
+	 * The counters handed out so far, by input
+	 */
+	
+	private final Map<Long, KeyCounters> counters;
+	
+	/**
+	 * The class constructor, it reads the lifetime totals from the file if it exists
+	 * @param file The statistics file
+	 */
+	
+	public KeyStatistics(final Path file) {
+		this.file = file;
+		session = new AtomicLongArray(MAX_SLOTS * SLOT_SIZE);
+		lifetime = new LinkedHashMap<Long, long[]>();
+		counters = new LinkedHashMap<Long, KeyCounters>();
+		read();
+	}
+	
+	/**
+	 * Gets the counters of an input, creating them the first time.<br>
+	 * All the keys bound to the same input share its counters, whatever KeyBinding they go through
+	 * @param type The input type ordinal, or {@link #GAMEPAD} for a controller button
+	 * @param code The key code, scancode, mouse button or controller button, depending on the type
+	 * @return The input counters, or {@code null} if too many inputs are tracked
+	 */
+	
+	public synchronized KeyCounters getCounters(final int type, final int code) {
+		final Long input = toInput(type, code);
+		KeyCounters result = counters.get(input);
+		if (result == null && counters.size() < MAX_SLOTS) {
+			long[] totals = lifetime.get(input);
+			result = new KeyCounters(this, counters.size() * SLOT_SIZE, totals == null ? new long[SLOT_SIZE] : totals);
+			counters.put(input, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Starts writing a snapshot on a background thread every given interval, and one more when the game closes
+	 * @param interval The time between two snapshots
+	 * @param unit The unit of the interval
+	 */
+	
+	public void startWriter(final long interval, final TimeUnit unit) {
+		ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Keystroke statistics writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::write, interval, interval, unit);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::write, "Keystroke statistics shutdown"));
+	}
+	
+	/**
+	 * Writes the lifetime totals, including this session, to the file.<br>
+	 * The data is written to a temporary file first, so a crash never leaves a broken file
+	 */
+	
+	public synchronized void write() {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				Map<Long, long[]> snapshot = new LinkedHashMap<Long, long[]>(lifetime);
+				for (Map.Entry<Long, KeyCounters> entry : counters.entrySet()) {
+					snapshot.put(entry.getKey(), entry.getValue().getLifetime());
+				}
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(snapshot.size());
+				for (Map.Entry<Long, long[]> entry : snapshot.entrySet()) {
+					// The type and the code
+					out.writeLong(entry.getKey());
+					for (long value : entry.getValue()) {
+						out.writeLong(value);
+					}
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not write the key statistics to {}", file, e);
+		}
+	}
+	
+	/**
+	 * Reads the lifetime totals from the file
+	 */
+	
+	private void read() {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LOGGER.warn("Ignoring the key statistics in {}, unknown format", file);
+				return;
+			}
+			for (int i = in.readInt(); i > 0; i--) {
+				long input = in.readLong();
+				long[] totals = new long[SLOT_SIZE];
+				for (int j = 0; j < SLOT_SIZE; j++) {
+					totals[j] = in.readLong();
+				}
+				lifetime.put(input, totals);
+			}
+		}
+		catch (NoSuchFileException e) {
+			// First launch, there are no statistics yet
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not read the key statistics from {}", file, e);
+			lifetime.clear();
+		}
+	}
+	
+	/**
+	 * Packs an input in a single value, the type in the high half and the code in the low one
+	 * @param type The input type
+	 * @param code The input code
+	 * @return The packed input
+	 */
+	
+	private static long toInput(final int type, final int code) {
+		return (long) type << 32 | (code & 0xffffffffL);
+	}
+}
@@ -0,0 +1,440 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stats;
+
+import java.util.Arrays;
+
+import org.lwjgl.glfw.GLFW;
+
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Counts the presses of every key of a full size keyboard and of the mouse buttons during the session,<br>
+ * and maps them on a grid of cells to be drawn as a heatmap.<br>
+ * The grid is measured in texels, a quarter of a standard key each, and a cell leaves its last<br>
+ * column and row empty so the keys are apart. Each cell has a heat level from 0 to {@value #LEVELS} - 1,<br>
+ * its presses relative to a power of two scale that doubles when a key exceeds it. Only the cells whose<br>
+ * level changes are marked dirty, so the texture showing them only needs a few texels updated per press
+ * @author Massimiliano Micol
+ */
+
+public final class PressHeatmap {
+	
+	/**
+	 * The number of heat levels, level 0 being a key never pressed
+	 */
+	
+	public static final int LEVELS = 16;
+	
+	/**
+	 * The size of a standard key, in texels
+	 */
+	
+	private static final int UNIT = 4;
+	
+	/**
+	 * The width of the grid, in texels
+	 */
+	
+	public static final int WIDTH = 90;
+	
+	/**
+	 * The height of the grid, in texels
+	 */
+	
+	public static final int HEIGHT = 30;
+	
+	/**
+	 * The maximum number of cells
+	 */
+	
+	private static final int MAX_CELLS = 128;
+	
+	/**
+	 * The presses needed by a key to get the hottest color before the scale starts doubling
+	 */
+	
+	private static final int MIN_SCALE = 16;
+	
+	/**
+	 * The colors of the heat levels, from a translucent gray to red through blue, green and yellow
+	 */
+	
+	private static final int[] PALETTE = new int[LEVELS];
+	
+	static {
+		// The hue goes from 240 degrees (blue) down to 0 (red)
+		PALETTE[0] = 0x40a0a0a0;
+		for (int i = 1; i < LEVELS; i++) {
+			float hue = 4f * (LEVELS - 1 - i) / (LEVELS - 2);
+			int sector = Math.min((int) hue, 3);
+			int rising = Math.round((hue - sector) * 0xff);
+			int falling = 0xff - rising;
+			int red, green, blue;
+			switch (sector) {
+				case 0: red = 0xff; green = rising; blue = 0; break;
+				case 1: red = falling; green = 0xff; blue = 0; break;
+				case 2: red = 0; green = 0xff; blue = rising; break;
+				default: red = 0; green = falling; blue = 0xff; break;
+			}
+			PALETTE[i] = 0xc0 << 030 | red << 020 | green << 010 | blue;
+		}
+	}
+	
+	/**
+	 * The X coordinate of the cells
+	 */
+	
+	private final int[] cellX;
+	
+	/**
+	 * The Y coordinate of the cells
+	 */
+	
+	private final int[] cellY;
+	
+	/**
+	 * The width of the cells, gap included
+	 */
+	
+	private final int[] cellWidth;
+	
+	/**
+	 * The height of the cells, gap included
+	 */
+	
+	private final int[] cellHeight;
+	
+	/**
+	 * The cell of each GLFW key code, or -1
+	 */
+	
+	private final int[] keyCells;
+	
+	/**
+	 * The cell of each GLFW mouse button, or -1
+	 */
+	
+	private final int[] mouseCells;
+	
+	/**
+	 * The number of presses of each cell
+	 */
+	
+	private final int[] presses;
+	
+	/**
+	 * The heat level of each cell
+	 */
+	
+	private final int[] levels;
+	
+	/**
+	 * The cells whose level changed since they were last cleared
+	 */
+	
+	private final long[] dirty;
+	
+	/**
+	 * The number of cells
+	 */
+	
+	private int cells;
+	
+	/**
+	 * The presses giving the hottest color, always a power of two
+	 */
+	
+	private int scale;
+	
+	/**
+	 * Builds the keyboard and mouse grid, with no presses
+	 */
+	
+	public PressHeatmap() {
+		cellX = new int[MAX_CELLS];
+		cellY = new int[MAX_CELLS];
+		cellWidth = new int[MAX_CELLS];
+		cellHeight = new int[MAX_CELLS];
+		keyCells = new int[GLFW.GLFW_KEY_LAST + 1];
+		mouseCells = new int[GLFW.GLFW_MOUSE_BUTTON_LAST + 1];
+		Arrays.fill(keyCells, -1);
+		Arrays.fill(mouseCells, -1);
+		presses = new int[MAX_CELLS];
+		levels = new int[MAX_CELLS];
+		dirty = new long[MAX_CELLS / Long.SIZE];
+		scale = MIN_SCALE;
+		buildKeyboard();
+		markAllDirty();
+	}
+	
+	/**
+	 * Places the keys of an ANSI full size keyboard and the mouse buttons below it. The coordinates are in texels
+	 */
+	
+	private void buildKeyboard() {
+		// Function row
+		addKey(GLFW.GLFW_KEY_ESCAPE, 0, 0, UNIT);
+		addRow(0, 8, UNIT, GLFW.GLFW_KEY_F1, GLFW.GLFW_KEY_F2, GLFW.GLFW_KEY_F3, GLFW.GLFW_KEY_F4);
+		addRow(0, 26, UNIT, GLFW.GLFW_KEY_F5, GLFW.GLFW_KEY_F6, GLFW.GLFW_KEY_F7, GLFW.GLFW_KEY_F8);
+		addRow(0, 44, UNIT, GLFW.GLFW_KEY_F9, GLFW.GLFW_KEY_F10, GLFW.GLFW_KEY_F11, GLFW.GLFW_KEY_F12);
+		addRow(0, 61, UNIT, GLFW.GLFW_KEY_PRINT_SCREEN, GLFW.GLFW_KEY_SCROLL_LOCK, GLFW.GLFW_KEY_PAUSE);
+		// Number row
+		addRow(5, 0, UNIT, GLFW.GLFW_KEY_GRAVE_ACCENT, GLFW.GLFW_KEY_1, GLFW.GLFW_KEY_2, GLFW.GLFW_KEY_3, GLFW.GLFW_KEY_4, GLFW.GLFW_KEY_5, GLFW.GLFW_KEY_6,
+			GLFW.GLFW_KEY_7, GLFW.GLFW_KEY_8, GLFW.GLFW_KEY_9, GLFW.GLFW_KEY_0, GLFW.GLFW_KEY_MINUS, GLFW.GLFW_KEY_EQUAL);
+		addKey(GLFW.GLFW_KEY_BACKSPACE, 52, 5, UNIT * 2);
+		addRow(5, 61, UNIT, GLFW.GLFW_KEY_INSERT, GLFW.GLFW_KEY_HOME, GLFW.GLFW_KEY_PAGE_UP);
+		addRow(5, 74, UNIT, GLFW.GLFW_KEY_NUM_LOCK, GLFW.GLFW_KEY_KP_DIVIDE, GLFW.GLFW_KEY_KP_MULTIPLY, GLFW.GLFW_KEY_KP_SUBTRACT);
+		// Top letters row
+		addKey(GLFW.GLFW_KEY_TAB, 0, 9, 6);
+		addRow(9, 6, UNIT, GLFW.GLFW_KEY_Q, GLFW.GLFW_KEY_W, GLFW.GLFW_KEY_E, GLFW.GLFW_KEY_R, GLFW.GLFW_KEY_T, GLFW.GLFW_KEY_Y,
+			GLFW.GLFW_KEY_U, GLFW.GLFW_KEY_I, GLFW.GLFW_KEY_O, GLFW.GLFW_KEY_P, GLFW.GLFW_KEY_LEFT_BRACKET, GLFW.GLFW_KEY_RIGHT_BRACKET);
+		addKey(GLFW.GLFW_KEY_BACKSLASH, 54, 9, 6);
+		addRow(9, 61, UNIT, GLFW.GLFW_KEY_DELETE, GLFW.GLFW_KEY_END, GLFW.GLFW_KEY_PAGE_DOWN);
+		addRow(9, 74, UNIT, GLFW.GLFW_KEY_KP_7, GLFW.GLFW_KEY_KP_8, GLFW.GLFW_KEY_KP_9);
+		addCell(GLFW.GLFW_KEY_KP_ADD, keyCells, 86, 9, UNIT, UNIT * 2);
+		// Middle letters row
+		addKey(GLFW.GLFW_KEY_CAPS_LOCK, 0, 13, 7);
+		addRow(13, 7, UNIT, GLFW.GLFW_KEY_A, GLFW.GLFW_KEY_S, GLFW.GLFW_KEY_D, GLFW.GLFW_KEY_F, GLFW.GLFW_KEY_G, GLFW.GLFW_KEY_H,
+			GLFW.GLFW_KEY_J, GLFW.GLFW_KEY_K, GLFW.GLFW_KEY_L, GLFW.GLFW_KEY_SEMICOLON, GLFW.GLFW_KEY_APOSTROPHE);
+		addKey(GLFW.GLFW_KEY_ENTER, 51, 13, 9);
+		addRow(13, 74, UNIT, GLFW.GLFW_KEY_KP_4, GLFW.GLFW_KEY_KP_5, GLFW.GLFW_KEY_KP_6);
+		// Bottom letters row
+		addKey(GLFW.GLFW_KEY_LEFT_SHIFT, 0, 17, 9);
+		addRow(17, 9, UNIT, GLFW.GLFW_KEY_Z, GLFW.GLFW_KEY_X, GLFW.GLFW_KEY_C, GLFW.GLFW_KEY_V, GLFW.GLFW_KEY_B,
+			GLFW.GLFW_KEY_N, GLFW.GLFW_KEY_M, GLFW.GLFW_KEY_COMMA, GLFW.GLFW_KEY_PERIOD, GLFW.GLFW_KEY_SLASH);
+		addKey(GLFW.GLFW_KEY_RIGHT_SHIFT, 49, 17, 11);
+		addKey(GLFW.GLFW_KEY_UP, 65, 17, UNIT);
+		addRow(17, 74, UNIT, GLFW.GLFW_KEY_KP_1, GLFW.GLFW_KEY_KP_2, GLFW.GLFW_KEY_KP_3);
+		addCell(GLFW.GLFW_KEY_KP_ENTER, keyCells, 86, 17, UNIT, UNIT * 2);
+		// Space row
+		addRow(21, 0, 5, GLFW.GLFW_KEY_LEFT_CONTROL, GLFW.GLFW_KEY_LEFT_SUPER, GLFW.GLFW_KEY_LEFT_ALT);
+		addKey(GLFW.GLFW_KEY_SPACE, 15, 21, 25);
+		addRow(21, 40, 5, GLFW.GLFW_KEY_RIGHT_ALT, GLFW.GLFW_KEY_RIGHT_SUPER, GLFW.GLFW_KEY_MENU, GLFW.GLFW_KEY_RIGHT_CONTROL);
+		addRow(21, 61, UNIT, GLFW.GLFW_KEY_LEFT, GLFW.GLFW_KEY_DOWN, GLFW.GLFW_KEY_RIGHT);
+		addKey(GLFW.GLFW_KEY_KP_0, 74, 21, UNIT * 2);
+		addKey(GLFW.GLFW_KEY_KP_DECIMAL, 82, 21, UNIT);
+		// Mouse buttons, the main ones wider
+		addCell(GLFW.GLFW_MOUSE_BUTTON_LEFT, mouseCells, 0, 26, UNIT * 2, UNIT);
+		addCell(GLFW.GLFW_MOUSE_BUTTON_MIDDLE, mouseCells, 8, 26, UNIT, UNIT);
+		addCell(GLFW.GLFW_MOUSE_BUTTON_RIGHT, mouseCells, 12, 26, UNIT * 2, UNIT);
+		addCell(GLFW.GLFW_MOUSE_BUTTON_4, mouseCells, 22, 26, UNIT, UNIT);
+		addCell(GLFW.GLFW_MOUSE_BUTTON_5, mouseCells, 26, 26, UNIT, UNIT);
+	}
+	
+	/**
+	 * Places a row of keys of the same width, one next to the other
+	 * @param y The Y coordinate of the row
+	 * @param x The X coordinate of the first key
+	 * @param width The width of each key
+	 * @param keys The GLFW key codes, left to right
+	 */
+	
+	private void addRow(final int y, int x, final int width, final int... keys) {
+		for (int key : keys) {
+			addKey(key, x, y, width);
+			x += width;
+		}
+	}
+	
+	/**
+	 * Places a keyboard key one row high
+	 * @param key The GLFW key code
+	 * @param x The X coordinate
+	 * @param y The Y coordinate
+	 * @param width The width
+	 */
+	
+	private void addKey(final int key, final int x, final int y, final int width) {
+		addCell(key, keyCells, x, y, width, UNIT);
+	}
+	
+	/**
+	 * Places a cell
+	 * @param code The key code or mouse button
+	 * @param lookup The table mapping the codes of its type to the cells
+	 * @param x The X coordinate
+	 * @param y The Y coordinate
+	 * @param width The width
+	 * @param height The height
+	 */
+	
+	private void addCell(final int code, final int[] lookup, final int x, final int y, final int width, final int height) {
+		cellX[cells] = x;
+		cellY[cells] = y;
+		cellWidth[cells] = width;
+		cellHeight[cells] = height;
+		lookup[code] = cells++;
+	}
+	
+	/**
+	 * Counts a key press, called for every input event
+	 * @param type The input type, telling apart keyboard keys and mouse buttons
+	 * @param code The key code or mouse button
+	 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+	 */
+	
+	public void onKey(final InputMappings.Type type, final int code, final boolean pressed) {
+		if (!pressed) {
+			return;
+		}
+		final int[] lookup = type == InputMappings.Type.KEYSYM ? keyCells : type == InputMappings.Type.MOUSE ? mouseCells : null;
+		if (lookup == null || code < 0 || code >= lookup.length || lookup[code] < 0) {
+			return;
+		}
+		final int cell = lookup[code];
+		if (++presses[cell] > scale) {
+			// Every level is relative to the scale, they must all be computed again
+			scale <<= 1;
+			for (int i = 0; i < cells; i++) {
+				updateLevel(i);
+			}
+		}
+		else {
+			updateLevel(cell);
+		}
+	}
+	
+	/**
+	 * Computes the level of a cell again, marking it dirty if it changed
+	 * @param cell The cell
+	 */
+	
+	private void updateLevel(final int cell) {
+		final int level = presses[cell] == 0 ? 0 : 1 + (int) ((long) presses[cell] * (LEVELS - 2) / scale);
+		if (level != levels[cell]) {
+			levels[cell] = level;
+			dirty[cell >>> 6] |= 1L << cell;
+		}
+	}
+	
+	/**
+	 * Marks every cell as dirty, for example because the texture showing them has been created again
+	 */
+	
+	public void markAllDirty() {
+		for (int i = 0; i < cells; i++) {
+			dirty[i >>> 6] |= 1L << i;
+		}
+	}
+	
+	/**
+	 * Finds the next dirty cell and clears its dirty mark
+	 * @param from The first cell to check
+	 * @return The dirty cell, or -1 if there are no more
+	 */
+	
+	public int pollDirty(final int from) {
+		for (int word = from >>> 6; word < dirty.length; word++) {
+			long bits = dirty[word] & (word == from >>> 6 ? -1L << from : -1L);
+			if (bits != 0) {
+				int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+				dirty[word] &= ~(1L << cell);
+				return cell;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the number of cells
+	 * @return The cells count
+	 */
+	
+	public int getCells() {
+		return cells;
+	}
+	
+	/**
+	 * Gets the X coordinate of a cell
+	 * @param cell The cell
+	 * @return The X coordinate, in texels
+	 */
+	
+	public int getCellX(final int cell) {
+		return cellX[cell];
+	}
+	
+	/**
+	 * Gets the Y coordinate of a cell
+	 * @param cell The cell
+	 * @return The Y coordinate, in texels
+	 */
+	
+	public int getCellY(final int cell) {
+		return cellY[cell];
+	}
+	
+	/**
+	 * Gets the width of a cell, including the empty column on its right
+	 * @param cell The cell
+	 * @return The width, in texels
+	 */
+	
+	public int getCellWidth(final int cell) {
+		return cellWidth[cell];
+	}
+	
+	/**
+	 * Gets the height of a cell, including the empty row below it
+	 * @param cell The cell
+	 * @return The height, in texels
+	 */
+	
+	public int getCellHeight(final int cell) {
+		return cellHeight[cell];
+	}
+	
+	/**
+	 * Gets the number of presses of a cell
+	 * @param cell The cell
+	 * @return The presses since the game started
+	 */
+	
+	public int getPresses(final int cell) {
+		return presses[cell];
+	}
+	
+	/**
+	 * Gets the heat level of a cell, relative to the current scale
+	 * @param cell The cell
+	 * @return The level, from 0 with no presses to {@value #LEVELS} - 1
+	 */
+	
+	public int getLevel(final int cell) {
+		return levels[cell];
+	}
+	
+	/**
+	 * Gets the color of a cell, from its heat level
+	 * @param cell The cell
+	 * @return The ARGB color
+	 */
+	
+	public int getColor(final int cell) {
+		return PALETTE[levels[cell]];
+	}
+}
@@ -0,0 +1,86 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.stream;
+
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+/**
+ * The memory fences ordering the plain accesses to the shared state file.<br>
+ * The accesses of a {@link java.nio.MappedByteBuffer} aren't volatile, and a volatile field<br>
+ * elsewhere doesn't order them, so the sequence lock uses the explicit fences of {@link Unsafe}.<br>
+ * Java 8 has no public fences, the build accepts the internal API with {@code -XDignore.symbol.file}
+ * @author Massimiliano Micol
+ */
+
+final class Fences {
+	
+	/**
+	 * The JVM internal access, only used for its fences
+	 */
+	
+	private static final Unsafe UNSAFE = findUnsafe();
+	
+	/**
+	 * A private constructor, the class only has static methods
+	 */
+	
+	private Fences() {}
+	
+	/**
+	 * Keeps the loads before this point from moving after the loads and stores following it
+	 */
+	
+	static void load() {
+		UNSAFE.loadFence();
+	}
+	
+	/**
+	 * Keeps the loads and stores before this point from moving after the stores following it
+	 */
+	
+	static void store() {
+		UNSAFE.storeFence();
+	}
+	
+	/**
+	 * Gets the Unsafe instance, which isn't available through its own getter outside of the JDK
+	 * @return The instance
+	 */
+	
+	private static Unsafe findUnsafe() {
+		try {
+			Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return (Unsafe) field.get(null);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A reference reader of the file written by {@link SharedStateWriter}, showing how to follow the sequence lock.<br>
+ * It can also be run on its own, printing the keys status every time it changes:<br>
+ * {@code java -cp <mod jar> it.tristana.keystroke.stream.SharedStateReader <game dir>/keystroke/state.bin}
+ * @author Massimiliano Micol
+ */
+
+public final class SharedStateReader {
+	
+	/**
+	 * The mapped file
+	 */
+	
+	private final MappedByteBuffer buffer;
+	
+	/**
+	 * The pressed keys bitset of the last consistent read
+	 */
+	
+	private final long[] pressed;
+	
+	/**
+	 * The mouse keys CPS of the last consistent read
+	 */
+	
+	private final int[] cps;
+	
+	/**
+	 * The keys count of the last consistent read
+	 */
+	
+	private int keyCount;
+	
+	/**
+	 * The mouse keys count of the last consistent read
+	 */
+	
+	private int mouseCount;
+	
+	/**
+	 * When the state of the last consistent read was written, as given by {@link System#nanoTime()} in the game process
+	 */
+	
+	private long timestamp;
+	
+	/**
+	 * Maps a shared state file
+	 * @param file The file
+	 * @throws IOException If the file can't be mapped or is not a shared state file
+	 */
+	
+	public SharedStateReader(final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, SharedStateWriter.SIZE);
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getInt(0) != SharedStateWriter.MAGIC || buffer.getInt(4) != SharedStateWriter.VERSION) {
+			throw new IOException("Not a keystroke shared state file: " + file);
+		}
+		pressed = new long[SharedStateWriter.MAX_KEYS / Long.SIZE];
+		cps = new int[SharedStateWriter.MAX_MICE];
+	}
+	
+	/**
+	 * Copies a consistent state from the file, retrying while the game is writing it
+	 * @return The sequence number of the copied state, it changes every time the state does
+	 */
+	
+	public long read() {
+		while (true) {
+			final long before = buffer.getLong(SharedStateWriter.SEQUENCE);
+			// Odd means the game is in the middle of a write
+			if ((before & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			// The state can't be read before the first sequence...
+			Fences.load();
+			keyCount = buffer.getInt(SharedStateWriter.KEY_COUNT);
+			mouseCount = buffer.getInt(SharedStateWriter.MOUSE_COUNT);
+			timestamp = buffer.getLong(SharedStateWriter.TIMESTAMP);
+			for (int i = 0; i < pressed.length; i++) {
+				pressed[i] = buffer.getLong(SharedStateWriter.PRESSED + i * Long.BYTES);
+			}
+			for (int i = 0; i < cps.length; i++) {
+				cps[i] = buffer.getInt(SharedStateWriter.CPS + i * Integer.BYTES);
+			}
+			// ...and the second sequence can't be read before the state
+			Fences.load();
+			if (buffer.getLong(SharedStateWriter.SEQUENCE) == before) {
+				return before;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of keys in the last read state
+	 * @return The keys count
+	 */
+	
+	public int getKeyCount() {
+		return keyCount;
+	}
+	
+	/**
+	 * Gets the number of mouse keys in the last read state
+	 * @return The mouse keys count
+	 */
+	
+	public int getMouseCount() {
+		return mouseCount;
+	}
+	
+	/**
+	 * Gets when the last read state was written
+	 * @return The time, as given by {@link System#nanoTime()} in the game process
+	 */
+	
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Gets whether a key was pressed in the last read state
+	 * @param index The key index, in the layout order
+	 * @return {@code True} if the key was pressed, {@code False} othewhise
+	 */
+	
+	public boolean isPressed(final int index) {
+		return (pressed[index >>> 6] & 1L << index) != 0;
+	}
+	
+	/**
+	 * Gets the CPS of a mouse key in the last read state
+	 * @param index The index among the mouse keys, in the layout order
+	 * @return The clicks in the last second
+	 */
+	
+	public int getCps(final int index) {
+		return cps[index];
+	}
+	
+	/**
+	 * Prints the keys status every time it changes
+	 * @param args The path of the shared state file
+	 * @throws IOException If the file can't be mapped
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		SharedStateReader reader = new SharedStateReader(Paths.get(args[0]));
+		long last = -1;
+		while (true) {
+			long sequence = reader.read();
+			if (sequence != last) {
+				StringBuilder line = new StringBuilder("#").append(sequence).append(" keys ");
+				for (int i = 0; i < reader.getKeyCount(); i++) {
+					line.append(reader.isPressed(i) ? '1' : '0');
+				}
+				for (int i = 0; i < reader.getMouseCount(); i++) {
+					line.append(" | ").append(reader.getCps(i)).append(" CPS");
+				}
+				System.out.println(line);
+				last = sequence;
+			}
+			Thread.sleep(10);
+		}
+	}
+}
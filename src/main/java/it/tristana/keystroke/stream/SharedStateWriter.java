@@ -0,0 +1,250 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyMouse;
+
+/**
+ * Exports the keys status in a small memory-mapped file, so other processes can read it without any system call.<br>
+ * The file is written with a sequence lock: the sequence counter is odd while the state is being written and<br>
+ * even once it is complete, so a reader that sees the same even value before and after copying the state knows<br>
+ * it is consistent. The state is only written again when it changes. All the values are little endian:
+ * <ul>
+ * 	<li>0: magic number and 4: version, both 32 bits</li>
+ * 	<li>8: the 64 bits sequence counter</li>
+ * 	<li>16: the number of keys and 20: the number of mouse keys, both 32 bits</li>
+ * 	<li>24: when the state changed, as given by {@link System#nanoTime()}, 64 bits</li>
+ * 	<li>32: the keys drawn as pressed, one bit per key in the layout order, in four 64 bits words</li>
+ * 	<li>64: the CPS of each mouse key in the layout order, 32 bits each</li>
+ * </ul>
+ * @author Massimiliano Micol
+ */
+
+public final class SharedStateWriter {
+	
+	/**
+	 * Identifies the shared state files
+	 */
+	
+	static final int MAGIC = 0x4b535348;
+	
+	/**
+	 * The version of the file format
+	 */
+	
+	static final int VERSION = 1;
+	
+	/**
+	 * The offset of the sequence counter
+	 */
+	
+	static final int SEQUENCE = 8;
+	
+	/**
+	 * The offset of the keys count
+	 */
+	
+	static final int KEY_COUNT = 16;
+	
+	/**
+	 * The offset of the mouse keys count
+	 */
+	
+	static final int MOUSE_COUNT = 20;
+	
+	/**
+	 * The offset of the timestamp
+	 */
+	
+	static final int TIMESTAMP = 24;
+	
+	/**
+	 * The offset of the pressed keys bitset
+	 */
+	
+	static final int PRESSED = 32;
+	
+	/**
+	 * The offset of the mouse keys CPS
+	 */
+	
+	static final int CPS = 64;
+	
+	/**
+	 * The maximum number of exported keys, the following ones are ignored
+	 */
+	
+	static final int MAX_KEYS = 256;
+	
+	/**
+	 * The maximum number of exported mouse keys, the following ones are ignored
+	 */
+	
+	static final int MAX_MICE = 16;
+	
+	/**
+	 * The file size
+	 */
+	
+	static final int SIZE = CPS + MAX_MICE * Integer.BYTES;
+	
+	/**
+	 * The logger used to report the file errors
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The mapped file
+	 */
+	
+	private final MappedByteBuffer buffer;
+	
+	/**
+	 * The last written pressed keys bitset
+	 */
+	
+	private final long[] pressed;
+	
+	/**
+	 * The last written mouse keys CPS
+	 */
+	
+	private final int[] cps;
+	
+	/**
+	 * The last written keys count
+	 */
+	
+	private int keyCount = -1;
+	
+	/**
+	 * The last written mouse keys count
+	 */
+	
+	private int mouseCount;
+	
+	/**
+	 * The sequence counter, always even outside of {@link #publish(Key[])}
+	 */
+	
+	private long sequence;
+	
+	/**
+	 * The class constructor
+	 * @param buffer The mapped file
+	 */
+	
+	private SharedStateWriter(final MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		pressed = new long[MAX_KEYS / Long.SIZE];
+		cps = new int[MAX_MICE];
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+	}
+	
+	/**
+	 * Creates the shared state file and maps it
+	 * @param file The file, replaced if it exists
+	 * @return The writer, or {@code null} if the file can't be mapped
+	 */
+	
+	public static SharedStateWriter open(final Path file) {
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				// The mapping stays valid after the channel is closed
+				return new SharedStateWriter(channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE));
+			}
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not map the keystroke shared state file {}", file, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the keys status if it changed since the last call, only called by the game thread
+	 * @param keys The current keys
+	 */
+	
+	public void publish(final Key[] keys) {
+		final int count = Math.min(keys.length, MAX_KEYS);
+		boolean changed = count != keyCount;
+		if (changed) {
+			// Bits of keys that no longer exist would be left over from a bigger layout
+			Arrays.fill(pressed, 0);
+		}
+		int mice = 0;
+		for (int i = 0; i < count; i++) {
+			final long bit = 1L << i;
+			final long word = keys[i].isShownDown() ? pressed[i >>> 6] | bit : pressed[i >>> 6] & ~bit;
+			changed |= word != pressed[i >>> 6];
+			pressed[i >>> 6] = word;
+			if (keys[i] instanceof KeyMouse && mice < MAX_MICE) {
+				final int value = ((KeyMouse) keys[i]).getDisplayedCps();
+				changed |= value != cps[mice];
+				cps[mice++] = value;
+			}
+		}
+		changed |= mice != mouseCount;
+		if (!changed) {
+			return;
+		}
+		keyCount = count;
+		mouseCount = mice;
+		// Odd while writing, readers seeing it retry
+		buffer.putLong(SEQUENCE, ++sequence);
+		// The odd sequence must be visible before any of the state
+		Fences.store();
+		buffer.putInt(KEY_COUNT, count);
+		buffer.putInt(MOUSE_COUNT, mice);
+		buffer.putLong(TIMESTAMP, System.nanoTime());
+		for (int i = 0; i < pressed.length; i++) {
+			buffer.putLong(PRESSED + i * Long.BYTES, pressed[i]);
+		}
+		for (int i = 0; i < MAX_MICE; i++) {
+			buffer.putInt(CPS + i * Integer.BYTES, i < mice ? cps[i] : 0);
+		}
+		// The whole state must be visible before the even sequence
+		Fences.store();
+		buffer.putLong(SEQUENCE, ++sequence);
+	}
+}
@@ -0,0 +1,228 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * A connection to the {@link StreamServer}, speaking the WebSocket protocol.<br>
+ * Its buffers are allocated when the client connects, the sending one only grows again with the layout
+ * @author Massimiliano Micol
+ */
+
+final class StreamClient {
+	
+	/**
+	 * Appended to the client key to build the handshake answer, as required by RFC 6455
+	 */
+	
+	private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	
+	/**
+	 * The header holding the client key
+	 */
+	
+	private static final String KEY_HEADER = "sec-websocket-key:";
+	
+	/**
+	 * The size of the buffer receiving the handshake request
+	 */
+	
+	private static final int REQUEST_CAPACITY = 4096;
+	
+	/**
+	 * The connection
+	 */
+	
+	final SocketChannel channel;
+	
+	/**
+	 * The bytes waiting to be sent
+	 */
+	
+	ByteBuffer out;
+	
+	/**
+	 * The bytes received, the handshake request first and then the ignored client frames
+	 */
+	
+	private final ByteBuffer in;
+	
+	/**
+	 * Whether the WebSocket handshake is complete, only then the client receives the key states
+	 */
+	
+	boolean open;
+	
+	/**
+	 * Whether the client must receive the whole layout and state before any new delta
+	 */
+	
+	boolean needsFull;
+	
+	/**
+	 * When the client fell behind, as given by {@link System#nanoTime()}, or 0 if it is keeping up
+	 */
+	
+	long behindSince;
+	
+	/**
+	 * The class constructor
+	 * @param channel The connection, already non-blocking
+	 * @param outCapacity The size of the buffer holding the bytes waiting to be sent
+	 */
+	
+	StreamClient(final SocketChannel channel, final int outCapacity) {
+		this.channel = channel;
+		out = ByteBuffer.allocate(outCapacity);
+		in = ByteBuffer.allocate(REQUEST_CAPACITY);
+	}
+	
+	/**
+	 * Reads the bytes sent by the client, answering the handshake once its request is complete
+	 * @return {@code False} if the client closed the connection or sent an invalid request, {@code True} othewhise
+	 * @throws IOException If the connection failed
+	 */
+	
+	boolean read() throws IOException {
+		int read;
+		while ((read = channel.read(in)) > 0) {
+			if (open) {
+				// The overlay is one way, whatever the client sends is ignored
+				in.clear();
+			}
+			else if (!in.hasRemaining()) {
+				return false;
+			}
+		}
+		if (read < 0) {
+			return false;
+		}
+		if (!open) {
+			int end = findRequestEnd();
+			if (end >= 0) {
+				String request = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+				String key = findKey(request);
+				if (key == null) {
+					return false;
+				}
+				out.put(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: " + accept(key) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				in.clear();
+				open = true;
+				needsFull = true;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Grows the buffer of the bytes waiting to be sent, keeping them
+	 * @param capacity The new minimum size
+	 */
+	
+	void reserve(final int capacity) {
+		if (capacity > out.capacity()) {
+			out.flip();
+			out = ByteBuffer.allocate(capacity).put(out);
+		}
+	}
+	
+	/**
+	 * Sends as many waiting bytes as the socket accepts, without waiting
+	 * @throws IOException If the connection failed
+	 */
+	
+	void flush() throws IOException {
+		out.flip();
+		channel.write(out);
+		out.compact();
+	}
+	
+	/**
+	 * Closes the connection, ignoring any error
+	 */
+	
+	void close() {
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			// Already gone
+		}
+	}
+	
+	/**
+	 * Finds the empty line ending the handshake request
+	 * @return The request length, or -1 if it is not complete yet
+	 */
+	
+	private int findRequestEnd() {
+		byte[] bytes = in.array();
+		for (int i = 3; i < in.position(); i++) {
+			if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the client key in the handshake request
+	 * @param request The request
+	 * @return The key, or {@code null} if the request is not a WebSocket upgrade
+	 */
+	
+	private static String findKey(final String request) {
+		for (String line : request.split("\r\n")) {
+			if (line.regionMatches(true, 0, KEY_HEADER, 0, KEY_HEADER.length())) {
+				return line.substring(KEY_HEADER.length()).trim();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Builds the handshake answer to a client key
+	 * @param key The client key
+	 * @return The Base64 SHA-1 hash of the key and the protocol GUID
+	 */
+	
+	private static String accept(final String key) {
+		try {
+			return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,472 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.stream;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyJump;
+import it.tristana.keystroke.keys.KeyLabelCache;
+import it.tristana.keystroke.keys.KeyLayout;
+import it.tristana.keystroke.keys.KeyMouse;
+
+/**
+ * A local WebSocket server publishing the keys, so streaming software can show them as a separate source.<br>
+ * It runs on the game thread once per frame, using only non-blocking sockets: new clients are accepted,<br>
+ * the keys changed since the previous frame are encoded once in a single binary message, and that message<br>
+ * is appended to the buffer of every client. A client whose buffer is full skips the deltas and later gets<br>
+ * the whole state again in their place; if it stays behind for too long it is disconnected.<br>
+ * Messages, all big endian:
+ * <ul>
+ * 	<li>Layout: type 0, window width and height, keys count, then for each key its kind (0 key, 1 mouse, 2 jump),<br>
+ * 	x, y, width and height in scaled pixels and its UTF-8 label, preceded by its length. All the values are 16 bits but the kind</li>
+ * 	<li>State: type 1, changed keys count, then for each key its 16 bits index, 1 if drawn as pressed or 0 and its 16 bits CPS</li>
+ * </ul>
+ * @author Massimiliano Micol
+ */
+
+public final class StreamServer {
+	
+	/**
+	 * The type of the layout messages
+	 */
+	
+	private static final byte LAYOUT_MESSAGE = 0;
+	
+	/**
+	 * The type of the state messages
+	 */
+	
+	private static final byte STATE_MESSAGE = 1;
+	
+	/**
+	 * The first byte of a final binary WebSocket frame
+	 */
+	
+	private static final int BINARY_FRAME = 0x82;
+	
+	/**
+	 * The biggest header of a binary WebSocket frame, the one with a 64 bits length
+	 */
+	
+	private static final int FRAME_HEADER = 10;
+	
+	/**
+	 * The size of the message buffer before any layout is known, it grows with the layout
+	 */
+	
+	private static final int MIN_MESSAGE_CAPACITY = 16384;
+	
+	/**
+	 * The size of the buffer of each client, in messages: enough for a full state and some deltas
+	 */
+	
+	private static final int CLIENT_MESSAGES = 4;
+	
+	/**
+	 * The most bytes a label character takes in UTF-8. The characters outside the Basic<br>
+	 * Multilingual Plane take 4 bytes, but they are also 2 chars long
+	 */
+	
+	private static final int MAX_CHAR_BYTES = 3;
+	
+	/**
+	 * The maximum number of connected clients
+	 */
+	
+	private static final int MAX_CLIENTS = 8;
+	
+	/**
+	 * How long a client may stay behind before being disconnected, in nanoseconds
+	 */
+	
+	private static final long BEHIND_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+	
+	/**
+	 * The logger used to report the connection errors
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * Accepts the connections
+	 */
+	
+	private final ServerSocketChannel server;
+	
+	/**
+	 * The connected clients
+	 */
+	
+	private final List<StreamClient> clients;
+	
+	/**
+	 * Holds a message while it is encoded, big enough for the layout message of the current keys
+	 */
+	
+	private ByteBuffer message;
+	
+	/**
+	 * The framed delta of the current frame
+	 */
+	
+	private ByteBuffer delta;
+	
+	/**
+	 * The framed layout and whole state, built only when a client needs them
+	 */
+	
+	private ByteBuffer full;
+	
+	/**
+	 * The size of the buffer of each client, it grows together with {@link #message}
+	 */
+	
+	private int clientCapacity;
+	
+	/**
+	 * The keys the state was last sent for
+	 */
+	
+	private Key[] sentKeys;
+	
+	/**
+	 * The layout revision the layout was last sent for
+	 */
+	
+	private int sentLayoutRevision;
+	
+	/**
+	 * The generation of the labels in the last sent layout message
+	 */
+	
+	private int sentLabelGeneration;
+	
+	/**
+	 * The last sent status of each key
+	 */
+	
+	private boolean[] sentDown;
+	
+	/**
+	 * The last sent CPS of each key
+	 */
+	
+	private int[] sentCps;
+	
+	/**
+	 * The class constructor
+	 * @param server The server socket, already bound and non-blocking
+	 */
+	
+	private StreamServer(final ServerSocketChannel server) {
+		this.server = server;
+		clients = new ArrayList<StreamClient>(MAX_CLIENTS);
+		allocate(MIN_MESSAGE_CAPACITY);
+	}
+	
+	/**
+	 * Opens the server on the loopback address, so it can't be reached from other machines
+	 * @param port The port to listen on
+	 * @return The server, or {@code null} if the port can't be used
+	 */
+	
+	public static StreamServer open(final int port) {
+		try {
+			ServerSocketChannel server = ServerSocketChannel.open();
+			server.configureBlocking(false);
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			LOGGER.info("Keystroke stream listening on ws://localhost:{}", port);
+			return new StreamServer(server);
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not open the keystroke stream on port {}", port, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Accepts the new clients and sends the keys changed since the previous call, never waiting
+	 * @param keys The current keys
+	 * @param layout The keys layout
+	 */
+	
+	public void publish(final Key[] keys, final KeyLayout layout) {
+		accept();
+		// The geometry is unknown until the overlay is drawn once
+		if (clients.isEmpty() || layout.getResolvedWidth() < 0) {
+			return;
+		}
+		// A rebind or a keyboard layout change only changes the labels, the layout message has to be sent again too
+		final int labelGeneration = KeyLabelCache.getInstance().getGeneration();
+		boolean layoutChanged = keys != sentKeys || layout.getRevision() != sentLayoutRevision || labelGeneration != sentLabelGeneration;
+		if (layoutChanged) {
+			reserve(keys);
+			sentKeys = keys;
+			sentLayoutRevision = layout.getRevision();
+			sentLabelGeneration = labelGeneration;
+			sentDown = new boolean[keys.length];
+			sentCps = new int[keys.length];
+		}
+		buildDelta(keys, layoutChanged);
+		full.clear();
+		long now = System.nanoTime();
+		for (int i = clients.size() - 1; i >= 0; i--) {
+			StreamClient client = clients.get(i);
+			try {
+				if (!client.read()) {
+					remove(i);
+					continue;
+				}
+				if (client.open) {
+					send(client, keys, layout, layoutChanged, now);
+				}
+				client.flush();
+				if (client.behindSince != 0 && now - client.behindSince > BEHIND_TIMEOUT) {
+					LOGGER.info("Disconnecting a keystroke stream client that is too slow");
+					remove(i);
+				}
+			}
+			catch (IOException e) {
+				remove(i);
+			}
+		}
+	}
+	
+	/**
+	 * Closes the server and all the connections
+	 */
+	
+	public void close() {
+		for (int i = clients.size() - 1; i >= 0; i--) {
+			remove(i);
+		}
+		try {
+			server.close();
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not close the keystroke stream", e);
+		}
+	}
+	
+	/**
+	 * Gets the number of connected clients
+	 * @return The clients count
+	 */
+	
+	public int getClients() {
+		return clients.size();
+	}
+	
+	/**
+	 * Accepts all the waiting connections
+	 */
+	
+	private void accept() {
+		try {
+			SocketChannel channel;
+			while ((channel = server.accept()) != null) {
+				if (clients.size() == MAX_CLIENTS) {
+					channel.close();
+					continue;
+				}
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				clients.add(new StreamClient(channel, clientCapacity));
+			}
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not accept a keystroke stream client", e);
+		}
+	}
+	
+	/**
+	 * Grows the buffers if the layout message of some keys may not fit in them.<br>
+	 * It only allocates when a bigger layout is loaded, never while the keys are the same
+	 * @param keys The new keys
+	 */
+	
+	private void reserve(final Key[] keys) {
+		// Type, window size and keys count, then kind, bounds and label length of each key
+		long layoutSize = 7 + 11L * keys.length;
+		for (Key key : keys) {
+			layoutSize += (long) key.getKeyName().length() * MAX_CHAR_BYTES;
+		}
+		final long stateSize = 3 + 5L * keys.length;
+		final long capacity = Math.max(layoutSize, stateSize);
+		if (capacity > message.capacity()) {
+			allocate((int) capacity);
+			for (StreamClient client : clients) {
+				client.reserve(clientCapacity);
+			}
+		}
+	}
+	
+	/**
+	 * Allocates the buffers for a maximum message size
+	 * @param capacity The size of the biggest message
+	 */
+	
+	private void allocate(final int capacity) {
+		message = ByteBuffer.allocate(capacity);
+		delta = ByteBuffer.allocate(capacity + FRAME_HEADER);
+		full = ByteBuffer.allocate((capacity + FRAME_HEADER) * 2);
+		clientCapacity = capacity * CLIENT_MESSAGES;
+	}
+	
+	/**
+	 * Appends the messages a client needs this frame to its buffer
+	 * @param client The client
+	 * @param keys The current keys
+	 * @param layout The keys layout
+	 * @param layoutChanged Whether the keys or their geometry changed since the previous frame
+	 * @param now The current time, as given by {@link System#nanoTime()}
+	 */
+	
+	private void send(final StreamClient client, final Key[] keys, final KeyLayout layout, final boolean layoutChanged, final long now) {
+		if (client.needsFull || layoutChanged) {
+			if (full.position() == 0) {
+				buildFull(keys, layout);
+			}
+			if (client.out.remaining() >= full.position()) {
+				client.out.put(full.array(), 0, full.position());
+				client.needsFull = false;
+				client.behindSince = 0;
+			}
+			else {
+				client.needsFull = true;
+			}
+		}
+		else if (delta.position() > 0) {
+			if (client.out.remaining() >= delta.position()) {
+				client.out.put(delta.array(), 0, delta.position());
+			}
+			else {
+				// The deltas are skipped, the whole state sent once there is room replaces them
+				client.needsFull = true;
+				client.behindSince = now;
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the keys changed since the previous frame in {@link #delta}, leaving it empty if none did
+	 * @param keys The current keys
+	 * @param all Whether all the keys are sent
+	 */
+	
+	private void buildDelta(final Key[] keys, final boolean all) {
+		message.clear();
+		message.put(STATE_MESSAGE).putShort((short) 0);
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			boolean down = keys[i].isShownDown();
+			int cps = keys[i] instanceof KeyMouse ? Math.min(((KeyMouse) keys[i]).getDisplayedCps(), 0xffff) : 0;
+			if (all || down != sentDown[i] || cps != sentCps[i]) {
+				message.putShort((short) i).put((byte) (down ? 1 : 0)).putShort((short) cps);
+				sentDown[i] = down;
+				sentCps[i] = cps;
+				count++;
+			}
+		}
+		message.putShort(1, (short) count);
+		delta.clear();
+		if (count > 0) {
+			frame(message, delta);
+		}
+	}
+	
+	/**
+	 * Encodes the layout and the status of all the keys in {@link #full}.<br>
+	 * The labels are encoded here, so this allocates, but it only happens when a client needs it
+	 * @param keys The current keys
+	 * @param layout The keys layout
+	 */
+	
+	private void buildFull(final Key[] keys, final KeyLayout layout) {
+		message.clear();
+		message.put(LAYOUT_MESSAGE).putShort((short) layout.getResolvedWidth()).putShort((short) layout.getResolvedHeight()).putShort((short) keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			byte[] label = keys[i].getKeyName().getBytes(StandardCharsets.UTF_8);
+			message.put((byte) (keys[i] instanceof KeyMouse ? 1 : keys[i] instanceof KeyJump ? 2 : 0));
+			message.putShort((short) layout.getX(i)).putShort((short) layout.getY(i)).putShort((short) layout.getWidth(i)).putShort((short) layout.getHeight(i));
+			message.putShort((short) label.length).put(label);
+		}
+		frame(message, full);
+		message.clear();
+		message.put(STATE_MESSAGE).putShort((short) keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			message.putShort((short) i).put((byte) (sentDown[i] ? 1 : 0)).putShort((short) sentCps[i]);
+		}
+		frame(message, full);
+	}
+	
+	/**
+	 * Wraps a message in a binary WebSocket frame. Server frames are never masked
+	 * @param source The message, from its start to its position
+	 * @param destination Receives the frame
+	 */
+	
+	private static void frame(final ByteBuffer source, final ByteBuffer destination) {
+		final int length = source.position();
+		destination.put((byte) BINARY_FRAME);
+		if (length < 126) {
+			destination.put((byte) length);
+		}
+		else if (length <= 0xffff) {
+			destination.put((byte) 126).putShort((short) length);
+		}
+		else {
+			destination.put((byte) 127).putLong(length);
+		}
+		destination.put(source.array(), 0, length);
+	}
+	
+	/**
+	 * Disconnects a client
+	 * @param index The client index
+	 */
+	
+	private void remove(final int index) {
+		// The order doesn't matter, the last client takes the place of the removed one
+		StreamClient client = clients.get(index);
+		clients.set(index, clients.get(clients.size() - 1));
+		clients.remove(clients.size() - 1);
+		client.close();
+	}
+}
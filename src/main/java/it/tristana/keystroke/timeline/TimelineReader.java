@@ -0,0 +1,227 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.timeline;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import it.tristana.keystroke.input.InputQueue;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Reads a recording written by {@link TimelineRecorder}.<br>
+ * The whole sparse index is loaded at once, so seeking to a time is a binary search<br>
+ * over the blocks first timestamps followed by the decoding of a single block
+ * @author Massimiliano Micol
+ */
+
+public final class TimelineReader implements Closeable {
+	
+	/**
+	 * The input types, cached since {@code values()} allocates a new array every call
+	 */
+	
+	private static final InputMappings.Type[] TYPES = InputMappings.Type.values();
+	
+	/**
+	 * The timeline file
+	 */
+	
+	private final FileChannel channel;
+	
+	/**
+	 * The timestamp of the first event of each block
+	 */
+	
+	private final long[] firstTimestamps;
+	
+	/**
+	 * The wall clock time the recording started at, in milliseconds since the epoch
+	 */
+	
+	private final long startMillis;
+	
+	/**
+	 * The value of {@link System#nanoTime()} when the recording started
+	 */
+	
+	private final long startNanos;
+	
+	/**
+	 * Holds the block being decoded
+	 */
+	
+	private final ByteBuffer block;
+	
+	/**
+	 * The class constructor, it loads the index of a recording
+	 * @param file The timeline file, its index must be next to it
+	 * @throws IOException If the files can't be read or are not a recording
+	 */
+	
+	public TimelineReader(final Path file) throws IOException {
+		long[] timestamps = new long[64];
+		int blocks = 0;
+		try (DataInputStream index = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.resolveSibling(file.getFileName() + TimelineRecorder.INDEX_EXTENSION))))) {
+			if (index.readInt() != TimelineRecorder.MAGIC || index.readInt() != TimelineRecorder.VERSION || index.readInt() != TimelineRecorder.BLOCK_SIZE) {
+				throw new IOException("Not a keystroke timeline: " + file);
+			}
+			startMillis = index.readLong();
+			startNanos = index.readLong();
+			try {
+				while (true) {
+					if (blocks == timestamps.length) {
+						timestamps = Arrays.copyOf(timestamps, blocks * 2);
+					}
+					timestamps[blocks] = index.readLong();
+					blocks++;
+				}
+			}
+			catch (EOFException e) {
+				// The index ends with the last written block
+			}
+		}
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		// A crash may leave an indexed block that never reached the file
+		firstTimestamps = Arrays.copyOf(timestamps, (int) Math.min(blocks, channel.size() / TimelineRecorder.BLOCK_SIZE));
+		block = ByteBuffer.allocate(TimelineRecorder.BLOCK_SIZE);
+	}
+	
+	/**
+	 * Gets the wall clock time the recording started at
+	 * @return The start time, in milliseconds since the epoch
+	 */
+	
+	public long getStartMillis() {
+		return startMillis;
+	}
+	
+	/**
+	 * Gets the value of {@link System#nanoTime()} when the recording started.<br>
+	 * An event happened {@code timestamp - getStartNanos()} nanoseconds after {@link #getStartMillis()}
+	 * @return The start timestamp
+	 */
+	
+	public long getStartNanos() {
+		return startNanos;
+	}
+	
+	/**
+	 * Gets the number of blocks in the recording
+	 * @return The blocks count
+	 */
+	
+	public int getBlockCount() {
+		return firstTimestamps.length;
+	}
+	
+	/**
+	 * Finds the block holding the events at a given time
+	 * @param timestamp The time, as given by {@link System#nanoTime()} during the recording
+	 * @return The index of the last block starting at or before the time, 0 if the time comes before the first one
+	 */
+	
+	public int findBlock(final long timestamp) {
+		int low = 0;
+		int high = firstTimestamps.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstTimestamps[middle] <= timestamp) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Passes all the recorded events in a time range to a handler, in the order they happened
+	 * @param from The start of the range, included
+	 * @param to The end of the range, excluded
+	 * @param handler Receives the events
+	 * @throws IOException If the timeline file can't be read
+	 */
+	
+	public void replay(final long from, final long to, final InputQueue.Handler handler) throws IOException {
+		for (int i = findBlock(from); i < firstTimestamps.length && firstTimestamps[i] < to; i++) {
+			block.clear();
+			long position = (long) i * TimelineRecorder.BLOCK_SIZE;
+			while (block.hasRemaining() && channel.read(block, position + block.position()) >= 0);
+			block.flip();
+			long timestamp = block.getLong();
+			int count = block.getShort() & TimelineRecorder.MAX_BLOCK_EVENTS;
+			for (int j = 0; j < count; j++) {
+				timestamp += getVarLong(block);
+				long id = getVarLong(block);
+				if (timestamp >= to) {
+					return;
+				}
+				if (timestamp >= from) {
+					handler.onInput(TYPES[(int) (id >>> 1) & 3], (int) (id >>> 3), (id & 1) != 0, timestamp);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Closes the timeline file
+	 */
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Reads a value written with 7 bits per byte
+	 * @param buffer The source
+	 * @return The value
+	 */
+	
+	private static long getVarLong(final ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = buffer.get();
+			value |= (current & 0x7fL) << shift;
+			shift += 7;
+		}
+		while (current < 0);
+		return value;
+	}
+}
@@ -0,0 +1,376 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.timeline;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Records every key status change of a session to disk, so the overlay can be replayed later.<br>
+ * The events are encoded in fixed-size blocks: each block starts with the timestamp of its first<br>
+ * event and the events count, then every event is the varint time since the previous event and<br>
+ * the varint key id. The game thread fills the blocks of a small ring and a background thread<br>
+ * writes the full ones, together with a sparse index holding the first timestamp of each block.<br>
+ * When the writer falls behind and the ring is full the events are dropped and counted, the game never waits
+ * @author Massimiliano Micol
+ */
+
+public final class TimelineRecorder implements Runnable {
+	
+	/**
+	 * The size of every block in the timeline file, in bytes
+	 */
+	
+	static final int BLOCK_SIZE = 4096;
+	
+	/**
+	 * The size of a block header: the first timestamp and the events count
+	 */
+	
+	static final int BLOCK_HEADER_SIZE = Long.BYTES + Short.BYTES;
+	
+	/**
+	 * The maximum number of events in a block, limited by the header
+	 */
+	
+	static final int MAX_BLOCK_EVENTS = 0xffff;
+	
+	/**
+	 * Identifies the index files
+	 */
+	
+	static final int MAGIC = 0x4b544c4e;
+	
+	/**
+	 * The version of the file format
+	 */
+	
+	static final int VERSION = 1;
+	
+	/**
+	 * The extension of the index file, next to the timeline file
+	 */
+	
+	static final String INDEX_EXTENSION = ".idx";
+	
+	/**
+	 * The maximum size of an encoded event: a varint long and a varint key id
+	 */
+	
+	private static final int MAX_EVENT_SIZE = 10 + 6;
+	
+	/**
+	 * The number of blocks in the ring, a power of two
+	 */
+	
+	private static final int RING_BLOCKS = 16;
+	
+	/**
+	 * How long the writer thread waits when there are no full blocks, in nanoseconds
+	 */
+	
+	private static final long WRITER_PAUSE = TimeUnit.MILLISECONDS.toNanos(50);
+	
+	/**
+	 * The logger used to report the file errors
+	 */
+	
+	private static final Logger LOGGER = LogManager.getLogger();
+	
+	/**
+	 * The timeline file
+	 */
+	
+	private final Path file;
+	
+	/**
+	 * The block ring
+	 */
+	
+	private final ByteBuffer[] blocks;
+	
+	/**
+	 * The number of blocks published by the game thread
+	 */
+	
+	private final AtomicLong head;
+	
+	/**
+	 * The number of blocks written by the writer thread
+	 */
+	
+	private final AtomicLong tail;
+	
+	/**
+	 * The number of events dropped because the ring was full
+	 */
+	
+	private final AtomicLong dropped;
+	
+	/**
+	 * The thread writing the blocks
+	 */
+	
+	private final Thread writer;
+	
+	/**
+	 * Set when the recording ends, the writer thread stops once all the blocks are written
+	 */
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Set when the file can't be written, from then on all the events are dropped
+	 */
+	
+	private volatile boolean failed;
+	
+	/**
+	 * The block being filled by the game thread, or {@code null} if none
+	 */
+	
+	private ByteBuffer current;
+	
+	/**
+	 * The timestamp of the last recorded event
+	 */
+	
+	private long previous;
+	
+	/**
+	 * The number of events in the current block
+	 */
+	
+	private int count;
+	
+	/**
+	 * The class constructor, it starts the writer thread
+	 * @param file The timeline file, its index is written next to it
+	 */
+	
+	public TimelineRecorder(final Path file) {
+		this.file = file;
+		blocks = new ByteBuffer[RING_BLOCKS];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = ByteBuffer.allocate(BLOCK_SIZE);
+		}
+		head = new AtomicLong();
+		tail = new AtomicLong();
+		dropped = new AtomicLong();
+		writer = new Thread(this, "Keystroke timeline writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Starts a new recording in a directory, naming it after the current date.<br>
+	 * The last events are written when the game closes
+	 * @param directory The directory holding the recordings, created if missing
+	 * @return The recorder
+	 */
+	
+	public static TimelineRecorder start(final Path directory) {
+		TimelineRecorder recorder = new TimelineRecorder(directory.resolve("timeline-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".bin"));
+		Runtime.getRuntime().addShutdownHook(new Thread(recorder::close, "Keystroke timeline shutdown"));
+		return recorder;
+	}
+	
+	/**
+	 * Records a key status change, only called by the game thread
+	 * @param type The input type
+	 * @param code The key code, scancode or mouse button, depending on the type
+	 * @param pressed {@code True} if the key has been pressed, {@code False} if it has been released
+	 * @param timestamp When the event arrived, as given by {@link System#nanoTime()}
+	 */
+	
+	public void record(final InputMappings.Type type, final int code, final boolean pressed, final long timestamp) {
+		if (current == null) {
+			final long published = head.get();
+			// The writer is a whole ring behind, losing a few events is better than stalling the game
+			if (failed || published - tail.get() == RING_BLOCKS) {
+				dropped.lazySet(dropped.get() + 1);
+				return;
+			}
+			current = blocks[(int) (published & (RING_BLOCKS - 1))];
+			current.clear();
+			current.putLong(timestamp).putShort((short) 0);
+			previous = timestamp;
+			count = 0;
+		}
+		putVarLong(current, timestamp - previous);
+		putVarLong(current, encode(type, code, pressed));
+		previous = timestamp;
+		if (++count == MAX_BLOCK_EVENTS || current.remaining() < MAX_EVENT_SIZE) {
+			publish();
+		}
+	}
+	
+	/**
+	 * Ends the recording, writing the events of the last block and waiting a moment for the writer to finish.<br>
+	 * It must not run together with {@link #record(InputMappings.Type, int, boolean, long)}, it is called once the game stopped
+	 */
+	
+	public void close() {
+		if (current != null) {
+			publish();
+		}
+		closed = true;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(2));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Gets the number of events dropped because the writer fell behind
+	 * @return The dropped events
+	 */
+	
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/**
+	 * Gets the number of blocks written to the file
+	 * @return The written blocks
+	 */
+	
+	public long getWrittenBlocks() {
+		return tail.get();
+	}
+	
+	/**
+	 * Gets the timeline file
+	 * @return The file path
+	 */
+	
+	public Path getFile() {
+		return file;
+	}
+	
+	/**
+	 * Writes the full blocks until the recording is closed
+	 */
+	
+	@Override
+	public void run() {
+		Path indexFile = file.resolveSibling(file.getFileName() + INDEX_EXTENSION);
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+				// The clock origins let the recording be lined up with a video
+				index.writeInt(MAGIC);
+				index.writeInt(VERSION);
+				index.writeInt(BLOCK_SIZE);
+				index.writeLong(System.currentTimeMillis());
+				index.writeLong(System.nanoTime());
+				boolean last;
+				do {
+					// Read before the head, so the blocks published before closing are always seen
+					last = closed;
+					final long published = head.get();
+					for (long position = tail.get(); position < published; position++) {
+						ByteBuffer block = blocks[(int) (position & (RING_BLOCKS - 1))];
+						// The unused end of the block may hold older events, zeroing it keeps the file clean
+						Arrays.fill(block.array(), block.position(), BLOCK_SIZE, (byte) 0);
+						block.clear();
+						while (block.hasRemaining()) {
+							channel.write(block);
+						}
+						index.writeLong(block.getLong(0));
+						tail.lazySet(position + 1);
+					}
+					index.flush();
+					if (!last) {
+						LockSupport.parkNanos(WRITER_PAUSE);
+					}
+				}
+				while (!last);
+			}
+			LOGGER.info("Keystroke timeline written to {}", file);
+		}
+		catch (IOException e) {
+			LOGGER.error("Could not write the keystroke timeline to {}", file, e);
+			failed = true;
+		}
+	}
+	
+	/**
+	 * Marks the current block as full, giving it to the writer thread
+	 */
+	
+	private void publish() {
+		current.putShort(Long.BYTES, (short) count);
+		head.lazySet(head.get() + 1);
+		current = null;
+	}
+	
+	/**
+	 * Packs an event into a key id
+	 * @param type The input type
+	 * @param code The key code, scancode or mouse button, depending on the type
+	 * @param pressed The key status
+	 * @return The key id: the code, then two bits for the type and one for the status
+	 */
+	
+	static long encode(final InputMappings.Type type, final int code, final boolean pressed) {
+		return (code & 0xffffffffL) << 3 | type.ordinal() << 1 | (pressed ? 1 : 0);
+	}
+	
+	/**
+	 * Writes a value with 7 bits per byte, the highest bit telling whether more bytes follow
+	 * @param buffer The destination
+	 * @param value The value, treated as unsigned
+	 */
+	
+	private static void putVarLong(final ByteBuffer buffer, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyLabelCache;
+import it.tristana.keystroke.keys.KeyLayout;
+import it.tristana.keystroke.keys.KeyMouse;
+import it.tristana.keystroke.keys.KeyNameLookup;
+import it.tristana.keystroke.render.HeadlessRenderer;
+import it.tristana.keystroke.stats.KeyStatistics;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Checks that drawing the default layout doesn't allocate once the JVM warmed up
+ * @author Massimiliano Micol
+ */
+
+class FrameAllocationTest {
+	
+	/**
+	 * The frames drawn before measuring, enough for the JIT to compile the render path
+	 */
+	
+	private static final int WARMUP_FRAMES = 20_000;
+	
+	/**
+	 * The measured frames
+	 */
+	
+	private static final int FRAMES = 10_000;
+	
+	/**
+	 * The time between two frames, 300 FPS
+	 */
+	
+	private static final long FRAME_TIME = 1_000_000_000L / 300;
+	
+	/**
+	 * The frames between two clicks, about 20 CPS
+	 */
+	
+	private static final int CLICK_FRAMES = 15;
+	
+	/**
+	 * The time a press is shown at least, as configured by default
+	 */
+	
+	private static final long MIN_PRESS_TIME = 50_000_000L;
+	
+	/**
+	 * The keys of the default layout
+	 */
+	
+	private Key[] keys;
+	
+	/**
+	 * The geometry of the keys
+	 */
+	
+	private KeyLayout layout;
+	
+	/**
+	 * The renderer drawing into memory
+	 */
+	
+	private HeadlessRenderer renderer;
+	
+	/**
+	 * The time of the current frame
+	 */
+	
+	private long now;
+	
+	/**
+	 * The number of drawn frames
+	 */
+	
+	private int frame;
+	
+	/**
+	 * Names the letter keys without asking GLFW, which is never initialised in the tests
+	 */
+	
+	@BeforeEach
+	void useFixedLabels() {
+		KeyLabelCache.getInstance().setLookup(code -> code >= GLFW.GLFW_KEY_A && code <= GLFW.GLFW_KEY_Z ? String.valueOf((char) code) : null);
+	}
+	
+	/**
+	 * Resolves the key labels through GLFW again, as the game does
+	 */
+	
+	@AfterEach
+	void restoreLabels() {
+		KeyLabelCache.getInstance().setLookup(KeyNameLookup.GLFW_LOOKUP);
+	}
+	
+	@Test
+	void steadyStateFramesDoNotAllocate(@TempDir final Path directory) {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "The JVM can't measure the allocations");
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported(), "The JVM can't measure the allocations");
+		threads.setThreadAllocatedMemoryEnabled(true);
+		KeyBinding[] available = {
+			new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"),
+			new KeyBinding("key.back", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S, "key.categories.movement"),
+			new KeyBinding("key.left", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A, "key.categories.movement"),
+			new KeyBinding("key.right", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_D, "key.categories.movement"),
+			new KeyBinding("key.attack", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, "key.categories.gameplay"),
+			new KeyBinding("key.use", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_RIGHT, "key.categories.gameplay"),
+			new KeyBinding("key.jump", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_SPACE, "key.categories.movement")
+		};
+		LoadedLayout loaded = new LoadedLayout(LayoutSpec.parse(LayoutSpec.defaultLines(16.0 / 9)), available, new KeyStatistics(directory.resolve("statistics.dat")), 5);
+		keys = loaded.keys;
+		layout = loaded.layout;
+		renderer = new HeadlessRenderer(480, 270);
+		now = 1_000_000_000L;
+		for (int i = 0; i < WARMUP_FRAMES; i++) {
+			frame();
+		}
+		final long id = Thread.currentThread().getId();
+		// Reading the counter may allocate by itself, so an empty measure is subtracted
+		long before = threads.getThreadAllocatedBytes(id);
+		final long overhead = threads.getThreadAllocatedBytes(id) - before;
+		before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < FRAMES; i++) {
+			frame();
+		}
+		final long allocated = threads.getThreadAllocatedBytes(id) - before - overhead;
+		assertEquals(0, allocated / FRAMES, "Bytes allocated per frame, " + allocated + " in " + FRAMES + " frames");
+	}
+	
+	/**
+	 * Draws a frame as the game does, with the mouse keys clicked and the movement keys pressed over time
+	 */
+	
+	private void frame() {
+		now += FRAME_TIME;
+		frame++;
+		// Clicks both mouse buttons and alternates the movement keys, so the labels and the graph change
+		final boolean click = frame % CLICK_FRAMES == 0;
+		final boolean strafe = frame / 60 % 2 == 0;
+		for (int i = 0; i < keys.length; i++) {
+			Key key = keys[i];
+			if (key instanceof KeyMouse) {
+				key.setKeyDown(click, now - FRAME_TIME / 2);
+			}
+			else if (i < 4) {
+				key.setKeyDown(strafe == (i % 2 == 0), now - FRAME_TIME / 2);
+			}
+			key.beginFrame(now, MIN_PRESS_TIME);
+			key.animate(0.1f, 0.05f);
+		}
+		renderer.clear(0);
+		layout.resolve(renderer.getWidth(), renderer.getHeight(), 2);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].drawBackground(renderer, layout, i);
+		}
+		renderer.flush();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].draw(renderer, layout, i);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyMouse;
+import it.tristana.keystroke.stats.KeyCounters;
+import it.tristana.keystroke.stats.KeyStatistics;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Checks that the corrections of the reconciler change the keys status without counting presses or clicks
+ * @author Massimiliano Micol
+ */
+
+class KeyIndexTest {
+	
+	/**
+	 * The number of nanoseconds in a millisecond
+	 */
+	
+	private static final long MILLI = 1_000_000L;
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	void correctionsAreNotPresses() {
+		KeyStatistics statistics = new KeyStatistics(directory.resolve("statistics.bin"));
+		Key forward = new Key(0, 0, 5, 5, new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"), null);
+		KeyMouse attack = new KeyMouse(0, 5, 5, 5, new KeyBinding("key.attack", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, "key.categories.gameplay"), null);
+		KeyCounters counters = statistics.getCounters(InputMappings.Type.KEYSYM.ordinal(), GLFW.GLFW_KEY_W);
+		forward.setCounters(counters);
+		KeyIndex index = new KeyIndex(new Key[] {forward, attack});
+		final long now = 1_000 * MILLI;
+		// The press events were lost, the reconciler found both keys held
+		index.correct(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, true, now);
+		index.correct(InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, true, now);
+		assertTrue(forward.isKeyDown());
+		assertTrue(attack.isKeyDown());
+		assertEquals(0, counters.getSessionPresses());
+		assertEquals(0, attack.getClickCount());
+		forward.beginFrame(now, 50 * MILLI);
+		attack.beginFrame(now, 50 * MILLI);
+		assertTrue(forward.isShownDown());
+		assertEquals(0, forward.getLatchedPresses() + attack.getLatchedPresses());
+	}
+	
+	@Test
+	void correctedReleaseClosesTheHold() {
+		KeyStatistics statistics = new KeyStatistics(directory.resolve("statistics.bin"));
+		Key forward = new Key(0, 0, 5, 5, new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"), null);
+		KeyCounters counters = statistics.getCounters(InputMappings.Type.KEYSYM.ordinal(), GLFW.GLFW_KEY_W);
+		forward.setCounters(counters);
+		KeyIndex index = new KeyIndex(new Key[] {forward});
+		index.dispatch(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, true, 1_000 * MILLI);
+		// The release event was lost
+		index.correct(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, false, 1_300 * MILLI);
+		assertFalse(forward.isKeyDown());
+		assertEquals(1, counters.getSessionPresses());
+		assertEquals(300 * MILLI, counters.getSessionHoldTime());
+		// The next real press is counted as usual
+		index.dispatch(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, true, 2_000 * MILLI);
+		assertEquals(2, counters.getSessionPresses());
+	}
+}
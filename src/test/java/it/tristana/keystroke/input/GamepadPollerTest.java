@@ -0,0 +1,90 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.input;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import it.tristana.keystroke.keys.KeyGamepad;
+
+/**
+ * Checks the hysteresis of the triggers read as buttons
+ * @author Massimiliano Micol
+ */
+
+class GamepadPollerTest {
+	
+	@Test
+	void releasedTriggerPressesAboveThePressThreshold() {
+		assertFalse(GamepadPoller.isTriggerPressed(-1f, false));
+		assertFalse(GamepadPoller.isTriggerPressed(GamepadPoller.TRIGGER_RELEASE, false));
+		assertFalse(GamepadPoller.isTriggerPressed(Math.nextDown(GamepadPoller.TRIGGER_PRESS), false));
+		assertFalse(GamepadPoller.isTriggerPressed(GamepadPoller.TRIGGER_PRESS, false));
+		assertTrue(GamepadPoller.isTriggerPressed(Math.nextUp(GamepadPoller.TRIGGER_PRESS), false));
+		assertTrue(GamepadPoller.isTriggerPressed(1f, false));
+	}
+	
+	@Test
+	void pressedTriggerReleasesBelowTheReleaseThreshold() {
+		assertTrue(GamepadPoller.isTriggerPressed(1f, true));
+		assertTrue(GamepadPoller.isTriggerPressed(GamepadPoller.TRIGGER_PRESS, true));
+		assertTrue(GamepadPoller.isTriggerPressed(Math.nextUp(GamepadPoller.TRIGGER_RELEASE), true));
+		assertFalse(GamepadPoller.isTriggerPressed(GamepadPoller.TRIGGER_RELEASE, true));
+		assertFalse(GamepadPoller.isTriggerPressed(-1f, true));
+	}
+	
+	@Test
+	void halfPressedTriggerDoesNotFlicker() {
+		// A trigger wobbling around the press threshold switches once, and back only well below it
+		float[] values = {-1f, -0.2f, 0.05f, -0.05f, 0.02f, -0.3f, -0.1f, -0.45f, -0.1f, 0.01f};
+		boolean[] expected = {false, false, true, true, true, true, true, false, false, true};
+		boolean pressed = false;
+		int switches = 0;
+		for (int i = 0; i < values.length; i++) {
+			boolean next = GamepadPoller.isTriggerPressed(values[i], pressed);
+			assertEquals(expected[i], next, "value " + values[i]);
+			if (next != pressed) {
+				switches++;
+			}
+			pressed = next;
+		}
+		assertEquals(3, switches);
+	}
+	
+	@Test
+	void triggersAreNamedButtonsAfterTheGamepadOnes() {
+		assertEquals(GamepadPoller.LEFT_TRIGGER, GamepadPoller.findButton("lt"));
+		assertEquals(GamepadPoller.RIGHT_TRIGGER, GamepadPoller.findButton("RT"));
+		assertEquals("LT", GamepadPoller.getLabel(GamepadPoller.LEFT_TRIGGER));
+		assertEquals(GamepadPoller.BUTTONS, GamepadPoller.RIGHT_TRIGGER + 1);
+		assertEquals(-1, GamepadPoller.findButton("trigger"));
+		KeyGamepad key = new KeyGamepad(0, 0, 0.1, 0.1, GamepadPoller.findButton("rt"), "RT");
+		assertEquals(GamepadPoller.RIGHT_TRIGGER, key.getButton());
+	}
+}
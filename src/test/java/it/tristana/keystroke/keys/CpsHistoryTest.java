@@ -0,0 +1,134 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the ring of closed buckets wraps keeping the oldest first
+ * @author Massimiliano Micol
+ */
+
+class CpsHistoryTest {
+	
+	/**
+	 * The start of the first bucket, away from 0 to exercise the ring offsets
+	 */
+	
+	private static final long START = 1_003 * CpsHistory.BUCKET_LENGTH;
+	
+	/**
+	 * The number of buckets in the one second window
+	 */
+	
+	private static final int WINDOW = 20;
+	
+	@Test
+	void ringWrapsOldestFirst() {
+		CpsHistory history = new CpsHistory(1);
+		final int capacity = history.capacity();
+		assertEquals(WINDOW, capacity);
+		// Three and a half laps of the ring, with a different click count in every bucket
+		final int buckets = capacity * 3 + capacity / 2;
+		int[] clicks = new int[buckets];
+		int revision = history.getRevision();
+		for (int b = 0; b < buckets; b++) {
+			clicks[b] = b * 7 % 5;
+			long time = START + b * CpsHistory.BUCKET_LENGTH;
+			boolean closed = history.advance(time);
+			assertEquals(b > 0, closed);
+			for (int i = 0; i < clicks[b]; i++) {
+				history.click(time + i);
+			}
+			// Bucket b is open: the buckets before it are closed
+			assertEquals(Math.min(b, capacity), history.size());
+			for (int i = 0; i < history.size(); i++) {
+				assertEquals(expected(clicks, b - history.size() + i), history.getCps(i), "bucket " + b + ", index " + i);
+			}
+			if (closed) {
+				assertEquals(revision + 1, history.getRevision());
+			}
+			revision = history.getRevision();
+		}
+		// The same bucket again closes nothing
+		assertFalse(history.advance(START + (buckets - 1) * CpsHistory.BUCKET_LENGTH + 1));
+	}
+	
+	@Test
+	void skippedBucketsCloseInOrder() {
+		CpsHistory history = new CpsHistory(1);
+		history.click(START);
+		history.click(START + 1);
+		// Three buckets close at once, the first with both clicks still in the window
+		assertTrue(history.advance(START + 3 * CpsHistory.BUCKET_LENGTH));
+		assertEquals(3, history.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(2, history.getCps(i));
+		}
+		// Once the clicks leave the window the later buckets drop to 0
+		assertTrue(history.advance(START + (WINDOW + 2) * CpsHistory.BUCKET_LENGTH));
+		assertEquals(WINDOW, history.size());
+		assertEquals(2, history.getCps(0));
+		assertEquals(0, history.getCps(WINDOW - 1));
+	}
+	
+	@Test
+	void longPauseEmptiesTheHistory() {
+		CpsHistory history = new CpsHistory(1);
+		for (int i = 0; i < 10; i++) {
+			history.click(START + i * CpsHistory.BUCKET_LENGTH);
+		}
+		assertTrue(history.advance(START + 100 * CpsHistory.BUCKET_LENGTH));
+		assertEquals(history.capacity(), history.size());
+		for (int i = 0; i < history.size(); i++) {
+			assertEquals(0, history.getCps(i));
+		}
+		// The window restarts from the new bucket
+		history.click(START + 100 * CpsHistory.BUCKET_LENGTH);
+		history.advance(START + 101 * CpsHistory.BUCKET_LENGTH);
+		assertEquals(1, history.getCps(history.size() - 1));
+		assertEquals(0, history.getCps(history.size() - 2));
+	}
+	
+	/**
+	 * Computes the CPS a bucket should have when it closes
+	 * @param clicks The clicks of every bucket
+	 * @param bucket The closed bucket
+	 * @return The clicks of the bucket and of the ones before it in the window
+	 */
+	
+	private static int expected(final int[] clicks, final int bucket) {
+		int sum = 0;
+		for (int b = Math.max(0, bucket - WINDOW + 1); b <= bucket; b++) {
+			sum += clicks[b];
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.keys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the easing tables and the color blending the animations read them with
+ * @author Massimiliano Micol
+ */
+
+class EasingTest {
+	
+	/**
+	 * Colors with each component at an extreme, and mixed ones
+	 */
+	
+	private static final int[] COLORS = {0x00000000, 0xffffffff, 0xff000000, 0x00ff0000, 0x0000ff00, 0x000000ff, 0x00ff00ff, 0xff00ff00, Key.BUTTON_UP_COLOR, Key.BUTTON_DOWN_COLOR, 0x80402010, 0x7f01fe33};
+	
+	@Test
+	void tableEndpointsAreExact() {
+		assertEquals(0, Easing.easeOut(0));
+		assertEquals(Easing.STEPS, Easing.easeOut(Easing.STEPS));
+		assertEquals(0, Easing.easeInOut(0));
+		assertEquals(Easing.STEPS, Easing.easeInOut(Easing.STEPS));
+		assertEquals(Easing.STEPS / 2, Easing.easeInOut(Easing.STEPS / 2));
+	}
+	
+	@Test
+	void tablesNeverGoBack() {
+		for (int i = 1; i <= Easing.STEPS; i++) {
+			assertTrue(Easing.easeOut(i) >= Easing.easeOut(i - 1), "ease out step " + i);
+			assertTrue(Easing.easeInOut(i) >= Easing.easeInOut(i - 1), "ease in out step " + i);
+			// Ease out is ahead of a linear animation, ease in and out behind it in the first half only
+			assertTrue(Easing.easeOut(i) >= i, "ease out step " + i);
+			assertTrue(i > Easing.STEPS / 2 || Easing.easeInOut(i) <= i, "ease in out step " + i);
+		}
+	}
+	
+	@Test
+	void lerpEndpointsAreTheColors() {
+		for (int from : COLORS) {
+			for (int to : COLORS) {
+				assertEquals(from, Key.lerpARGB(from, to, 0));
+				assertEquals(to, Key.lerpARGB(from, to, Easing.STEPS));
+			}
+		}
+	}
+	
+	@Test
+	void lerpBlendsEveryComponent() {
+		Random random = new Random(0x6b657973L);
+		for (int i = 0; i < 2_000; i++) {
+			int from = i < COLORS.length ? COLORS[i] : random.nextInt();
+			int to = random.nextInt();
+			for (int weight = 0; weight <= Easing.STEPS; weight++) {
+				assertEquals(expected(from, to, weight), Key.lerpARGB(from, to, weight), "weight " + weight);
+			}
+		}
+	}
+	
+	@Test
+	void lerpKeepsComponentsApart() {
+		// A full component blended with an empty one must not carry into its neighbours
+		for (int shift = 0; shift < 32; shift += 8) {
+			int component = 0xff << shift;
+			for (int weight = 0; weight <= Easing.STEPS; weight++) {
+				int blended = Key.lerpARGB(component, 0, weight);
+				assertEquals(0, blended & ~component, "shift " + shift + ", weight " + weight);
+				assertEquals(0xff * (Easing.STEPS - weight) >>> 8, blended >>> shift & 0xff);
+			}
+		}
+	}
+	
+	/**
+	 * Blends two colors one component at a time
+	 * @param from The color at weight 0
+	 * @param to The color at weight {@link Easing#STEPS}
+	 * @param weight How much of the second color is used
+	 * @return The blended color
+	 */
+	
+	private static int expected(final int from, final int to, final int weight) {
+		int color = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int a = from >>> shift & 0xff;
+			int b = to >>> shift & 0xff;
+			color |= (a * (Easing.STEPS - weight) + b * weight) / Easing.STEPS << shift;
+		}
+		return color;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the clicks of different mouse buttons are tracked apart, as the overlay counts them
+ * @author Massimiliano Micol
+ */
+
+class ClickAggregatorTest {
+	
+	/**
+	 * The tracked player
+	 */
+	
+	private static final int PLAYER = 42;
+	
+	/**
+	 * The number of nanoseconds in a millisecond
+	 */
+	
+	private static final long MILLI = 1_000_000L;
+	
+	/**
+	 * The time between two clicks of the same button
+	 */
+	
+	private static final long INTERVAL = 100 * MILLI;
+	
+	@Test
+	void interleavedButtonsKeepTheirOwnIntervals() {
+		ClickAggregator aggregator = new ClickAggregator(1);
+		final long start = 1_000 * MILLI;
+		// Left and right alternate every 50 ms, each button clicks every 100 ms
+		for (int i = 0; i < 30; i++) {
+			aggregator.click(PLAYER, 0, start + i * INTERVAL);
+			aggregator.click(PLAYER, 1, start + i * INTERVAL + INTERVAL / 2);
+		}
+		final long now = start + 30 * INTERVAL;
+		assertEquals(10, aggregator.getCps(PLAYER, 0, now));
+		assertEquals(10, aggregator.getCps(PLAYER, 1, now));
+		assertEquals(20, aggregator.getCps(PLAYER, now));
+		assertEquals(100, aggregator.getIntervalMean(PLAYER, 0), 1e-9);
+		assertEquals(100, aggregator.getIntervalMean(PLAYER, 1), 1e-9);
+		assertEquals(0, aggregator.getIntervalDeviation(PLAYER, 1), 1e-9);
+		assertEquals(2, aggregator.size());
+	}
+	
+	@Test
+	void stateClicksGoToTheirButtons() {
+		ClickAggregator aggregator = new ClickAggregator(1);
+		final long now = 2_000 * MILLI;
+		// The last second: left at 0, 100, ..., 900 ms and right 50 ms after each of them
+		ByteBuffer payload = ByteBuffer.allocate(KeyStateCodec.MAX_PAYLOAD_SIZE);
+		payload.put((byte) KeyStateCodec.CLICKS_FLAG).put((byte) 2);
+		for (int button = 0; button < 2; button++) {
+			KeyStateCodec.putVarLong(payload, 10);
+			for (int i = 0; i < 10; i++) {
+				final long age = 1_000 * MILLI - (i * INTERVAL + button * INTERVAL / 2);
+				KeyStateCodec.putVarLong(payload, age / 1000);
+			}
+		}
+		payload.flip();
+		assertTrue(aggregator.onState(PLAYER, payload, now));
+		assertEquals(0, payload.position(), "The payload is left unchanged");
+		assertEquals(10, aggregator.getCps(PLAYER, 0, now));
+		assertEquals(10, aggregator.getCps(PLAYER, 1, now - 1));
+		// Mixed in a single list, the right clicks would have been pushed after the last left one
+		assertEquals(100, aggregator.getIntervalMean(PLAYER, 0), 1e-9);
+		assertEquals(100, aggregator.getIntervalMean(PLAYER, 1), 1e-9);
+		long[] histogram = new long[ClickAggregator.INTERVAL_BUCKETS];
+		aggregator.copyIntervalHistogram(PLAYER, 1, histogram);
+		assertEquals(9, histogram[7]);
+	}
+	
+	@Test
+	void stateWithoutClicksAddsNothing() {
+		ClickAggregator aggregator = new ClickAggregator(1);
+		ByteBuffer payload = ByteBuffer.allocate(KeyStateCodec.MAX_PAYLOAD_SIZE);
+		KeyStateCodec.writeState(payload, KeyStateCodec.KEYS_FLAG, 5, new int[KeyStateCodec.MAX_MICE], 0, 0);
+		payload.flip();
+		// Nothing to undo if the player left meanwhile
+		assertFalse(aggregator.onState(PLAYER, payload, 0));
+		assertEquals(0, aggregator.size());
+	}
+	
+	@Test
+	void regularButtonIsFlaggedOnce() {
+		ClickAggregator aggregator = new ClickAggregator(4);
+		long timestamp = 0;
+		for (int i = 0; i < 200; i++) {
+			timestamp += 80 * MILLI;
+			aggregator.click(PLAYER, 1, timestamp);
+			// A human left hand, much less regular
+			aggregator.click(PLAYER, 0, timestamp + (i % 3) * 30 * MILLI);
+		}
+		assertTrue(aggregator.isSuspicious(PLAYER, 1, timestamp));
+		assertFalse(aggregator.isSuspicious(PLAYER, 0, timestamp));
+		assertEquals(1, aggregator.checkSuspicious(PLAYER, timestamp));
+		assertEquals(-1, aggregator.checkSuspicious(PLAYER, timestamp));
+		aggregator.remove(PLAYER);
+		assertEquals(0, aggregator.size());
+		assertEquals(0, aggregator.getCps(PLAYER, timestamp));
+	}
+}
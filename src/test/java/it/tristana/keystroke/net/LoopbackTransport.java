@@ -0,0 +1,89 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A transport handing every payload straight to a receiver in the same process,<br>
+ * so a {@link KeyStateSender}, a {@link SpectatorRelay} and a {@link SpectatorView} can be run together without a server
+ * @author Massimiliano Micol
+ */
+
+final class LoopbackTransport implements Transport {
+	
+	/**
+	 * Receives the payloads sent through a {@link LoopbackTransport}
+	 */
+	
+	@FunctionalInterface
+	interface Receiver {
+		
+		/**
+		 * Called for each sent payload, on the sending thread
+		 * @param connection The connection the payload was sent to
+		 * @param payload The payload, only valid during the call
+		 */
+		
+		void receive(int connection, ByteBuffer payload);
+	}
+	
+	/**
+	 * Receives the payloads
+	 */
+	
+	private final Receiver receiver;
+	
+	/**
+	 * The total number of sent bytes
+	 */
+	
+	private long sentBytes;
+	
+	/**
+	 * The class constructor
+	 * @param receiver Receives the payloads
+	 */
+	
+	LoopbackTransport(final Receiver receiver) {
+		this.receiver = receiver;
+	}
+	
+	@Override
+	public void send(final int connection, final ByteBuffer payload) {
+		sentBytes += payload.remaining();
+		receiver.receive(connection, payload);
+	}
+	
+	/**
+	 * Gets the number of bytes sent through this transport
+	 * @return The sent bytes
+	 */
+	
+	long getSentBytes() {
+		return sentBytes;
+	}
+}
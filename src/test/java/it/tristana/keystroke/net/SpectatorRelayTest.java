@@ -0,0 +1,373 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package it.tristana.keystroke.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyMouse;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Runs the senders of many players, the relay and the views of a few spectators in the same process,<br>
+ * connected by {@link LoopbackTransport}s: the views must converge to the players keys within the spectators budget
+ * @author Massimiliano Micol
+ */
+
+class SpectatorRelayTest {
+	
+	/**
+	 * The number of nanoseconds in a second
+	 */
+	
+	private static final long SECOND = 1_000_000_000L;
+	
+	/**
+	 * The time between two ticks
+	 */
+	
+	private static final long TICK = SECOND / 20;
+	
+	/**
+	 * The bytes each spectator may receive per second
+	 */
+	
+	private static final int BYTES_PER_SECOND = 2_048;
+	
+	/**
+	 * The states each player may send per second, more than a state per tick
+	 */
+	
+	private static final int STATES_PER_SECOND = 25;
+	
+	/**
+	 * The entity id of the first spectator, far from the players ones
+	 */
+	
+	private static final int FIRST_SPECTATOR = 10_000;
+	
+	/**
+	 * The bindings shared by the keys of every player
+	 */
+	
+	private static final KeyBinding[] BINDINGS = {
+		new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"),
+		new KeyBinding("key.back", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S, "key.categories.movement"),
+		new KeyBinding("key.left", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A, "key.categories.movement"),
+		new KeyBinding("key.right", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_D, "key.categories.movement"),
+		new KeyBinding("key.jump", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_SPACE, "key.categories.movement"),
+		new KeyBinding("key.attack", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, "key.categories.gameplay"),
+		new KeyBinding("key.use", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_RIGHT, "key.categories.gameplay")
+	};
+	
+	/**
+	 * The index of the first mouse binding, the following ones are mouse keys as well
+	 */
+	
+	private static final int FIRST_MOUSE = 5;
+	
+	/**
+	 * A client: its keys and the sender connected to the relay
+	 */
+	
+	private final class Player {
+		
+		/**
+		 * The player entity id
+		 */
+		
+		final int id;
+		
+		/**
+		 * The player keys, in the layout order
+		 */
+		
+		final Key[] keys;
+		
+		/**
+		 * Sends the keys state to the relay
+		 */
+		
+		final KeyStateSender sender;
+		
+		/**
+		 * The connection to the relay
+		 */
+		
+		final LoopbackTransport toServer;
+		
+		/**
+		 * The class constructor
+		 * @param id The player entity id
+		 */
+		
+		Player(final int id) {
+			this.id = id;
+			keys = new Key[BINDINGS.length];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = i < FIRST_MOUSE ? new Key(0, 0, 0.1, 0.1, BINDINGS[i], null) : new KeyMouse(0, 0, 0.1, 0.1, BINDINGS[i], null);
+			}
+			sender = new KeyStateSender();
+			toServer = new LoopbackTransport((connection, payload) -> relay.onState(id, payload, now));
+		}
+		
+		/**
+		 * Latches the keys as a frame would, and sends their state as a tick would
+		 */
+		
+		void tick() {
+			for (Key key : keys) {
+				key.beginFrame(now, 0);
+			}
+			sender.tick(keys, toServer);
+		}
+		
+		/**
+		 * Gets the state the spectators should see
+		 * @return The pressed keys bitset
+		 */
+		
+		long getPressed() {
+			long pressed = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i].isLocalShownDown()) {
+					pressed |= 1L << i;
+				}
+			}
+			return pressed;
+		}
+	}
+	
+	/**
+	 * The relay under test
+	 */
+	
+	private SpectatorRelay relay;
+	
+	/**
+	 * The spectator views, indexed by spectator
+	 */
+	
+	private SpectatorView[] views;
+	
+	/**
+	 * The bytes received by each spectator
+	 */
+	
+	private long[] received;
+	
+	/**
+	 * The entity ids of the spectators
+	 */
+	
+	private int[] spectatorIds;
+	
+	/**
+	 * The connection from the relay to the spectators
+	 */
+	
+	private LoopbackTransport toSpectators;
+	
+	/**
+	 * The current time. It runs an hour ahead of {@link System#nanoTime()},<br>
+	 * so the clicks never leave the one second CPS window and the sent CPS only depend on the clicks
+	 */
+	
+	private long now = System.nanoTime() + 3_600 * SECOND;
+	
+	@Test
+	void viewsConvergeWithinTheBudget() {
+		connect(new SpectatorRelay(BYTES_PER_SECOND, STATES_PER_SECOND), 3);
+		Player[] players = new Player[200];
+		for (int i = 0; i < players.length; i++) {
+			players[i] = new Player(i + 1);
+		}
+		final long start = now;
+		Random random = new Random(0x72656c6179L);
+		// 30 seconds of players pressing and releasing their keys
+		for (int tick = 0; tick < 30 * 20; tick++) {
+			for (Player player : players) {
+				if (random.nextInt(4) == 0) {
+					Key key = player.keys[random.nextInt(player.keys.length)];
+					key.setKeyDown(!key.isKeyDown(), now);
+				}
+				player.tick();
+			}
+			relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+			assertWithinBudget(now - start);
+			now += TICK;
+		}
+		// More changes than the budget allows, so the relay used almost all of it
+		assertEquals(0, relay.getDroppedStates());
+		assertTrue(toSpectators.getSentBytes() > spectatorIds.length * BYTES_PER_SECOND * 27L, "sent " + toSpectators.getSentBytes());
+		// Once the players stop, every view catches up
+		int settleTicks = 0;
+		while (!converged(players)) {
+			assertTrue(++settleTicks <= 5 * 20, "the views did not converge");
+			for (Player player : players) {
+				player.tick();
+			}
+			relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+			assertWithinBudget(now - start);
+			now += TICK;
+		}
+		assertEquals(players.length, relay.getPlayers());
+	}
+	
+	@Test
+	void statesOverTheRateAreDropped() {
+		connect(new SpectatorRelay(BYTES_PER_SECOND, STATES_PER_SECOND), 1);
+		Player player = new Player(7);
+		// Twice the allowed states at once, each one pressing a different set of keys
+		for (int state = 1; state <= STATES_PER_SECOND * 2; state++) {
+			press(player, state);
+			player.tick();
+		}
+		assertEquals(STATES_PER_SECOND, relay.getDroppedStates());
+		relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+		// The view shows the last accepted state, not the last sent one
+		final int index = views[0].find(player.id);
+		assertEquals(STATES_PER_SECOND, views[0].getKeys(index));
+		// A second later a state fits again
+		now += SECOND;
+		press(player, 1);
+		player.tick();
+		assertEquals(STATES_PER_SECOND, relay.getDroppedStates());
+		relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+		assertEquals(1, views[0].getKeys(index));
+	}
+	
+	@Test
+	void removedPlayersFreeTheirSlot() {
+		connect(new SpectatorRelay(BYTES_PER_SECOND, STATES_PER_SECOND), 2);
+		Player player = new Player(7);
+		press(player, 3);
+		player.tick();
+		relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+		for (SpectatorView view : views) {
+			assertEquals(3, view.getKeys(view.find(player.id)));
+		}
+		assertEquals(1, relay.getPlayers());
+		relay.removePlayer(player.id);
+		// The slot is kept until the spectators have been told
+		assertEquals(1, relay.getPlayers());
+		now += TICK;
+		relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+		for (SpectatorView view : views) {
+			assertEquals(-1, view.find(player.id));
+			assertEquals(0, view.getPlayers());
+		}
+		assertEquals(0, relay.getPlayers());
+		// A new player takes the freed slot, and the spectators see it as a new player
+		Player next = new Player(8);
+		press(next, 5);
+		next.tick();
+		now += TICK;
+		relay.tick(now, spectatorIds, spectatorIds.length, toSpectators);
+		assertEquals(1, relay.getPlayers());
+		for (SpectatorView view : views) {
+			assertEquals(1, view.getPlayers());
+			assertEquals(5, view.getKeys(view.find(next.id)));
+		}
+	}
+	
+	/**
+	 * Creates the relay and the spectators connected to it
+	 * @param relay The relay
+	 * @param spectators The number of spectators
+	 */
+	
+	private void connect(final SpectatorRelay relay, final int spectators) {
+		this.relay = relay;
+		views = new SpectatorView[spectators];
+		received = new long[spectators];
+		spectatorIds = new int[spectators];
+		for (int i = 0; i < spectators; i++) {
+			views[i] = new SpectatorView();
+			spectatorIds[i] = FIRST_SPECTATOR + i;
+		}
+		toSpectators = new LoopbackTransport((connection, payload) -> {
+			final int spectator = connection - FIRST_SPECTATOR;
+			received[spectator] += payload.remaining();
+			assertTrue(views[spectator].apply(payload));
+		});
+	}
+	
+	/**
+	 * Checks that no spectator received more than its budget
+	 * @param elapsed The time since the spectators connected
+	 */
+	
+	private void assertWithinBudget(final long elapsed) {
+		final double budget = relay.getBurstBytes() + (double) BYTES_PER_SECOND * elapsed / SECOND;
+		for (int i = 0; i < received.length; i++) {
+			assertTrue(received[i] <= budget, "spectator " + i + " received " + received[i] + " bytes, more than " + budget);
+		}
+	}
+	
+	/**
+	 * Checks whether every view shows the current keys and CPS of every player
+	 * @param players The players
+	 * @return {@code True} if all the views are up to date, {@code False} othewhise
+	 */
+	
+	private boolean converged(final Player[] players) {
+		for (SpectatorView view : views) {
+			for (Player player : players) {
+				final int index = view.find(player.id);
+				if (index < 0 || view.getKeys(index) != player.getPressed() || view.getMice(index) != BINDINGS.length - FIRST_MOUSE) {
+					return false;
+				}
+				for (int mouse = 0; mouse < BINDINGS.length - FIRST_MOUSE; mouse++) {
+					if (view.getCps(index, mouse) != ((KeyMouse) player.keys[FIRST_MOUSE + mouse]).getCps()) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Presses exactly the keys of a bitset, releasing the others
+	 * @param player The player
+	 * @param pressed The keys to press
+	 */
+	
+	private void press(final Player player, final long pressed) {
+		for (int i = 0; i < player.keys.length; i++) {
+			player.keys[i].setKeyDown((pressed >>> i & 1) != 0, now);
+		}
+	}
+}
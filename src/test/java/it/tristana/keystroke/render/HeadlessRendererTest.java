@@ -0,0 +1,184 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.config.LayoutSpec;
+import it.tristana.keystroke.keys.CpsHistory;
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyLabelCache;
+import it.tristana.keystroke.keys.KeyLayout;
+import it.tristana.keystroke.keys.KeyMouse;
+import it.tristana.keystroke.keys.KeyNameLookup;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Compares the overlay drawn by the {@link HeadlessRenderer} with reference images checked in with the tests.<br>
+ * The placeholder font draws every character as the same box, so the text in the references is meaningless:<br>
+ * they check where the labels go and how big they are, not what they say.<br>
+ * Run with {@code -Dkeystroke.updateGolden=true} to write the references again after an intended change
+ * @author Massimiliano Micol
+ */
+
+class HeadlessRendererTest {
+	
+	/**
+	 * The directory of the reference images, in the test resources
+	 */
+	
+	private static final String GOLDEN_DIRECTORY = "golden/";
+	
+	/**
+	 * Whether the references are written instead of compared
+	 */
+	
+	private static final boolean UPDATE = Boolean.getBoolean("keystroke.updateGolden");
+	
+	/**
+	 * The time of the drawn frame, any fixed value works
+	 */
+	
+	private static final long NOW = 10_000_000_000L;
+	
+	/**
+	 * Names the letter keys as a US keyboard would, without asking GLFW: the labels must not depend on the platform
+	 */
+	
+	private static final KeyNameLookup US_LETTERS = code -> code >= GLFW.GLFW_KEY_A && code <= GLFW.GLFW_KEY_Z ? String.valueOf((char) code) : null;
+	
+	/**
+	 * Resolves the key labels through {@link #US_LETTERS}
+	 */
+	
+	@BeforeEach
+	void useFixedLabels() {
+		KeyLabelCache.getInstance().setLookup(US_LETTERS);
+	}
+	
+	/**
+	 * Resolves the key labels through GLFW again, as the game does
+	 */
+	
+	@AfterEach
+	void restoreLabels() {
+		KeyLabelCache.getInstance().setLookup(KeyNameLookup.GLFW_LOOKUP);
+	}
+	
+	@Test
+	void defaultLayoutMatchesReference() throws IOException {
+		KeyBinding[] available = {
+			new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"),
+			new KeyBinding("key.back", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_S, "key.categories.movement"),
+			new KeyBinding("key.left", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A, "key.categories.movement"),
+			new KeyBinding("key.right", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_D, "key.categories.movement"),
+			new KeyBinding("key.attack", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_LEFT, "key.categories.gameplay"),
+			new KeyBinding("key.use", InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_RIGHT, "key.categories.gameplay"),
+			new KeyBinding("key.jump", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_SPACE, "key.categories.movement")
+		};
+		Key[] keys = LayoutSpec.parse(LayoutSpec.defaultLines(16.0 / 9)).createKeys(available);
+		// Forward and the left button are held, the left button was clicked a few times during the last seconds
+		KeyMouse attack = (KeyMouse) keys[4];
+		attack.setHistory(new CpsHistory(5));
+		for (int i = 0; i < 24; i++) {
+			long timestamp = NOW - 3_000_000_000L + i * 125_000_000L;
+			attack.setKeyDown(true, timestamp);
+			attack.setKeyDown(false, timestamp + 40_000_000L);
+		}
+		attack.setKeyDown(true, NOW);
+		keys[0].setKeyDown(true, NOW);
+		for (Key key : keys) {
+			key.beginFrame(NOW, 0);
+			// Completes the press animations at once
+			key.animate(1f, 1f);
+		}
+		KeyLayout layout = new KeyLayout(keys);
+		HeadlessRenderer renderer = new HeadlessRenderer(640, 360);
+		renderer.clear(0xff202020);
+		layout.resolve(renderer.getWidth(), renderer.getHeight(), 2);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].drawBackground(renderer, layout, i);
+		}
+		renderer.flush();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i].draw(renderer, layout, i);
+		}
+		assertMatches("default_layout.png", renderer);
+	}
+	
+	/**
+	 * Compares the image of a renderer with a reference, pixel by pixel
+	 * @param name The reference file name
+	 * @param renderer The renderer holding the drawn image
+	 * @throws IOException If the reference can't be read or written
+	 */
+	
+	private static void assertMatches(final String name, final HeadlessRenderer renderer) throws IOException {
+		final int width = renderer.getWidth();
+		final int height = renderer.getHeight();
+		if (UPDATE) {
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(0, 0, width, height, renderer.getPixels(), 0, width);
+			Path file = Paths.get("src", "test", "resources", GOLDEN_DIRECTORY, name);
+			Files.createDirectories(file.getParent());
+			ImageIO.write(image, "png", file.toFile());
+			return;
+		}
+		BufferedImage reference;
+		try (InputStream in = HeadlessRendererTest.class.getClassLoader().getResourceAsStream(GOLDEN_DIRECTORY + name)) {
+			assertNotNull(in, "Missing reference image " + name);
+			reference = ImageIO.read(in);
+		}
+		assertEquals(width, reference.getWidth(), "Reference width");
+		assertEquals(height, reference.getHeight(), "Reference height");
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int expected = reference.getRGB(x, y);
+				int actual = renderer.getPixel(x, y);
+				if (expected != actual) {
+					assertEquals(Integer.toHexString(expected), Integer.toHexString(actual), "Pixel (" + x + ", " + y + ") of " + name);
+				}
+			}
+		}
+	}
+}
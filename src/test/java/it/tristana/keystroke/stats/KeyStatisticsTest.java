@@ -0,0 +1,106 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Checks that the statistics follow the physical inputs and count each event once
+ * @author Massimiliano Micol
+ */
+
+class KeyStatisticsTest {
+	
+	/**
+	 * The ordinal of the keyboard keys type
+	 */
+	
+	private static final int KEYSYM = InputMappings.Type.KEYSYM.ordinal();
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	void countersAreKeyedByTypeAndCode() {
+		KeyStatistics statistics = new KeyStatistics(directory.resolve("statistics.bin"));
+		KeyCounters w = statistics.getCounters(KEYSYM, GLFW.GLFW_KEY_W);
+		assertSame(w, statistics.getCounters(KEYSYM, GLFW.GLFW_KEY_W));
+		assertNotSame(w, statistics.getCounters(InputMappings.Type.SCANCODE.ordinal(), GLFW.GLFW_KEY_W));
+		assertNotSame(w, statistics.getCounters(KeyStatistics.GAMEPAD, GLFW.GLFW_KEY_W));
+	}
+	
+	@Test
+	void keysSharingAnInputCountEachEventOnce() {
+		KeyStatistics statistics = new KeyStatistics(directory.resolve("statistics.bin"));
+		KeyCounters counters = statistics.getCounters(KEYSYM, GLFW.GLFW_KEY_W);
+		// Two overlay keys, through two different KeyBindings, on the same physical key
+		Key forward = new Key(0, 0, 5, 5, new KeyBinding("key.forward", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"), null);
+		Key sprint = new Key(5, 0, 5, 5, new KeyBinding("key.keystroke.test.sprint", InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, "key.categories.movement"), null);
+		forward.setCounters(counters);
+		sprint.setCounters(counters);
+		for (int i = 0; i < 3; i++) {
+			final long press = 1_000_000_000L * (i + 1);
+			forward.setKeyDown(true, press);
+			sprint.setKeyDown(true, press);
+			forward.setKeyDown(false, press + 100_000_000L);
+			sprint.setKeyDown(false, press + 100_000_000L);
+		}
+		assertEquals(3, counters.getSessionPresses());
+		assertEquals(300_000_000L, counters.getSessionHoldTime());
+		// One interval of a second between each press, in the 512-1023 ms bucket
+		assertEquals(2, statistics.session.get(KeyStatistics.INTERVALS + 9));
+	}
+	
+	@Test
+	void lifetimeTotalsSurviveARestart() {
+		Path file = directory.resolve("statistics.bin");
+		KeyStatistics statistics = new KeyStatistics(file);
+		KeyCounters counters = statistics.getCounters(InputMappings.Type.MOUSE.ordinal(), GLFW.GLFW_MOUSE_BUTTON_LEFT);
+		counters.onPress(1_000_000_000L);
+		counters.onRelease(1_050_000_000L);
+		counters.onPress(1_100_000_000L);
+		counters.onCps(12);
+		statistics.write();
+		KeyStatistics restarted = new KeyStatistics(file);
+		KeyCounters restored = restarted.getCounters(InputMappings.Type.MOUSE.ordinal(), GLFW.GLFW_MOUSE_BUTTON_LEFT);
+		assertEquals(2, restored.getLifetimePresses());
+		assertEquals(0, restored.getSessionPresses());
+		assertEquals(0, restarted.getCounters(KEYSYM, GLFW.GLFW_MOUSE_BUTTON_LEFT).getLifetimePresses());
+	}
+}
@@ -0,0 +1,146 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFW;
+
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Checks the heat levels of the heatmap and the dirty cells it reports
+ * @author Massimiliano Micol
+ */
+
+class PressHeatmapTest {
+	
+	@Test
+	void pressesPastTheScaleDoubleIt() {
+		PressHeatmap heatmap = new PressHeatmap();
+		poll(heatmap);
+		press(heatmap, InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A, 8);
+		final int a = single(poll(heatmap));
+		assertEquals(8, heatmap.getLevel(a));
+		// 16 presses fill the initial scale: the hottest level
+		press(heatmap, InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, 16);
+		final int w = single(poll(heatmap));
+		assertEquals(PressHeatmap.LEVELS - 1, heatmap.getLevel(w));
+		assertEquals(8, heatmap.getLevel(a));
+		// One more doubles the scale, cooling every other cell as well
+		press(heatmap, InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, 1);
+		assertEquals(1 + 17 * (PressHeatmap.LEVELS - 2) / 32, heatmap.getLevel(w));
+		assertEquals(1 + 8 * (PressHeatmap.LEVELS - 2) / 32, heatmap.getLevel(a));
+		List<Integer> changed = poll(heatmap);
+		assertEquals(2, changed.size());
+		assertEquals(Math.min(a, w), (int) changed.get(0));
+		assertEquals(Math.max(a, w), (int) changed.get(1));
+		assertEquals(17, heatmap.getPresses(w));
+	}
+	
+	@Test
+	void pollDirtyReturnsEachChangedCell() {
+		PressHeatmap heatmap = new PressHeatmap();
+		// Every cell starts dirty, so the whole texture is uploaded once
+		List<Integer> all = poll(heatmap);
+		assertEquals(heatmap.getCells(), all.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertEquals(i, (int) all.get(i));
+		}
+		assertEquals(-1, heatmap.pollDirty(0));
+		// Keys spread over the grid, the last cells past the first 64 bits word
+		final int[] keys = {GLFW.GLFW_KEY_ESCAPE, GLFW.GLFW_KEY_W, GLFW.GLFW_KEY_SPACE, GLFW.GLFW_KEY_KP_DECIMAL};
+		for (int key : keys) {
+			press(heatmap, InputMappings.Type.KEYSYM, key, 1);
+		}
+		press(heatmap, InputMappings.Type.MOUSE, GLFW.GLFW_MOUSE_BUTTON_5, 1);
+		// Releases, unknown keys and other input types change nothing
+		heatmap.onKey(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A, false);
+		heatmap.onKey(InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_UNKNOWN, true);
+		heatmap.onKey(InputMappings.Type.SCANCODE, GLFW.GLFW_KEY_A, true);
+		List<Integer> changed = poll(heatmap);
+		assertEquals(keys.length + 1, changed.size());
+		for (int i = 1; i < changed.size(); i++) {
+			assertNotEquals(changed.get(i - 1), changed.get(i));
+		}
+		assertEquals(heatmap.getCells() - 1, (int) changed.get(changed.size() - 1));
+		for (int cell : changed) {
+			assertEquals(1, heatmap.getPresses(cell));
+		}
+		// The search starts from the given cell, the ones before it stay dirty
+		press(heatmap, InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_W, 1);
+		final int w = changed.get(1);
+		assertEquals(-1, heatmap.pollDirty(w + 1));
+		assertEquals(w, heatmap.pollDirty(0));
+		assertEquals(-1, heatmap.pollDirty(0));
+	}
+	
+	/**
+	 * Presses a key a few times
+	 * @param heatmap The heatmap
+	 * @param type The input type
+	 * @param code The key code or mouse button
+	 * @param times The number of presses
+	 */
+	
+	private static void press(final PressHeatmap heatmap, final InputMappings.Type type, final int code, final int times) {
+		for (int i = 0; i < times; i++) {
+			heatmap.onKey(type, code, true);
+			heatmap.onKey(type, code, false);
+		}
+	}
+	
+	/**
+	 * Takes all the dirty cells, as the texture does before uploading them
+	 * @param heatmap The heatmap
+	 * @return The dirty cells, in order
+	 */
+	
+	private static List<Integer> poll(final PressHeatmap heatmap) {
+		List<Integer> cells = new ArrayList<Integer>();
+		for (int cell = heatmap.pollDirty(0); cell >= 0; cell = heatmap.pollDirty(cell + 1)) {
+			cells.add(cell);
+		}
+		return cells;
+	}
+	
+	/**
+	 * Gets the only cell of a list
+	 * @param cells The cells
+	 * @return The cell
+	 */
+	
+	private static int single(final List<Integer> cells) {
+		assertEquals(1, cells.size(), "Dirty cells " + cells);
+		return cells.get(0);
+	}
+}
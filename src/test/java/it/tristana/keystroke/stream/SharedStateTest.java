@@ -0,0 +1,128 @@
+/*
+MIT License
+
+Copyright (c) 2021 Massimiliano Micol
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+
+package it.tristana.keystroke.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.glfw.GLFW;
+
+import it.tristana.keystroke.keys.Key;
+import it.tristana.keystroke.keys.KeyMouse;
+import net.minecraft.client.settings.KeyBinding;
+import net.minecraft.client.util.InputMappings;
+
+/**
+ * Runs the shared state writer and reader on two threads, checking that the reader never sees a torn state
+ * @author Massimiliano Micol
+ */
+
+class SharedStateTest {
+	
+	/**
+	 * The number of keys drawn as pressed or released
+	 */
+	
+	private static final int KEYS = 12;
+	
+	/**
+	 * The number of mouse keys, among the last ones
+	 */
+	
+	private static final int MICE = 4;
+	
+	/**
+	 * How long the two threads run
+	 */
+	
+	private static final long DURATION = TimeUnit.MILLISECONDS.toNanos(500);
+	
+	@Test
+	void readerNeverSeesATornState(@TempDir final Path directory) throws Exception {
+		Path file = directory.resolve("state.bin");
+		SharedStateWriter writer = SharedStateWriter.open(file);
+		assertNotNull(writer);
+		final Key[] keys = new Key[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			KeyBinding binding = new KeyBinding("key.keystroke.test.shared." + i, InputMappings.Type.KEYSYM, GLFW.GLFW_KEY_A + i, "key.categories.keystroke.test");
+			keys[i] = i < KEYS - MICE ? new Key(i, 0, 1, 1, binding, null) : new KeyMouse(i, 0, 1, 1, binding, null);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		// Every state is built from a single value: its low bits are the pressed keys, and every mouse key shows it as its CPS
+		Thread writing = new Thread(() -> {
+			for (int value = 1; running.get(); value++) {
+				final long now = System.nanoTime();
+				for (int i = 0; i < KEYS; i++) {
+					keys[i].setKeyDown((value >>> i & 1) != 0, now);
+					keys[i].beginFrame(now, 0);
+					if (keys[i] instanceof KeyMouse) {
+						((KeyMouse) keys[i]).setRemoteCps(value);
+					}
+				}
+				writer.publish(keys);
+			}
+		}, "Shared state writer");
+		writing.start();
+		SharedStateReader reader = new SharedStateReader(file);
+		long reads = 0;
+		long changes = 0;
+		long last = -1;
+		try {
+			final long end = System.nanoTime() + DURATION;
+			while (System.nanoTime() < end) {
+				long sequence = reader.read();
+				reads++;
+				if (sequence == last || reader.getKeyCount() == 0) {
+					continue;
+				}
+				last = sequence;
+				changes++;
+				assertEquals(KEYS, reader.getKeyCount());
+				assertEquals(MICE, reader.getMouseCount());
+				final int value = reader.getCps(0);
+				for (int i = 1; i < MICE; i++) {
+					assertEquals(value, reader.getCps(i), "CPS of mouse key " + i + " in state " + sequence);
+				}
+				for (int i = 0; i < KEYS; i++) {
+					assertEquals((value >>> i & 1) != 0, reader.isPressed(i), "Key " + i + " in state " + sequence);
+				}
+			}
+		}
+		finally {
+			running.set(false);
+			writing.join();
+		}
+		assertTrue(changes > 1, "The reader saw " + changes + " states in " + reads + " reads");
+	}
+}